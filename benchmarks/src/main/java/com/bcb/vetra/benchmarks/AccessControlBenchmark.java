@@ -0,0 +1,119 @@
+package com.bcb.vetra.benchmarks;
+
+import com.bcb.vetra.daos.PatientDao;
+import com.bcb.vetra.daos.UserDao;
+import com.bcb.vetra.models.Patient;
+import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.services.AuthorizationCache;
+import com.bcb.vetra.viewmodels.PatientAccess;
+import eu.fraho.spring.securityJwt.base.config.TokenProperties;
+import eu.fraho.spring.securityJwt.base.dto.TimeWithPeriod;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Access Control Benchmark</strong>
+ * <br><br>
+ * Measures the AccessControl decisions made on every patient request, with the DAOs replaced by in-memory stand-ins
+ * so only the decision logic and the AuthorizationCache are measured. The scenarios are:
+ * <ul>
+ *     <li><i>owner-cached</i>: an owner checking their own patients, answered from the cache.</li>
+ *     <li><i>owner-uncached</i>: the same with a cache TTL of zero, so every check goes to the DAO stand-ins.</li>
+ *     <li><i>doctor-token</i>: a doctor whose roles are read from their token.</li>
+ *     <li><i>doctor-cached</i>: a doctor whose roles are read from the cache, as when token roles are not trusted.</li>
+ * </ul>
+ * Each check is for one of <i>PATIENTS</i> patients in turn, so the cache holds more than a single entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessControlBenchmark {
+    private static final int PATIENTS = 1024;
+    private static final String OWNER = "jdoe";
+    private static final String DOCTOR = "cakelly4";
+
+    @Param({"owner-cached", "owner-uncached", "doctor-token", "doctor-cached"})
+    private String scenario;
+
+    private AccessControl accessControl;
+    private String username;
+    private int patientId;
+
+    @Setup
+    public void setup() {
+        boolean cached = !scenario.equals("owner-uncached");
+        boolean trustTokenRoles = scenario.equals("doctor-token");
+        AuthorizationCache authorizationCache = new AuthorizationCache(cached ? 30 : 0, 10_000, tokenProperties());
+        accessControl = new AccessControl(new InMemoryPatientDao(), new InMemoryUserDao(), null, null,
+                authorizationCache, trustTokenRoles);
+        username = scenario.startsWith("doctor") ? DOCTOR : OWNER;
+
+        // Thread scoped state is set up on the benchmark thread, so the security context is that thread's.
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                username, null, List.of(new SimpleGrantedAuthority(username.equals(DOCTOR) ? "DOCTOR" : "OWNER"))));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public boolean canAccessPatient() {
+        patientId = (patientId + 1) % PATIENTS;
+        return accessControl.canAccessPatient(patientId, username);
+    }
+
+    private static TokenProperties tokenProperties() {
+        TokenProperties tokenProperties = new TokenProperties();
+        tokenProperties.setExpiration(new TimeWithPeriod(1, ChronoUnit.HOURS));
+        return tokenProperties;
+    }
+
+    //----------------------
+    // Stand-in DAOs
+    //----------------------
+
+    /**
+     * Every patient is owned by OWNER.
+     */
+    private static class InMemoryPatientDao extends PatientDao {
+        InMemoryPatientDao() {
+            super(new DriverManagerDataSource());
+        }
+
+        @Override
+        public Patient getPatientByIdAndOwner(int patientId, String username) {
+            return username.equals(OWNER) ? new Patient(patientId, "Rex", null, "Canine", "CM", OWNER) : null;
+        }
+    }
+
+    /**
+     * DOCTOR is a doctor and every other user an owner.
+     */
+    private static class InMemoryUserDao extends UserDao {
+        InMemoryUserDao() {
+            super(new DriverManagerDataSource(), null);
+        }
+
+        @Override
+        public List<String> getRoles(String username) {
+            return username.equals(DOCTOR) ? List.of("DOCTOR") : List.of("OWNER");
+        }
+
+        @Override
+        public PatientAccess getPatientAccess(String username, int patientId) {
+            return new PatientAccess(getRoles(username), username.equals(OWNER));
+        }
+    }
+}
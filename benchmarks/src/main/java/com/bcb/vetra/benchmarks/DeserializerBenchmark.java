@@ -0,0 +1,134 @@
+package com.bcb.vetra.benchmarks;
+
+import com.bcb.vetra.services.deserializers.EpochToLocalDateDeserializer;
+import com.bcb.vetra.services.deserializers.SexIdToSexDeserializer;
+import com.bcb.vetra.services.deserializers.SpeciesIdToSpeciesDeserializer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Deserializer Benchmark</strong>
+ * <br><br>
+ * Measures the custom deserializers used when binding patients from the API and from ezyVet, against the
+ * exception-driven versions they replaced in LegacyDeserializers (the <i>legacy*</i> benchmarks). Each operation
+ * creates a parser over a single JSON value, so <i>parseOnly</i> is included as the baseline to subtract. The inputs
+ * are raw JSON and cover the ezyVet form of each value (IDs and epoch days, as numbers and as strings) and the form
+ * used by the API, which was the exception path of the legacy deserializers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializerBenchmark {
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final EpochToLocalDateDeserializer epochToLocalDate = new EpochToLocalDateDeserializer();
+    private final SexIdToSexDeserializer sexIdToSex = new SexIdToSexDeserializer();
+    private final SpeciesIdToSpeciesDeserializer speciesIdToSpecies = new SpeciesIdToSpeciesDeserializer();
+    private final LegacyDeserializers.EpochToLocalDate legacyEpochToLocalDate = new LegacyDeserializers.EpochToLocalDate();
+    private final LegacyDeserializers.SexIdToSex legacySexIdToSex = new LegacyDeserializers.SexIdToSex();
+    private final LegacyDeserializers.SpeciesIdToSpecies legacySpeciesIdToSpecies = new LegacyDeserializers.SpeciesIdToSpecies();
+    private final byte[] baselineJson = "\"1\"".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Thread)
+    public static class DateInput {
+        @Param({"19000", "\"19000\"", "\"2021-06-15\"", "\"not-a-date\""})
+        public String value;
+        byte[] json;
+
+        @Setup
+        public void setup() {
+            json = value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SexInput {
+        @Param({"1", "\"4\"", "\"F\""})
+        public String value;
+        byte[] json;
+
+        @Setup
+        public void setup() {
+            json = value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SpeciesInput {
+        @Param({"1", "\"3\"", "\"Canine\""})
+        public String value;
+        byte[] json;
+
+        @Setup
+        public void setup() {
+            json = value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public String parseOnly() throws IOException {
+        try (JsonParser parser = parserAt(baselineJson)) {
+            return parser.getText();
+        }
+    }
+
+    @Benchmark
+    public LocalDate epochToLocalDate(DateInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return epochToLocalDate.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public String sexIdToSex(SexInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return sexIdToSex.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public String speciesIdToSpecies(SpeciesInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return speciesIdToSpecies.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public LocalDate legacyEpochToLocalDate(DateInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return legacyEpochToLocalDate.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public String legacySexIdToSex(SexInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return legacySexIdToSex.deserialize(parser, null);
+        }
+    }
+
+    @Benchmark
+    public String legacySpeciesIdToSpecies(SpeciesInput input) throws IOException {
+        try (JsonParser parser = parserAt(input.json)) {
+            return legacySpeciesIdToSpecies.deserialize(parser, null);
+        }
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private JsonParser parserAt(byte[] json) throws IOException {
+        JsonParser parser = jsonFactory.createParser(json);
+        parser.nextToken();
+        return parser;
+    }
+}
@@ -0,0 +1,98 @@
+package com.bcb.vetra.benchmarks;
+
+import com.bcb.vetra.models.Patient;
+import com.bcb.vetra.models.User;
+import com.bcb.vetra.services.vmsintegration.ezyvet.EzyVetPage;
+import com.bcb.vetra.services.vmsintegration.ezyvet.EzyVetPageReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Jackson Binding Benchmark</strong>
+ * <br><br>
+ * Measures binding Patient and User, whose fields carry @JsonAlias names and custom deserializers, from the request
+ * bodies of the API and from ezyVet records, which use the aliased names and carry fields the models ignore. Also
+ * reads a full page of ezyVet animals with EzyVetPageReader, as the sync does for every page it fetches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonBindingBenchmark {
+    private static final int PAGE_SIZE = 200;
+
+    // Set up like the mapper Spring Boot builds, with the modules on the classpath.
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final EzyVetPageReader pageReader = new EzyVetPageReader(objectMapper);
+
+    private final byte[] apiPatient = bytes("""
+            {"name": "Rex", "birthday": "2019-04-01", "species": "Canine", "sex": "CM", "ownerUsername": "jdoe"}""");
+    private final byte[] ezyVetAnimal = bytes(animal(1042));
+    private final byte[] apiUser = bytes("""
+            {"username": "jdoe", "password": "secret", "firstName": "Jane", "lastName": "Doe", "email": "jane@example.com"}""");
+    private final byte[] ezyVetContact = bytes("""
+            {"id": "77", "code": "C77", "first_name": "Jane", "last_name": "Doe", "business_name": "", "is_customer": 1,
+             "is_supplier": 0, "active": 1, "created_at": 1700000000, "modified_at": 1700000500}""");
+    private final byte[] ezyVetAnimalPage = bytes(animalPage());
+
+    @Benchmark
+    public Patient patientFromApi() throws IOException {
+        return objectMapper.readValue(apiPatient, Patient.class);
+    }
+
+    @Benchmark
+    public Patient patientFromEzyVet() throws IOException {
+        return objectMapper.readValue(ezyVetAnimal, Patient.class);
+    }
+
+    @Benchmark
+    public User userFromApi() throws IOException {
+        return objectMapper.readValue(apiUser, User.class);
+    }
+
+    @Benchmark
+    public User userFromEzyVet() throws IOException {
+        return objectMapper.readValue(ezyVetContact, User.class);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public EzyVetPage<Patient> ezyVetAnimalPage() throws IOException {
+        return pageReader.read(new ByteArrayInputStream(ezyVetAnimalPage), "animal", Patient.class);
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static String animal(int id) {
+        return "{\"id\": \"" + id + "\", \"name\": \"Pet" + id + "\", \"contact_id\": \"" + (id / 2) + "\", " +
+                "\"species_id\": \"" + (id % 2 + 1) + "\", \"sex_id\": \"" + (id % 4 + 1) + "\", " +
+                "\"date_of_birth\": \"2015-03-02\", \"breed_id\": \"12\", \"color_id\": \"3\", \"microchip_number\": \"\", " +
+                "\"is_dead\": 0, \"active\": 1, \"created_at\": 1700000000, \"modified_at\": 1700000500}";
+    }
+
+    private static String animalPage() {
+        StringBuilder json = new StringBuilder("{\"meta\": {\"items_page\": 1, \"items_page_size\": " + PAGE_SIZE +
+                ", \"items_page_total\": " + PAGE_SIZE + ", \"items_total\": 5000}, \"items\": [");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"animal\": ").append(animal(1000 + i)).append("}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
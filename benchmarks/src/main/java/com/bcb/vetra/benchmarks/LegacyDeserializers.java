@@ -0,0 +1,79 @@
+package com.bcb.vetra.benchmarks;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * <strong>Legacy Deserializers</strong>
+ * <br><br>
+ * The patient deserializers as they were before the table-driven VMS codes: they parse with Integer.parseInt and
+ * Long.parseLong and catch the exception for every value that is not a number. Kept as the baseline of
+ * DeserializerBenchmark.
+ */
+final class LegacyDeserializers {
+
+    private LegacyDeserializers() {
+    }
+
+    static class EpochToLocalDate extends JsonDeserializer<LocalDate> {
+        @Override
+        public LocalDate deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            String value = jsonParser.getText();
+            try {
+                long epoch = Long.parseLong(value);
+                return LocalDate.ofEpochDay(epoch);
+            } catch (NumberFormatException e) {
+                try {
+                    return LocalDate.parse(value);
+                } catch (DateTimeException e2) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    static class SexIdToSex extends JsonDeserializer<String> {
+        @Override
+        public String deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            String value = jsonParser.getText();
+            try {
+                Integer.parseInt(value);
+                if (value.equals("1")) {
+                    return "M";
+                } else if (value.equals("2")) {
+                    return "CM";
+                } else if (value.equals("3")) {
+                    return "F";
+                } else if (value.equals("4")) {
+                    return "SF";
+                } else {
+                    return "?";
+                }
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+    }
+
+    static class SpeciesIdToSpecies extends JsonDeserializer<String> {
+        @Override
+        public String deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            String value = jsonParser.getText();
+            try {
+                Integer.parseInt(value);
+                if (value.equals("1")) {
+                    return "Canine";
+                } else {
+                    return "Feline";
+                }
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.bcb.vetra.benchmarks;
+
+import com.bcb.vetra.daos.*;
+import com.bcb.vetra.models.*;
+import com.bcb.vetra.viewmodels.PrescriptionWithMedication;
+import com.bcb.vetra.viewmodels.RequestWithPrescription;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Row Mapper Benchmark</strong>
+ * <br><br>
+ * Measures the <i>mapToX</i> row mappers of the DAOs, which run once for every row of every query, against a
+ * SyntheticResultSet holding a typical row. The mappers are private, so they are called through method handles; the
+ * DAOs are given a DataSource that is never connected to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMapperBenchmark {
+    private static final MethodHandle MAP_TO_PATIENT = mapper(PatientDao.class, "mapToPatient");
+    private static final MethodHandle MAP_TO_USER = mapper(UserDao.class, "mapToUser");
+    private static final MethodHandle MAP_TO_TEST = mapper(TestDao.class, "mapToTest");
+    private static final MethodHandle MAP_TO_RESULT = mapper(ResultDao.class, "mapToResult");
+    private static final MethodHandle MAP_TO_MESSAGE = mapper(MessageDao.class, "mapToMessage");
+    private static final MethodHandle MAP_TO_NOTIFICATION = mapper(NotificationDao.class, "mapToNotification");
+    private static final MethodHandle MAP_TO_PRESCRIPTION = mapper(PrescriptionDao.class, "mapToPrescriptionWithMedication");
+    private static final MethodHandle MAP_TO_REQUEST = mapper(RequestDao.class, "mapToRequestWithPrescription");
+
+    private PatientDao patientDao;
+    private UserDao userDao;
+    private TestDao testDao;
+    private ResultDao resultDao;
+    private MessageDao messageDao;
+    private NotificationDao notificationDao;
+    private PrescriptionDao prescriptionDao;
+    private RequestDao requestDao;
+
+    private ResultSet patientRow;
+    private ResultSet userRow;
+    private ResultSet testRow;
+    private ResultSet resultRow;
+    private ResultSet messageRow;
+    private ResultSet notificationRow;
+    private ResultSet prescriptionRow;
+    private ResultSet requestRow;
+
+    @Setup
+    public void setup() {
+        DataSource dataSource = new DriverManagerDataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        patientDao = new PatientDao(dataSource);
+        userDao = new UserDao(dataSource, null);
+        testDao = new TestDao(dataSource, null, null);
+        resultDao = new ResultDao(dataSource);
+        messageDao = new MessageDao(jdbcTemplate);
+        notificationDao = new NotificationDao(jdbcTemplate, null);
+        prescriptionDao = new PrescriptionDao(dataSource);
+        requestDao = new RequestDao(jdbcTemplate);
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        patientRow = SyntheticResultSet.of(Map.of(
+                "patient_id", 1042, "first_name", "Rex", "birthday", Date.valueOf("2019-04-01"),
+                "species", "Canine", "sex", "CM", "owner_username", "jdoe"));
+        userRow = SyntheticResultSet.of(Map.of(
+                "username", "jdoe", "password", "$2a$10$abcdefghijklmnopqrstuv", "first_name", "Jane",
+                "last_name", "Doe", "email", "jane@example.com"));
+        testRow = SyntheticResultSet.of(Map.of(
+                "test_id", 5310, "name", "Chemistry panel", "time_stamp", now, "patient_id", 1042,
+                "doctor_username", "cakelly4"));
+        resultRow = SyntheticResultSet.of(Map.of(
+                "result_id", 88121, "test_id", 5310, "result_value", "7.4", "parameter_name", "ALT",
+                "range_low", "5", "range_high", "107", "unit", "U/L"));
+        messageRow = SyntheticResultSet.of(Map.of(
+                "message_id", 311, "body", "Results look normal, no follow-up needed.", "time_stamp", now,
+                "from_username", "cakelly4", "to_username", "jdoe", "test_id", 5310, "prescription_id", 0,
+                "patient_id", 1042));
+        notificationRow = SyntheticResultSet.of(Map.of(
+                "notification_id", 9001, "username", "jdoe", "patient_id", 1042, "message_id", 311, "request_id", 0,
+                "test_id", 0, "is_read", false, "timestamp", now));
+        Map<String, Object> prescription = new HashMap<>(Map.of(
+                "prescription_id", 771, "medication_name", "Carprofen 75mg", "quantity", 30, "unit", "tablet",
+                "instructions", "One tablet by mouth twice daily with food.", "refills", 2, "is_active", true,
+                "patient_id", 1042, "doctor_username", "cakelly4"));
+        prescriptionRow = SyntheticResultSet.of(prescription);
+        Map<String, Object> request = new HashMap<>(prescription);
+        request.putAll(Map.of("request_id", 1201, "status", "PENDING", "request_date", now.toString()));
+        requestRow = SyntheticResultSet.of(request);
+    }
+
+    @Benchmark
+    public Patient mapToPatient() throws Throwable {
+        return (Patient) MAP_TO_PATIENT.invoke(patientDao, patientRow, 0);
+    }
+
+    @Benchmark
+    public User mapToUser() throws Throwable {
+        return (User) MAP_TO_USER.invoke(userDao, userRow, 0);
+    }
+
+    @Benchmark
+    public Test mapToTest() throws Throwable {
+        return (Test) MAP_TO_TEST.invoke(testDao, testRow, 0);
+    }
+
+    @Benchmark
+    public Result mapToResult() throws Throwable {
+        return (Result) MAP_TO_RESULT.invoke(resultDao, resultRow, 0);
+    }
+
+    @Benchmark
+    public Message mapToMessage() throws Throwable {
+        return (Message) MAP_TO_MESSAGE.invoke(messageDao, messageRow, 0);
+    }
+
+    @Benchmark
+    public Notification mapToNotification() throws Throwable {
+        return (Notification) MAP_TO_NOTIFICATION.invoke(notificationDao, notificationRow, 0);
+    }
+
+    @Benchmark
+    public PrescriptionWithMedication mapToPrescriptionWithMedication() throws Throwable {
+        return (PrescriptionWithMedication) MAP_TO_PRESCRIPTION.invoke(prescriptionDao, prescriptionRow, 0);
+    }
+
+    @Benchmark
+    public RequestWithPrescription mapToRequestWithPrescription() throws Throwable {
+        return (RequestWithPrescription) MAP_TO_REQUEST.invoke(requestDao, requestRow, 0);
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static MethodHandle mapper(Class<?> dao, String name) {
+        try {
+            Method method = dao.getDeclaredMethod(name, ResultSet.class, int.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No row mapper " + dao.getSimpleName() + "." + name, e);
+        }
+    }
+}
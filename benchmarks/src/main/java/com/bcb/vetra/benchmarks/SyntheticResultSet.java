@@ -0,0 +1,53 @@
+package com.bcb.vetra.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A ResultSet positioned on a single in-memory row, for running row mappers without a database. Only the getters the
+ * DAO mappers use are supported. It is a dynamic proxy, so every getter pays a dispatch and boxing cost that a driver's
+ * result set does not; compare mappers with each other and across builds rather than as absolute numbers.
+ */
+final class SyntheticResultSet {
+
+    private SyntheticResultSet() {
+    }
+
+    /**
+     * Creates a result set over a row.
+     *
+     * @param row Column label to value. Values must already have the type of their getter, e.g. a Timestamp for
+     *            getTimestamp.
+     * @return ResultSet
+     */
+    static ResultSet of(Map<String, Object> row) {
+        Map<String, Object> columns = new HashMap<>(row);
+        boolean[] wasNull = new boolean[1];
+        return (ResultSet) Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("wasNull")) {
+                        return wasNull[0];
+                    }
+                    if (!name.startsWith("get") || args == null || args.length != 1 || !(args[0] instanceof String column)) {
+                        throw new SQLException("Not supported by SyntheticResultSet: " + method);
+                    }
+                    if (!columns.containsKey(column)) {
+                        throw new SQLException("No column " + column + ".");
+                    }
+                    Object value = columns.get(column);
+                    wasNull[0] = value == null;
+                    return switch (name) {
+                        case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                        case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                        case "getDouble" -> value == null ? 0.0 : ((Number) value).doubleValue();
+                        case "getBoolean" -> value != null && (Boolean) value;
+                        case "getString" -> value == null ? null : value.toString();
+                        default -> value;
+                    };
+                });
+    }
+}
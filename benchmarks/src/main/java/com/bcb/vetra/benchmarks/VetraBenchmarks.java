@@ -0,0 +1,34 @@
+package com.bcb.vetra.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+
+/**
+ * <strong>Vetra Benchmarks</strong>
+ * <br><br>
+ * Runs the benchmarks with the GC profiler, so every result comes with its allocation rate; <i>gc.alloc.rate.norm</i>
+ * is the number of bytes allocated per operation, which is the figure to compare between builds. Takes the usual JMH
+ * command line options, e.g. a benchmark name regex, <i>-f</i>, <i>-wi</i>, <i>-i</i> or <i>-rf json</i>:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar RowMapper -rf json
+ * </pre>
+ */
+public class VetraBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        if (List.of(args).contains("-h") || List.of(args).contains("-l") || List.of(args).contains("-lprof")) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
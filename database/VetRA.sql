@@ -1,125 +1,6 @@
-drop table if exists prescription cascade;
-drop table if exists "result" cascade;
-drop table if exists test cascade;
-drop table if exists medication cascade;
-drop table if exists patient cascade;
-drop table if exists "user" cascade;
-drop table if exists "role" cascade;
-drop table if exists "user_vms" cascade;
-drop table if exists "patient_vms" cascade;
-drop table if exists "message" cascade;
-drop table if exists "request" cascade;
-drop table if exists "meta";
-drop table if exists "notification" cascade;
+-- Sample data only. The schema is created by the Flyway migrations in src/main/resources/db/migration when the
+-- application starts; run this afterwards on the new, still empty database.
 
-CREATE TABLE "user" (
-  "username" varchar(30) PRIMARY KEY,
-  "password" varchar(300) NOT NULL,
-  "first_name" varchar(50) NOT NULL,
-  "last_name" varchar(50) NOT NULL,
-  "email" varchar(350)
-);
-
-CREATE TABLE "role" (
-  "username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE,
-  "role" varchar(250) NOT NULL,
-  PRIMARY KEY ("username", "role")
-);
-
-CREATE TABLE "user_vms" (
-  "username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE,
-  "vms_name" varchar(30) NOT NULL,
-  "vms_id" varchar(300) NOT NULL,
-  PRIMARY KEY ("username", "vms_name")
-);
-
-CREATE TABLE "patient" (
-  "patient_id" SERIAL PRIMARY KEY,
-  "first_name" varchar(20) NOT NULL,
-  "birthday" date,
-  "species" varchar(20) NOT NULL,
-  "sex" varchar(2),
-  "owner_username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE
-);
-
-CREATE TABLE "patient_vms" (
-  "patient_id" int NOT NULL REFERENCES "patient" ("patient_id") ON DELETE CASCADE,
-  "vms_name" varchar(30) NOT NULL,
-  "vms_id" varchar(300) NOT NULL,
-  PRIMARY KEY ("patient_id", "vms_name")
-);
-
-CREATE TABLE "test" (
-  "test_id" SERIAL PRIMARY KEY,
-  "name" varchar(50) NOT NULL,
-  "time_stamp" timestamp NOT NULL,
-  "patient_id" int NOT NULL REFERENCES "patient" ("patient_id") ON DELETE CASCADE,
-  "doctor_username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE
-);
-
-CREATE TABLE "result" (
-	"result_id" SERIAL PRIMARY KEY,
-	"test_id" int NOT NULL REFERENCES test (test_id) ON DELETE CASCADE,
-	"result_value" varchar(250) NOT NULL,
-	"parameter_name" varchar(250),
-	"range_low" varchar(250),
-	"range_high" varchar(250),
-	"unit" varchar(250)
-);
-
-CREATE TABLE "medication" (
-  "name" varchar(50) PRIMARY KEY,
-  "unit" varchar(50) NOT NULL
-);
-
-CREATE TABLE "prescription" (
-  "prescription_id" SERIAL PRIMARY KEY,
-  "quantity" numeric NOT NULL,
-  "instructions" varchar(300) NOT NULL,
-  "refills" int NOT NULL,
-  "is_active" boolean DEFAULT true,
-  "patient_id" int NOT NULL REFERENCES "patient" ("patient_id"),
-  "medication_name" varchar(20) NOT NULL REFERENCES "medication" ("name") ON DELETE CASCADE,
-  "doctor_username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE
-);
-
-CREATE TABLE "message" (
-  "message_id" SERIAL PRIMARY KEY,
-  "body" varchar(1000) NOT NULL,
-  "time_stamp" timestamp DEFAULT (current_timestamp),
-  "from_username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE,
-  "to_username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE,
-  "test_id" int REFERENCES "test" ("test_id") ON DELETE CASCADE,
-  "prescription_id" int REFERENCES "prescription" ("prescription_id") ON DELETE CASCADE,
-  "patient_id" int NOT NULL REFERENCES "patient" ("patient_id") ON DELETE CASCADE
-);
-
-
-CREATE TABLE "request" (
-  "request_id" SERIAL PRIMARY KEY,
-  "prescription_id" int NOT NULL REFERENCES "prescription" ("prescription_id") ON DELETE CASCADE,
-  "status" varchar(20) DEFAULT 'PENDING',
-  "request_date" timestamp DEFAULT (current_timestamp)
-);
-
-CREATE TABLE "meta" (
-  "action" varchar(300) PRIMARY KEY,
-  "performed_at" timestamp DEFAULT (current_timestamp)
-);
-
-CREATE TABLE "notification" (
-  "notification_id" SERIAL PRIMARY KEY,
-  "username" varchar(30) NOT NULL REFERENCES "user" ("username") ON DELETE CASCADE,
-  "patient_id" int REFERENCES "patient" ("patient_id") ON DELETE CASCADE,
-  "message_id" int REFERENCES "message" ("message_id") ON DELETE CASCADE,
-  "request_id" int REFERENCES "request" ("request_id") ON DELETE CASCADE,
-  "test_id" int REFERENCES "test" ("test_id") ON DELETE CASCADE,
-  "is_read" boolean DEFAULT false,
-  "timestamp" timestamp DEFAULT (current_timestamp)
-);
-
-
--- INSERTS
 INSERT INTO medication (name, unit) VALUES
     ('Trazodone 50mg', 'tablets'),
     ('Gabapentin 100mg', 'capsules');
@@ -192,7 +73,8 @@ INSERT INTO role VALUES
 
 INSERT INTO "meta" (action, performed_at) VALUES
     ('ezyvet patients updated', '1970-01-01 00:00:00'),
-	('ezyvet tests updated', '1970-01-01 00:00:00');
+	('ezyvet tests updated', '1970-01-01 00:00:00')
+ON CONFLICT (action) DO NOTHING;
 
 	
 	
@@ -0,0 +1,19 @@
+package com.bcb.vetra.config;
+
+import com.bcb.vetra.services.vmsintegration.mock.ClinicDatasetSettings;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds the settings of the synthetic clinic the mock VMS can load.
+ */
+@Configuration
+public class MockVmsConfig {
+
+    @Bean
+    @ConfigurationProperties("vetra.mock.dataset")
+    public ClinicDatasetSettings clinicDatasetSettings() {
+        return new ClinicDatasetSettings();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bcb.vetra.config;
+
+import com.bcb.vetra.services.querystats.QueryStatistics;
+import com.bcb.vetra.services.querystats.QueryStatsDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the DataSource in a QueryStatsDataSource so every statement is recorded in QueryStatistics. Turned off with
+ * <i>vetra.query-stats.enabled=false</i>.
+ */
+@Configuration
+@ConditionalOnProperty(name = "vetra.query-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryStatsConfig {
+
+    // Static, so the post processor is registered before the DataSource is created.
+    @Bean
+    public static BeanPostProcessor queryStatsDataSourcePostProcessor(ObjectProvider<QueryStatistics> queryStatistics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof QueryStatsDataSource)) {
+                    return new QueryStatsDataSource(dataSource, queryStatistics.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package com.bcb.vetra.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables scheduled tasks, e.g. the background VMS sync.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,29 @@
+package com.bcb.vetra.config;
+
+import com.bcb.vetra.services.deserializers.VmsCodes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Adds the VMS codes of this site, from the properties file in <i>vetra.vms.codes-location</i>, to the defaults in
+ * vms-codes.properties. Runs at startup, before any VMS record is read.
+ */
+@Configuration
+public class VmsCodesConfig {
+
+    public VmsCodesConfig(ResourceLoader resourceLoader, @Value("${vetra.vms.codes-location:}") String location) throws IOException {
+        if (location.isBlank()) {
+            return;
+        }
+        Properties codes = new Properties();
+        try (InputStream in = resourceLoader.getResource(location).getInputStream()) {
+            codes.load(in);
+        }
+        VmsCodes.addAll(codes);
+    }
+}
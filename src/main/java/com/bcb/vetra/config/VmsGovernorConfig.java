@@ -0,0 +1,26 @@
+package com.bcb.vetra.config;
+
+import com.bcb.vetra.services.vmsintegration.governor.GovernorSettings;
+import com.bcb.vetra.services.vmsintegration.governor.OutboundCallGovernor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the governors that rate limit, retry and circuit break outbound VMS calls, one per vendor.
+ */
+@Configuration
+public class VmsGovernorConfig {
+
+    @Bean
+    @ConfigurationProperties("vetra.ezyvet.governor")
+    public GovernorSettings ezyVetGovernorSettings() {
+        return new GovernorSettings();
+    }
+
+    @Bean
+    public OutboundCallGovernor ezyVetGovernor(GovernorSettings ezyVetGovernorSettings, MeterRegistry meterRegistry) {
+        return new OutboundCallGovernor("ezyvet", ezyVetGovernorSettings, meterRegistry);
+    }
+}
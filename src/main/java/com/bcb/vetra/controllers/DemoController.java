@@ -4,8 +4,6 @@ import com.bcb.vetra.daos.*;
 import com.bcb.vetra.models.*;
 import com.bcb.vetra.services.AccessControl;
 import com.bcb.vetra.services.MessageNotification;
-import com.bcb.vetra.services.vmsintegration.MockVmsIntegration;
-import com.bcb.vetra.services.vmsintegration.VmsIntegration;
 import com.bcb.vetra.viewmodels.PrescriptionWithMedication;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -27,7 +25,6 @@ public class DemoController {
     private PrescriptionDao prescriptionDao;
     private TestDao testDao;
     private ResultDao resultDao;
-    private VmsIntegration vmsIntegration;
 
     public DemoController(MessageDao messageDao, PatientDao patientDao, UserDao userDao, PrescriptionDao prescriptionDao, TestDao testDao, ResultDao resultDao) {
         this.messageDao = messageDao;
@@ -36,7 +33,6 @@ public class DemoController {
         this.prescriptionDao = prescriptionDao;
         this.testDao = testDao;
         this.resultDao = resultDao;
-        this.vmsIntegration = new MockVmsIntegration(testDao, resultDao);
     }
 
     @GetMapping(path = "/login/{username}")
@@ -66,7 +62,6 @@ public class DemoController {
 
     @GetMapping("{patientId}/tests")
     public List<Test> getAllTests(@PathVariable int patientId) {
-        vmsIntegration.updateDB();
         List<Test> tests = testDao.getTestsForPatient(patientId);
         return tests;
     }
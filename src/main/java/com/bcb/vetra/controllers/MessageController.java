@@ -8,11 +8,15 @@ import com.bcb.vetra.models.Message;
 import com.bcb.vetra.models.Notification;
 import com.bcb.vetra.services.MessageNotification;
 import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.services.NdjsonExporter;
+import com.bcb.vetra.viewmodels.Page;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
 import java.util.List;
@@ -33,12 +37,14 @@ public class MessageController {
     private AccessControl accessControl;
     private MessageNotification messageNotification;
     private NotificationDao notificationDao;
+    private NdjsonExporter ndjsonExporter;
 
-    public MessageController(MessageDao messageDao, PatientDao patientDao, UserDao userDao, NotificationDao notificationDao) {
+    public MessageController(MessageDao messageDao, PatientDao patientDao, UserDao userDao, NotificationDao notificationDao, AccessControl accessControl, NdjsonExporter ndjsonExporter) {
+        this.ndjsonExporter = ndjsonExporter;
         this.messageDao = messageDao;
         this.patientDao = patientDao;
         this.userDao = userDao;
-        this.accessControl = new AccessControl(patientDao, userDao, messageDao);
+        this.accessControl = accessControl;
         this.messageNotification = new MessageNotification();
         this.notificationDao = notificationDao;
     }
@@ -54,6 +60,19 @@ public class MessageController {
         return messageDao.getMessagesByUsername(principal.getName());
     }
 
+    /**
+     * Gets a page of the messages sent to or from the user, newest first.
+     *
+     * @param limit     The page size, at most 500.
+     * @param cursor    The nextCursor of the previous page, omitted for the first page.
+     * @param principal The currently logged-in user.
+     * @return A page of messages for the currently logged-in user.
+     */
+    @GetMapping(path = "/messages", params = "limit")
+    public Page<Message> getPage(@RequestParam int limit, @RequestParam(required = false) String cursor, Principal principal) {
+        return messageDao.getMessagesByUsername(principal.getName(), cursor, limit);
+    }
+
     /**
      * Gets a message by its ID.
      *
@@ -76,6 +95,30 @@ public class MessageController {
         return messageDao.getAll();
     }
 
+    /**
+     * Gets a page of all messages, newest first.
+     *
+     * @param limit  The page size, at most 500.
+     * @param cursor The nextCursor of the previous page, omitted for the first page.
+     * @return A page of messages.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping(path = "/messages/all", params = "limit")
+    public Page<Message> getAllPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        return messageDao.getAll(cursor, limit);
+    }
+
+    /**
+     * Exports all messages as newline-delimited JSON, streamed while they are read.
+     *
+     * @return A stream of all messages, one JSON object per line.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/messages/all/export")
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ndjsonExporter.export(messageDao::streamAll);
+    }
+
     /**
      * Gets a message by its ID.
      *
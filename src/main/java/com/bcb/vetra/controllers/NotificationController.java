@@ -1,10 +1,13 @@
 package com.bcb.vetra.controllers;
 
 import com.bcb.vetra.models.Notification;
+import com.bcb.vetra.services.NotificationHub;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import com.bcb.vetra.daos.NotificationDao;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.security.Principal;
 import java.util.List;
@@ -15,9 +18,11 @@ import java.util.List;
 @RequestMapping("/notifications")
 public class NotificationController {
     private NotificationDao notificationDao;
+    private NotificationHub notificationHub;
 
-    public NotificationController(NotificationDao notificationDao) {
+    public NotificationController(NotificationDao notificationDao, NotificationHub notificationHub) {
         this.notificationDao = notificationDao;
+        this.notificationHub = notificationHub;
     }
 
     @GetMapping
@@ -25,6 +30,23 @@ public class NotificationController {
         return notificationDao.getUnreadNotificationsByUsername(principal.getName());
     }
 
+    /**
+     * Opens a Server-Sent Events stream of new notifications for the user. On connect the client is first sent its
+     * unread notifications, or, when reconnecting with a Last-Event-ID header, only the unread ones created since.
+     * Notifications created while it catches up are sent after them, each only once.
+     *
+     * @param lastEventId The ID of the last notification the client received, sent by EventSource on reconnect.
+     * @param principal   The currently logged-in user.
+     * @return The event stream.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) Integer lastEventId, Principal principal) {
+        String username = principal.getName();
+        return notificationHub.subscribe(username, () -> lastEventId == null
+                ? notificationDao.getUnreadNotificationsByUsername(username)
+                : notificationDao.getUnreadNotificationsByUsernameAfter(username, lastEventId));
+    }
+
     @PostMapping
     public void markAsRead(@RequestBody int id, Principal principal) {
         notificationDao.markAsRead(id, principal.getName());
@@ -1,17 +1,25 @@
 package com.bcb.vetra.controllers;
 
 import com.bcb.vetra.daos.PatientDao;
-import com.bcb.vetra.daos.UserDao;
 import com.bcb.vetra.models.Patient;
 import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.services.NdjsonExporter;
+import com.bcb.vetra.services.PatientDashboardService;
+import com.bcb.vetra.viewmodels.Page;
+import com.bcb.vetra.viewmodels.PatientDashboard;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * <strong>Controller for patients.</strong>
@@ -25,11 +33,15 @@ import java.util.List;
 @CrossOrigin
 public class PatientController {
     private PatientDao patientDao;
-    private UserDao userDao;
     private AccessControl accessControl;
-    public PatientController(PatientDao patientDao, UserDao userDao) {
+    private NdjsonExporter ndjsonExporter;
+    private PatientDashboardService patientDashboardService;
+    public PatientController(PatientDao patientDao, AccessControl accessControl, NdjsonExporter ndjsonExporter,
+                             PatientDashboardService patientDashboardService) {
         this.patientDao = patientDao;
-        this.accessControl = new AccessControl(patientDao, userDao);
+        this.accessControl = accessControl;
+        this.ndjsonExporter = ndjsonExporter;
+        this.patientDashboardService = patientDashboardService;
     }
 
     /**
@@ -54,6 +66,30 @@ public class PatientController {
         return patientDao.getAllPatients();
     }
 
+    /**
+     * Gets a page of all patients, ordered by name.
+     *
+     * @param limit  The page size, at most 500.
+     * @param cursor The nextCursor of the previous page, omitted for the first page.
+     * @return A page of patients.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'DOCTOR')")
+    @GetMapping(path = "/all", params = "limit")
+    public Page<Patient> getAllPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        return patientDao.getAllPatients(cursor, limit);
+    }
+
+    /**
+     * Exports all patients as newline-delimited JSON, streamed while they are read.
+     *
+     * @return A stream of all patients, one JSON object per line.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'DOCTOR')")
+    @GetMapping("/all/export")
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ndjsonExporter.export(patientDao::streamAll);
+    }
+
     /**
      * Gets a patient by its ID. Verifies permission by calling the access control service. If a user owns the patient, or if they are an admin or doctor, they can access the patient.
      *
@@ -70,6 +106,38 @@ public class PatientController {
         return patientDao.getPatientById(patientId);
     }
 
+    /**
+     * Gets everything shown when a patient is opened in one request: the patient, its tests with their results, its
+     * prescriptions with their refill requests and the messages about it. Access is checked once for all of it.
+     *
+     * @param patientId The ID of the patient.
+     * @param sections  The sections to include: tests, prescriptions and/or messages. All of them if omitted.
+     * @param principal The currently logged in user.
+     * @return The dashboard of the patient.
+     */
+    @GetMapping("/{patientId}/dashboard")
+    public PatientDashboard getDashboard(@PathVariable int patientId, @RequestParam(required = false) List<String> sections, Principal principal) {
+        Set<String> selected = new HashSet<>(PatientDashboardService.SECTIONS);
+        if (sections != null) {
+            selected.clear();
+            for (String section : sections) {
+                String name = section.trim().toLowerCase(Locale.ROOT);
+                if (!PatientDashboardService.SECTIONS.contains(name)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown section '" + section + "'. Sections are tests, prescriptions and messages.");
+                }
+                selected.add(name);
+            }
+        }
+        if (!accessControl.canAccessPatient(patientId, principal.getName())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have access to this patient.");
+        }
+        PatientDashboard dashboard = patientDashboardService.getDashboard(patientId, selected);
+        if (dashboard == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient not found.");
+        }
+        return dashboard;
+    }
+
     /**
      * Creates a new patient.
      *
@@ -80,7 +148,9 @@ public class PatientController {
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping
     public Patient create(@Valid @RequestBody Patient patient) {
-        return patientDao.create(patient);
+        Patient created = patientDao.create(patient);
+        accessControl.invalidatePatient(created.getPatientId());
+        return created;
     }
 
     /**
@@ -94,7 +164,9 @@ public class PatientController {
     @PutMapping("/{patientId}")
     public Patient update(@PathVariable int patientId, @Valid @RequestBody Patient patient) {
         patient.setPatientId(patientId);
-        return patientDao.updatePatient(patient);
+        Patient updated = patientDao.updatePatient(patient);
+        accessControl.invalidatePatient(patientId);
+        return updated;
     }
 
     /**
@@ -107,5 +179,6 @@ public class PatientController {
     @DeleteMapping("/{patientId}")
     public void delete(@PathVariable int patientId) {
         patientDao.deletePatient(patientId);
+        accessControl.invalidatePatient(patientId);
     }
 }
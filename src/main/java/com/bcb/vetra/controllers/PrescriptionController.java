@@ -27,11 +27,11 @@ public class PrescriptionController {
     private PatientDao patientDao;
     private AccessControl accessControl;
 
-    public PrescriptionController(PrescriptionDao prescriptionDao, UserDao userDao, PatientDao patientDao) {
+    public PrescriptionController(PrescriptionDao prescriptionDao, UserDao userDao, PatientDao patientDao, AccessControl accessControl) {
         this.prescriptionDao = prescriptionDao;
         this.userDao = userDao;
         this.patientDao = patientDao;
-        this.accessControl = new AccessControl(patientDao, userDao);
+        this.accessControl = accessControl;
     }
 
     /**
@@ -0,0 +1,52 @@
+package com.bcb.vetra.controllers;
+
+import com.bcb.vetra.services.querystats.QueryStatistics;
+import com.bcb.vetra.viewmodels.QueryStats;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * <strong>Controller for query statistics.</strong>
+ * <br><br>
+ * This class is responsible for handling all HTTP requests related to inspecting the statistics collected for the SQL
+ * statements the application runs.
+ */
+@PreAuthorize("hasAuthority('ADMIN')")
+@RestController
+@RequestMapping("/admin/queries")
+@CrossOrigin
+public class QueryStatsController {
+    private static final int MAX_TOP = 500;
+    private QueryStatistics queryStatistics;
+
+    public QueryStatsController(QueryStatistics queryStatistics) {
+        this.queryStatistics = queryStatistics;
+    }
+
+    /**
+     * Gets the statements that took the most time in total since startup or the last reset.
+     *
+     * @param top The number of statements to return.
+     * @return A list of query stats, slowest first.
+     */
+    @GetMapping
+    public List<QueryStats> getTop(@RequestParam(defaultValue = "20") int top) {
+        if (top < 1 || top > MAX_TOP) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "top must be between 1 and " + MAX_TOP + ".");
+        }
+        return queryStatistics.getTop(top);
+    }
+
+    /**
+     * Clears the collected statistics.
+     */
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @DeleteMapping
+    public void reset() {
+        queryStatistics.reset();
+    }
+}
@@ -5,13 +5,17 @@ import com.bcb.vetra.models.Notification;
 import com.bcb.vetra.models.Request;
 import com.bcb.vetra.models.User;
 import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.services.NdjsonExporter;
+import com.bcb.vetra.viewmodels.Page;
 import com.bcb.vetra.viewmodels.RequestWithPrescription;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
 import java.util.List;
@@ -31,13 +35,15 @@ public class RequestController {
     private UserDao userDao;
     private AccessControl accessControl;
     private NotificationDao notificationDao;
+    private NdjsonExporter ndjsonExporter;
 
-    public RequestController(RequestDao requestDao, PrescriptionDao prescriptionDao, PatientDao patientDao, UserDao userDao, NotificationDao notificationDao) {
+    public RequestController(RequestDao requestDao, PrescriptionDao prescriptionDao, PatientDao patientDao, UserDao userDao, NotificationDao notificationDao, AccessControl accessControl, NdjsonExporter ndjsonExporter) {
+        this.ndjsonExporter = ndjsonExporter;
         this.requestDao = requestDao;
         this.prescriptionDao = prescriptionDao;
         this.patientDao = patientDao;
         this.userDao = userDao;
-        this.accessControl = new AccessControl(patientDao, userDao);
+        this.accessControl = accessControl;
         this.notificationDao = notificationDao;
     }
 
@@ -52,6 +58,30 @@ public class RequestController {
         return requestDao.getAllRequestsWithPrescription();
     }
 
+    /**
+     * Gets a page of all requests, oldest first.
+     *
+     * @param limit  The page size, at most 500.
+     * @param cursor The nextCursor of the previous page, omitted for the first page.
+     * @return A page of requests.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'DOCTOR')")
+    @GetMapping(path = "/requests", params = "limit")
+    public Page<RequestWithPrescription> getPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        return requestDao.getAllRequestsWithPrescription(cursor, limit);
+    }
+
+    /**
+     * Exports all requests as newline-delimited JSON, streamed while they are read.
+     *
+     * @return A stream of all requests, one JSON object per line.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'DOCTOR')")
+    @GetMapping("/requests/export")
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ndjsonExporter.export(requestDao::streamAllWithPrescription);
+    }
+
     /**
      * Gets all requests for a patient. Verifies permission by calling the access control service.
      *
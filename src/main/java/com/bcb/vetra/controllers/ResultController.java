@@ -5,9 +5,7 @@ import com.bcb.vetra.daos.ResultDao;
 import com.bcb.vetra.daos.TestDao;
 import com.bcb.vetra.daos.UserDao;
 import com.bcb.vetra.models.Result;
-import com.bcb.vetra.services.vmsintegration.MockVmsIntegration;
 import com.bcb.vetra.services.AccessControl;
-import com.bcb.vetra.services.vmsintegration.VmsIntegration;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -31,12 +29,10 @@ public class ResultController {
     private PatientDao patientDao;
     private UserDao userDao;
     private AccessControl accessControl;
-    private VmsIntegration vmsIntegration;
-    public ResultController(ResultDao resultDao, TestDao testDao, UserDao userDao, PatientDao patientDao) {
+    public ResultController(ResultDao resultDao, TestDao testDao, UserDao userDao, PatientDao patientDao, AccessControl accessControl) {
         this.resultDao = resultDao;
         this.testDao = testDao;
-        this.accessControl = new AccessControl(patientDao, userDao, testDao);
-        this.vmsIntegration = new MockVmsIntegration(testDao, resultDao);
+        this.accessControl = accessControl;
     }
 
     /**
@@ -52,7 +48,6 @@ public class ResultController {
         if (!accessControl.canAccessPatient(patientId, principal.getName())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have access to this patient.");
         }
-        vmsIntegration.updateDB();
         return resultDao.getResultsForTest(testId);
     }
 
@@ -74,7 +69,6 @@ public class ResultController {
         if (!accessControl.canAccessResult(result, testId, principal.getName())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have access to this result.");
         }
-        vmsIntegration.updateDB();
         return result;
     }
 
@@ -0,0 +1,99 @@
+package com.bcb.vetra.controllers;
+
+import com.bcb.vetra.services.vmsintegration.SyncJobState;
+import com.bcb.vetra.services.vmsintegration.VmsSyncEngine;
+import com.bcb.vetra.services.vmsintegration.governor.GovernorStats;
+import com.bcb.vetra.services.vmsintegration.governor.OutboundCallGovernor;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <strong>Controller for the VMS sync engine.</strong>
+ * <br><br>
+ * This class is responsible for handling all HTTP requests related to inspecting and manually triggering the background VMS sync.
+ */
+@PreAuthorize("hasAuthority('ADMIN')")
+@RestController
+@RequestMapping("/sync")
+@CrossOrigin
+public class SyncController {
+    private VmsSyncEngine vmsSyncEngine;
+    private List<OutboundCallGovernor> governors;
+
+    public SyncController(VmsSyncEngine vmsSyncEngine, List<OutboundCallGovernor> governors) {
+        this.vmsSyncEngine = vmsSyncEngine;
+        this.governors = governors;
+    }
+
+    /**
+     * Gets the job state of every enabled VMS source.
+     *
+     * @return A list of job states.
+     */
+    @GetMapping
+    public List<SyncJobState> getAll() {
+        return vmsSyncEngine.getStates();
+    }
+
+    /**
+     * Gets the counters of the outbound call governors: calls sent, queued for a rate limit permit, throttled, retried,
+     * rejected by an open circuit and failed, and the circuit state of each endpoint.
+     *
+     * @return A list of governor stats, one per VMS vendor.
+     */
+    @GetMapping("/governor")
+    public List<GovernorStats> getGovernorStats() {
+        List<GovernorStats> stats = new ArrayList<>();
+        for (OutboundCallGovernor governor : governors) {
+            stats.add(governor.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the job state of a VMS source.
+     *
+     * @param source The name of the source.
+     * @return The job state of the source.
+     */
+    @GetMapping("/{source}")
+    public SyncJobState get(@PathVariable String source) {
+        SyncJobState state = vmsSyncEngine.getState(source);
+        if (state == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Sync source is not enabled.");
+        }
+        return state;
+    }
+
+    /**
+     * Triggers a sync of every enabled VMS source. The sync runs in the background.
+     *
+     * @return A list of job states.
+     */
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping
+    public List<SyncJobState> triggerAll() {
+        return vmsSyncEngine.triggerAll();
+    }
+
+    /**
+     * Triggers a sync of a VMS source. The sync runs in the background.
+     *
+     * @param source The name of the source.
+     * @return The job state of the source.
+     */
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping("/{source}")
+    public SyncJobState trigger(@PathVariable String source) {
+        SyncJobState state = vmsSyncEngine.trigger(source);
+        if (state == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Sync source is not enabled.");
+        }
+        return state;
+    }
+}
@@ -3,9 +3,8 @@ package com.bcb.vetra.controllers;
 import com.bcb.vetra.daos.*;
 import com.bcb.vetra.models.Notification;
 import com.bcb.vetra.models.Test;
-import com.bcb.vetra.services.vmsintegration.MockVmsIntegration;
 import com.bcb.vetra.services.AccessControl;
-import com.bcb.vetra.services.vmsintegration.VmsIntegration;
+import com.bcb.vetra.viewmodels.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -29,12 +28,10 @@ public class TestController {
     private PatientDao patientDao;
     private UserDao userDao;
     private AccessControl accessControl;
-    private VmsIntegration vmsIntegration;
-    public TestController(TestDao testDao, UserDao userDao, PatientDao patientDao, ResultDao resultDao, NotificationDao notificationDao) {
+    public TestController(TestDao testDao, UserDao userDao, PatientDao patientDao, ResultDao resultDao, NotificationDao notificationDao, AccessControl accessControl) {
         this.testDao = testDao;
         this.resultDao = resultDao;
-        this.accessControl = new AccessControl(patientDao, userDao);
-        this.vmsIntegration = new MockVmsIntegration(testDao, resultDao);
+        this.accessControl = accessControl;
     }
 
     /**
@@ -49,10 +46,26 @@ public class TestController {
         if (!accessControl.canAccessPatient(patientId, principal.getName())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "You do not have access to this patient.");
         }
-        vmsIntegration.updateDB();
         return testDao.getTestsForPatient(patientId);
     }
 
+    /**
+     * Gets a page of the tests for a patient, newest first. Verifies permission by calling the access control service.
+     *
+     * @param patientId The ID of the patient.
+     * @param limit     The page size, at most 500.
+     * @param cursor    The nextCursor of the previous page, omitted for the first page.
+     * @param principal The currently logged-in user.
+     * @return A page of tests for the patient.
+     */
+    @GetMapping(path = "/patients/{patientId}/tests", params = "limit")
+    public Page<Test> getPage(@PathVariable int patientId, @RequestParam int limit, @RequestParam(required = false) String cursor, Principal principal) {
+        if (!accessControl.canAccessPatient(patientId, principal.getName())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "You do not have access to this patient.");
+        }
+        return testDao.getTestsForPatient(patientId, cursor, limit);
+    }
+
     /**
      * Gets a test by its ID. Verifies permission by calling the access control service.
      *
@@ -67,7 +80,6 @@ public class TestController {
         if (!accessControl.canAccessTest(test, principal.getName())) {
             return null;
         }
-        vmsIntegration.updateDB();
         return test;
     }
 
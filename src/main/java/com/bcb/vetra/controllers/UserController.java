@@ -2,6 +2,8 @@ package com.bcb.vetra.controllers;
 
 import com.bcb.vetra.daos.UserDao;
 import com.bcb.vetra.models.User;
+import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.viewmodels.Page;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -22,9 +24,11 @@ import java.util.List;
 public class UserController {
     private UserDao userDao;
     private PasswordEncoder passwordEncoder;
-    public UserController(UserDao userDao, PasswordEncoder passwordEncoder) {
+    private AccessControl accessControl;
+    public UserController(UserDao userDao, PasswordEncoder passwordEncoder, AccessControl accessControl) {
         this.userDao = userDao;
         this.passwordEncoder = passwordEncoder;
+        this.accessControl = accessControl;
     }
 
     /**
@@ -38,6 +42,19 @@ public class UserController {
         return userDao.getUsers();
     }
 
+    /**
+     * Gets a page of all users, ordered by username.
+     *
+     * @param limit  The page size, at most 500.
+     * @param cursor The nextCursor of the previous page, omitted for the first page.
+     * @return A page of users.
+     */
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'DOCTOR')")
+    @GetMapping(path = "/users", params = "limit")
+    public Page<User> getPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        return userDao.getUsers(cursor, limit);
+    }
+
     /**
      * Gets a user by their username.
      *
@@ -156,6 +173,7 @@ public class UserController {
     @DeleteMapping(path = "users/{username}")
     public void delete(@PathVariable String username) {
         userDao.deleteUser(username);
+        accessControl.invalidateUser(username);
     }
 
     //------------------------
@@ -182,7 +200,9 @@ public class UserController {
     @PreAuthorize("hasAuthority('ADMIN')")
     @PostMapping(path = "users/{username}/roles")
     public List<String> addRole(@PathVariable String username, @RequestBody String role) {
-        return userDao.addRole(username, role.toUpperCase());
+        List<String> roles = userDao.addRole(username, role.toUpperCase());
+        accessControl.invalidateUser(username);
+        return roles;
     }
 
     /**
@@ -196,6 +216,7 @@ public class UserController {
     @DeleteMapping(path = "users/{username}/roles/{role}")
     public void deleteRole(@PathVariable String username, @PathVariable String role) {
         userDao.deleteRole(username, role.toUpperCase());
+        accessControl.invalidateUser(username);
     }
 
 }
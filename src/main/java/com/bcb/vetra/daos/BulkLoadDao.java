@@ -0,0 +1,111 @@
+package com.bcb.vetra.daos;
+
+import com.bcb.vetra.exception.DaoException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * <strong>Data Access Object for bulk loads.</strong>
+ * <br><br>
+ * This class is responsible for loading large numbers of generated rows with PostgreSQL's COPY, which skips the
+ * per-statement parsing, planning and round trips of inserts. Every method joins the current transaction, so a load can
+ * be committed or rolled back as a whole.
+ * <br><br>
+ * Models: <i>CopyRows</i>
+ */
+@Component
+public class BulkLoadDao {
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BulkLoadDao(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Copies the rows into their table and empties the buffer.
+     *
+     * @param rows
+     * @return long The number of rows copied.
+     */
+    public long copy(CopyRows rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        String sql = "COPY " + rows.getTable() + " (" + rows.getColumns() + ") FROM STDIN";
+        byte[] data = rows.toBytes();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        CopyIn copyIn = null;
+        try {
+            copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            copyIn.writeToCopy(data, 0, data.length);
+            long copied = copyIn.endCopy();
+            rows.clear();
+            return copied;
+        } catch (SQLException e) {
+            cancel(copyIn);
+            throw new DaoException("Error copying rows into " + rows.getTable() + ".", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Locks tables against writes by other transactions until the current transaction ends. Reads are not blocked.
+     *
+     * @param tables
+     */
+    public void lockForLoad(String... tables) {
+        jdbcTemplate.execute("LOCK TABLE " + String.join(", ", tables) + " IN EXCLUSIVE MODE;");
+    }
+
+    /**
+     * Takes IDs from the sequence of a serial ID column, so rows can be copied with explicit IDs that no other
+     * transaction is given. Sequences are not transactional, so the IDs stay taken even if the load rolls back.
+     *
+     * @param table
+     * @param idColumn
+     * @param count
+     * @return long[] of the IDs, in the order the sequence gave them
+     */
+    public long[] reserveIds(String table, String idColumn, int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence(?, ?)) FROM generate_series(1, ?);",
+                Long.class,
+                table,
+                idColumn,
+                count
+        ).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Updates the planner statistics of tables, so queries are planned for their new size.
+     *
+     * @param tables
+     */
+    public void analyze(String... tables) {
+        jdbcTemplate.execute("ANALYZE " + String.join(", ", tables) + ";");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static void cancel(CopyIn copyIn) {
+        try {
+            if (copyIn != null && copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        } catch (SQLException ignored) {
+            // The transaction is rolled back anyway.
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.bcb.vetra.daos;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * <strong>Copy Rows</strong>
+ * <br><br>
+ * Rows of one table in the text format of PostgreSQL's COPY: one line per row, tab separated columns and \N for
+ * NULL. Rows are appended column by column and loaded with BulkLoadDao.copy, which empties the buffer so it can be
+ * filled again.
+ */
+public class CopyRows {
+    private final String table;
+    private final String columns;
+    private final StringBuilder buffer = new StringBuilder(1 << 16);
+    private boolean rowStarted;
+    private long rowCount;
+
+    /**
+     * @param table   The table name, quoted if it is a reserved word, e.g. "\"user\"".
+     * @param columns The columns in the order they are added, comma separated.
+     */
+    public CopyRows(String table, String columns) {
+        this.table = table;
+        this.columns = columns;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the number of rows in the buffer.
+     *
+     * @return long
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public CopyRows add(long value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    public CopyRows add(boolean value) {
+        separate();
+        buffer.append(value ? 't' : 'f');
+        return this;
+    }
+
+    public CopyRows add(LocalDate value) {
+        return value == null ? addNull() : addRaw(value.toString());
+    }
+
+    public CopyRows add(LocalDateTime value) {
+        return value == null ? addNull() : addRaw(value.toString());
+    }
+
+    /**
+     * Adds a text column, escaping the characters that have a meaning in the COPY text format.
+     *
+     * @param value
+     * @return CopyRows
+     */
+    public CopyRows add(String value) {
+        if (value == null) {
+            return addNull();
+        }
+        separate();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+        return this;
+    }
+
+    public CopyRows addNull() {
+        separate();
+        buffer.append("\\N");
+        return this;
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void endRow() {
+        buffer.append('\n');
+        rowStarted = false;
+        rowCount++;
+    }
+
+    /**
+     * Gets the rows as UTF-8, ready to be sent to COPY.
+     *
+     * @return byte[]
+     */
+    public byte[] toBytes() {
+        return buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void clear() {
+        buffer.setLength(0);
+        rowStarted = false;
+        rowCount = 0;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private CopyRows addRaw(String value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    private void separate() {
+        if (rowStarted) {
+            buffer.append('\t');
+        }
+        rowStarted = true;
+    }
+}
@@ -1,13 +1,16 @@
 package com.bcb.vetra.daos;
 
 import com.bcb.vetra.models.Message;
+import com.bcb.vetra.viewmodels.Page;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * <strong>Data Access Object for messages.</strong>
@@ -19,9 +22,11 @@ import java.util.List;
 @Component
 public class MessageDao {
     private JdbcTemplate jdbcTemplate;
+    private RowStreamer rowStreamer;
 
     public MessageDao(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.rowStreamer = new RowStreamer(jdbcTemplate.getDataSource());
     }
 
     /**
@@ -36,6 +41,33 @@ public class MessageDao {
                 this::mapToMessage, username, username);
     }
 
+    /**
+     * Gets a page of the messages sent to or from a specific username, newest first.
+     * @param username
+     * @param cursor The cursor of the previous page, or null for the first page.
+     * @param limit The page size.
+     * @return Page of messages
+     */
+    public Page<Message> getMessagesByUsername(String username, String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 1);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<Message> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT * " +
+                            "FROM message " +
+                            "WHERE (to_username = ? OR from_username = ?) " +
+                            "ORDER BY message_id DESC LIMIT ?;",
+                    this::mapToMessage, username, username, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT * " +
+                            "FROM message " +
+                            "WHERE (to_username = ? OR from_username = ?) AND message_id < ? " +
+                            "ORDER BY message_id DESC LIMIT ?;",
+                    this::mapToMessage, username, username, PageCursor.parseInt(after[0]), pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, message -> PageCursor.encode(message.getMessageId()));
+    }
+
     /**
      * Gets a message by ID.
      * @param id
@@ -76,6 +108,36 @@ public class MessageDao {
         return jdbcTemplate.query("SELECT * FROM message;", this::mapToMessage);
     }
 
+    /**
+     * Gets a page of all messages, newest first.
+     * @param cursor The cursor of the previous page, or null for the first page.
+     * @param limit The page size.
+     * @return Page of messages
+     */
+    public Page<Message> getAll(String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 1);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<Message> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT * FROM message ORDER BY message_id DESC LIMIT ?;",
+                    this::mapToMessage, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT * FROM message WHERE message_id < ? ORDER BY message_id DESC LIMIT ?;",
+                    this::mapToMessage, PageCursor.parseInt(after[0]), pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, message -> PageCursor.encode(message.getMessageId()));
+    }
+
+    /**
+     * Streams all messages to a consumer, oldest first, through a RowStreamer.
+     *
+     * @param consumer Called with each Message in order.
+     */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Message> consumer) {
+        rowStreamer.stream("SELECT * FROM message ORDER BY message_id;", this::mapToMessage, consumer);
+    }
+
     /**
      * Gets all messages associated with a specific patientId.
      * @param id
@@ -120,24 +182,22 @@ public class MessageDao {
      * @return The created message
      */
     public Message create(Message message) {
-        Integer id;
         try {
-        id = jdbcTemplate.queryForObject(
-                "INSERT INTO message (body, from_username, to_username, test_id, prescription_id, patient_id) " +
-                        "VALUES (?,?,?,?,?,?) " +
-                        "RETURNING message_id;",
-                Integer.class,
-                message.getBody(),
-                message.getFromUsername(),
-                message.getToUsername(),
-                message.getTestId() == 0 ? null : message.getTestId(),
-                message.getPrescriptionId() == 0 ? null : message.getPrescriptionId(),
-                message.getPatientId()
-        );
+            return jdbcTemplate.queryForObject(
+                    "INSERT INTO message (body, from_username, to_username, test_id, prescription_id, patient_id) " +
+                            "VALUES (?,?,?,?,?,?) " +
+                            "RETURNING *;",
+                    this::mapToMessage,
+                    message.getBody(),
+                    message.getFromUsername(),
+                    message.getToUsername(),
+                    message.getTestId() == 0 ? null : message.getTestId(),
+                    message.getPrescriptionId() == 0 ? null : message.getPrescriptionId(),
+                    message.getPatientId()
+            );
         } catch (EmptyResultDataAccessException e) {
             return null;
         }
-        return getMessageById(id);
     }
 
     /**
@@ -146,18 +206,23 @@ public class MessageDao {
      * @return The updated message
      */
     public Message update(Message message) {
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE message SET body = ?, from_username = ?, to_username = ?, test_id = ?, prescription_id = ?, patient_id = ? " +
-                        "WHERE message_id = ?;",
-                message.getBody(),
-                message.getFromUsername(),
-                message.getToUsername(),
-                message.getTestId(),
-                message.getPrescriptionId(),
-                message.getPatientId(),
-                message.getMessageId()
-        );
-        return getMessageById(message.getMessageId());
+        try {
+            return jdbcTemplate.queryForObject(
+                    "UPDATE message SET body = ?, from_username = ?, to_username = ?, test_id = ?, prescription_id = ?, patient_id = ? " +
+                            "WHERE message_id = ? " +
+                            "RETURNING *;",
+                    this::mapToMessage,
+                    message.getBody(),
+                    message.getFromUsername(),
+                    message.getToUsername(),
+                    message.getTestId() == 0 ? null : message.getTestId(),
+                    message.getPrescriptionId() == 0 ? null : message.getPrescriptionId(),
+                    message.getPatientId(),
+                    message.getMessageId()
+            );
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
     }
 
     /**
@@ -1,9 +1,17 @@
 package com.bcb.vetra.daos;
 
+import com.bcb.vetra.models.SyncWatermark;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class MetaDao {
@@ -20,6 +28,27 @@ public class MetaDao {
         return LocalDateTime.parse(timestamp);
     }
 
+    /**
+     * Checks whether an action has been recorded.
+     *
+     * @param action
+     * @return boolean
+     */
+    public boolean actionExists(String action) {
+        Boolean exists = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM \"meta\" WHERE action = ?);", Boolean.class, action.toLowerCase());
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Records when an action was performed.
+     *
+     * @param action
+     * @param performedAt
+     */
+    public void setTimeForAction(String action, LocalDateTime performedAt) {
+        jdbcTemplate.update("UPDATE \"meta\" SET performed_at = ? WHERE action = ?;", performedAt, action.toLowerCase());
+    }
+
     public void setTimeForActionToNow(String action) {
         action = action.toLowerCase();
         jdbcTemplate.update("UPDATE \"meta\" SET performed_at = NOW() WHERE action = ?;", action);
@@ -30,4 +59,145 @@ public class MetaDao {
         jdbcTemplate.update("INSERT INTO \"meta\" (action) VALUES (?);", action);
     }
 
+    /**
+     * Gets the high-water mark of an entity imported from a VMS: the largest source modified_at committed so far.
+     *
+     * @param vmsName
+     * @param entity
+     * @return long epoch seconds, or 0 if nothing has been imported yet
+     */
+    public long getWatermark(String vmsName, String entity) {
+        Long highWaterMark = jdbcTemplate.queryForObject(
+                "SELECT COALESCE((SELECT high_water_mark FROM sync_watermark WHERE vms_name = ? AND entity = ?), 0);",
+                Long.class,
+                vmsName.toLowerCase(),
+                entity.toLowerCase()
+        );
+        return highWaterMark == null ? 0 : highWaterMark;
+    }
+
+    /**
+     * Gets the high-water marks of every entity imported from every VMS.
+     *
+     * @return List of SyncWatermark
+     */
+    public List<SyncWatermark> getWatermarks() {
+        return jdbcTemplate.query(
+                "SELECT * FROM sync_watermark ORDER BY vms_name, entity;",
+                (resultSet, rowNumber) -> new SyncWatermark(
+                        resultSet.getString("vms_name"),
+                        resultSet.getString("entity"),
+                        resultSet.getLong("high_water_mark"),
+                        resultSet.getTimestamp("updated_at").toLocalDateTime()
+                )
+        );
+    }
+
+    /**
+     * Gets when every action was last performed.
+     *
+     * @return Map of action to time
+     */
+    public Map<String, Instant> getActionTimes() {
+        Map<String, Instant> actionTimes = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT action, performed_at FROM \"meta\" ORDER BY action;",
+                (RowCallbackHandler) resultSet -> actionTimes.put(resultSet.getString("action"), resultSet.getTimestamp("performed_at").toInstant())
+        );
+        return actionTimes;
+    }
+
+    /**
+     * Advances the high-water mark of an entity imported from a VMS. The mark never moves backwards. Call it in the
+     * same transaction as the import of the rows it covers.
+     *
+     * @param vmsName
+     * @param entity
+     * @param highWaterMark epoch seconds
+     */
+    public void advanceWatermark(String vmsName, String entity, long highWaterMark) {
+        jdbcTemplate.update(
+                "INSERT INTO sync_watermark (vms_name, entity, high_water_mark) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (vms_name, entity) DO UPDATE " +
+                        "SET high_water_mark = GREATEST(sync_watermark.high_water_mark, EXCLUDED.high_water_mark), " +
+                        "updated_at = NOW();",
+                vmsName.toLowerCase(),
+                entity.toLowerCase(),
+                highWaterMark
+        );
+    }
+
+    /**
+     * Parks records of a VMS that could not be imported, so a later sync can request them again by ID. A record that
+     * is already parked keeps its original time. Call it in the same transaction as the watermark it falls behind.
+     *
+     * @param vmsName
+     * @param entity
+     * @param vmsIds
+     */
+    public void parkRecords(String vmsName, String entity, Collection<String> vmsIds) {
+        if (vmsIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(
+                "INSERT INTO sync_retry (vms_name, entity, vms_id) SELECT ?, ?, unnest(?::varchar[]) " +
+                        "ON CONFLICT (vms_name, entity, vms_id) DO NOTHING;",
+                vmsName.toLowerCase(),
+                entity.toLowerCase(),
+                vmsIds.toArray(new String[0])
+        );
+    }
+
+    /**
+     * Gets the IDs of the parked records of an entity imported from a VMS, oldest first.
+     *
+     * @param vmsName
+     * @param entity
+     * @return List of VMS IDs
+     */
+    public List<String> getParkedRecords(String vmsName, String entity) {
+        return jdbcTemplate.queryForList(
+                "SELECT vms_id FROM sync_retry WHERE vms_name = ? AND entity = ? ORDER BY parked_at, vms_id;",
+                String.class,
+                vmsName.toLowerCase(),
+                entity.toLowerCase()
+        );
+    }
+
+    /**
+     * Removes records from the parked records of an entity, once they have been imported or are gone from the VMS.
+     *
+     * @param vmsName
+     * @param entity
+     * @param vmsIds
+     */
+    public void unparkRecords(String vmsName, String entity, Collection<String> vmsIds) {
+        if (vmsIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(
+                "DELETE FROM sync_retry WHERE vms_name = ? AND entity = ? AND vms_id = ANY(?);",
+                vmsName.toLowerCase(),
+                entity.toLowerCase(),
+                vmsIds.toArray(new String[0])
+        );
+    }
+
+    /**
+     * Gives up on the parked records of an entity that have been waiting longer than the retention.
+     *
+     * @param vmsName
+     * @param entity
+     * @param retention
+     * @return int number of records dropped
+     */
+    public int dropParkedRecords(String vmsName, String entity, Duration retention) {
+        return jdbcTemplate.update(
+                "DELETE FROM sync_retry WHERE vms_name = ? AND entity = ? AND parked_at < NOW() - ? * INTERVAL '1 second';",
+                vmsName.toLowerCase(),
+                entity.toLowerCase(),
+                retention.toSeconds()
+        );
+    }
+
 }
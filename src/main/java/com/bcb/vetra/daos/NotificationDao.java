@@ -3,6 +3,7 @@ package com.bcb.vetra.daos;
 import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.models.Notification;
 import com.bcb.vetra.models.Patient;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
@@ -14,9 +15,11 @@ import java.util.List;
 @Component
 public class NotificationDao {
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public NotificationDao(JdbcTemplate jdbcTemplate) {
+    public NotificationDao(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
     public Notification getNotificationById(int id) {
@@ -30,16 +33,30 @@ public class NotificationDao {
     }
 
     public List<Notification> getUnreadNotificationsByUsername(String username) {
-        return jdbcTemplate.query("SELECT * FROM notification WHERE username = ? AND is_read = false;", this::mapToNotification, username);
+        return jdbcTemplate.query("SELECT * FROM notification WHERE username = ? AND is_read = false ORDER BY notification_id;", this::mapToNotification, username);
+    }
+
+    /**
+     * Gets the unread notifications of a user created after a given notification. Used to catch up a notification
+     * stream when a client reconnects.
+     *
+     * @param username
+     * @param afterId The ID of the last notification the client received.
+     * @return List of Notification
+     */
+    public List<Notification> getUnreadNotificationsByUsernameAfter(String username, int afterId) {
+        return jdbcTemplate.query("SELECT * FROM notification WHERE username = ? AND is_read = false AND notification_id > ? ORDER BY notification_id;",
+                this::mapToNotification, username, afterId);
     }
 
     public Notification create(Notification notification) {
         System.out.println(notification.toString());
+        Notification created;
         try {
-            Integer id = jdbcTemplate.queryForObject(
+            created = jdbcTemplate.queryForObject(
                             "INSERT INTO notification (username, patient_id, message_id, request_id, test_id, is_read) " +
-                            "VALUES (?, ?, ?, ?, ?, ?) RETURNING notification_id;",
-                    Integer.class,
+                            "VALUES (?, ?, ?, ?, ?, ?) RETURNING *;",
+                    this::mapToNotification,
                     notification.getUsername(),
                     notification.getPatientId() == 0 ? null : notification.getPatientId(),
                     notification.getMessageId() == 0 ? null : notification.getMessageId(),
@@ -47,15 +64,38 @@ public class NotificationDao {
                     notification.getTestId() == 0 ? null : notification.getTestId(),
                     notification.isRead()
             );
-            return getNotificationById(id);
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create notification.");
         }
+        eventPublisher.publishEvent(new NotificationsCreatedEvent(List.of(created)));
+        return created;
+    }
+
+    /**
+     * Creates a notification for the owner of each test's patient with a single statement.
+     *
+     * @param testIds
+     * @return List of the created Notification
+     */
+    public List<Notification> createForTests(List<Integer> testIds) {
+        List<Notification> created = jdbcTemplate.query(
+                "INSERT INTO notification (username, patient_id, test_id, is_read) " +
+                        "SELECT patient.owner_username, test.patient_id, test.test_id, false " +
+                        "FROM test " +
+                        "JOIN patient ON patient.patient_id = test.patient_id " +
+                        "WHERE test.test_id = ANY(?) " +
+                        "RETURNING *;",
+                this::mapToNotification,
+                (Object) testIds.toArray(new Integer[0])
+        );
+        eventPublisher.publishEvent(new NotificationsCreatedEvent(created));
+        return created;
     }
 
     public Notification update(Notification notification) {
         try {
-            jdbcTemplate.update("UPDATE notification SET username = ?, patient_id = ?, message_id = ?, request_id = ?, test_id = ?, is_read = ?, timestamp = ? WHERE notification_id = ?",
+            return jdbcTemplate.queryForObject("UPDATE notification SET username = ?, patient_id = ?, message_id = ?, request_id = ?, test_id = ?, is_read = ?, timestamp = ? WHERE notification_id = ? RETURNING *;",
+                    this::mapToNotification,
                     notification.getUsername(),
                     notification.getPatientId(),
                     notification.getMessageId(),
@@ -65,7 +105,6 @@ public class NotificationDao {
                     notification.getTimestamp(),
                     notification.getId()
             );
-            return getNotificationById(notification.getId());
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to update notification.");
         }
@@ -0,0 +1,14 @@
+package com.bcb.vetra.daos;
+
+import com.bcb.vetra.models.Notification;
+
+import java.util.List;
+
+/**
+ * Published by NotificationDao for the notifications it creates, so they can be pushed to clients without the DAO
+ * knowing who listens. Listeners run in the creating thread; NotificationHub waits for its transaction, if there is one, to commit.
+ *
+ * @param notifications
+ */
+public record NotificationsCreatedEvent(List<Notification> notifications) {
+}
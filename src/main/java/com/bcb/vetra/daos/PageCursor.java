@@ -0,0 +1,135 @@
+package com.bcb.vetra.daos;
+
+import com.bcb.vetra.exception.InvalidCursorException;
+import com.bcb.vetra.viewmodels.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <strong>Keyset pagination cursors.</strong>
+ * <br><br>
+ * A cursor holds the sort key of the last row of a page, so the next page can continue with a
+ * <i>WHERE (key) &gt; (cursor)</i> condition on an indexed ordering instead of an OFFSET. Clients treat the cursor as
+ * an opaque string.
+ */
+final class PageCursor {
+    static final int MAX_LIMIT = 500;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private PageCursor() {
+    }
+
+    /**
+     * Encodes the sort key of a row as a cursor.
+     *
+     * @param values The values of the sort key columns, in order.
+     * @return String
+     */
+    static String encode(Object... values) {
+        StringBuilder cursor = new StringBuilder();
+        for (Object value : values) {
+            if (!cursor.isEmpty()) {
+                cursor.append('.');
+            }
+            cursor.append(ENCODER.encodeToString(String.valueOf(value).getBytes(StandardCharsets.UTF_8)));
+        }
+        return cursor.toString();
+    }
+
+    /**
+     * Decodes a cursor into the values of its sort key.
+     *
+     * @param cursor The cursor sent by the client, or null for the first page.
+     * @param parts  The number of sort key columns expected.
+     * @return Array of String, or null for the first page
+     * @throws InvalidCursorException if the cursor is malformed.
+     */
+    static String[] decode(String cursor, int parts) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] encoded = cursor.split("\\.", -1);
+        if (encoded.length != parts) {
+            throw new InvalidCursorException("Expected a cursor with " + parts + " parts.");
+        }
+        String[] values = new String[parts];
+        try {
+            for (int i = 0; i < parts; i++) {
+                values[i] = new String(DECODER.decode(encoded[i]), StandardCharsets.UTF_8);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Cursor is not valid.", e);
+        }
+        return values;
+    }
+
+    /**
+     * Decodes a numeric cursor part.
+     *
+     * @param value
+     * @return int
+     * @throws InvalidCursorException if the value is not a number.
+     */
+    static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Cursor is not valid.", e);
+        }
+    }
+
+    /**
+     * Checks a timestamp cursor part before it is cast to a timestamp in SQL.
+     *
+     * @param value
+     * @param sentinel The value that stands in for a missing timestamp, which is accepted as is.
+     * @return String
+     * @throws InvalidCursorException if the value is neither a LocalDateTime nor the sentinel.
+     */
+    static String parseTimestamp(String value, String sentinel) {
+        if (value.equals(sentinel)) {
+            return value;
+        }
+        try {
+            LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCursorException("Cursor is not valid.", e);
+        }
+        return value;
+    }
+
+    /**
+     * Clamps a requested page size to between 1 and MAX_LIMIT.
+     *
+     * @param limit
+     * @return int
+     */
+    static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Builds a page from rows fetched with <i>LIMIT limit + 1</i>. The extra row only signals that another page exists
+     * and is dropped.
+     *
+     * @param rows      The fetched rows.
+     * @param limit     The page size.
+     * @param cursorFor Encodes the cursor for the last row of the page.
+     * @return Page
+     */
+    static <T> Page<T> toPage(List<T> rows, int limit, Function<T, String> cursorFor) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new Page<>(items, cursorFor.apply(items.get(limit - 1)));
+    }
+}
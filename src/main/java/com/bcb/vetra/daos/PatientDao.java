@@ -2,14 +2,18 @@ package com.bcb.vetra.daos;
 
 import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.models.Patient;
+import com.bcb.vetra.viewmodels.Page;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * <strong>Data Access Object for patients.</strong>
@@ -20,10 +24,14 @@ import java.util.*;
  */
 @Component
 public class PatientDao {
+    private static final int BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final RowStreamer rowStreamer;
 
     public PatientDao(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.rowStreamer = new RowStreamer(dataSource);
     }
 
     /**
@@ -59,6 +67,27 @@ public class PatientDao {
         return jdbcTemplate.queryForList("SELECT vms_id FROM \"patient_vms\" WHERE vms_name = 'ezyvet';", String.class);
     }
 
+    /**
+     * Gets the local IDs of patients by their IDs in a VMS, in one query. IDs without a patient are left out.
+     *
+     * @param vmsName
+     * @param vmsIds
+     * @return Map of VMS ID to patient ID
+     */
+    public Map<String, Integer> getPatientIdsByVmsIds(String vmsName, Collection<String> vmsIds) {
+        Map<String, Integer> patientIds = new HashMap<>();
+        if (vmsIds.isEmpty()) {
+            return patientIds;
+        }
+        jdbcTemplate.query(
+                "SELECT vms_id, patient_id FROM patient_vms WHERE vms_name = ? AND vms_id = ANY(?);",
+                (RowCallbackHandler) resultSet -> patientIds.put(resultSet.getString("vms_id"), resultSet.getInt("patient_id")),
+                vmsName.toLowerCase(),
+                vmsIds.toArray(new String[0])
+        );
+        return patientIds;
+    }
+
     /**
      * Checks if a patient exists by username and patient name.
      *
@@ -127,6 +156,39 @@ public class PatientDao {
         return jdbcTemplate.query("SELECT * FROM patient ORDER BY first_name", this::mapToPatient);
     }
 
+    /**
+     * Gets a page of all patients, ordered by name.
+     *
+     * @param cursor The cursor of the previous page, or null for the first page.
+     * @param limit  The page size.
+     * @return Page of patients
+     */
+    public Page<Patient> getAllPatients(String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 2);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<Patient> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT * FROM patient ORDER BY first_name, patient_id LIMIT ?;",
+                    this::mapToPatient, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT * FROM patient " +
+                            "WHERE (first_name, patient_id) > (?, ?) " +
+                            "ORDER BY first_name, patient_id LIMIT ?;",
+                    this::mapToPatient, after[0], PageCursor.parseInt(after[1]), pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, patient -> PageCursor.encode(patient.getName(), patient.getPatientId()));
+    }
+
+    /**
+     * Streams all patients to a consumer, ordered by patient ID, through a RowStreamer.
+     *
+     * @param consumer Called with each Patient in order.
+     */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Patient> consumer) {
+        rowStreamer.stream("SELECT * FROM patient ORDER BY patient_id;", this::mapToPatient, consumer);
+    }
+
     /**
      * Creates a new patient.
      *
@@ -135,25 +197,101 @@ public class PatientDao {
      */
     public Patient create(Patient patient) {
         try {
-            Integer id = jdbcTemplate.queryForObject(
+            Patient created = jdbcTemplate.queryForObject(
                     "INSERT INTO patient (first_name, birthday, species, sex, owner_username) " +
                             "VALUES (?,?,?,?,?) " +
-                            "RETURNING patient_id;",
-                    Integer.class,
+                            "RETURNING *;",
+                    this::mapToPatient,
                     patient.getName(),
                     patient.getBirthday(),
                     patient.getSpecies(),
                     patient.getSex(),
                     patient.getOwnerUsername()
             );
-            patient.setPatientId(id);
+            patient.setPatientId(created.getPatientId());
             // TODO attributeVmsIdToPatient(patient.getPatientId(), patient.getVmsIds());
-            return getPatientById(id);
+            return created;
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create patient.");
         }
     }
 
+    /**
+     * Imports patients from a VMS, in one transaction. A patient whose VMS ID was imported before is updated; any other
+     * patient is created and linked to its VMS ID. Importing the same patients again therefore changes nothing, and
+     * costs a constant number of statements however many patients there are.
+     *
+     * @param vmsName
+     * @param patientsByVmsId Patients keyed by their ID in the VMS, with their owner username set. Patient IDs are
+     *                        ignored.
+     * @return Map of VMS ID to patient ID
+     */
+    @Transactional
+    public Map<String, Integer> upsertAll(String vmsName, Map<String, Patient> patientsByVmsId) {
+        Map<String, Integer> patientIds = getPatientIdsByVmsIds(vmsName, patientsByVmsId.keySet());
+        List<Patient> newPatients = new ArrayList<>();
+        List<String> newVmsIds = new ArrayList<>();
+        List<Patient> updatedPatients = new ArrayList<>();
+        for (Map.Entry<String, Patient> entry : patientsByVmsId.entrySet()) {
+            Integer id = patientIds.get(entry.getKey());
+            if (id == null) {
+                newVmsIds.add(entry.getKey());
+                newPatients.add(entry.getValue());
+            } else {
+                entry.getValue().setPatientId(id);
+                updatedPatients.add(entry.getValue());
+            }
+        }
+
+        if (!newPatients.isEmpty()) {
+            // IDs are reserved up front so the VMS links can be inserted in a batch as well.
+            List<Integer> ids = jdbcTemplate.queryForList(
+                    "SELECT nextval('patient_patient_id_seq') FROM generate_series(1, ?);",
+                    Integer.class,
+                    newPatients.size()
+            );
+            List<Object[]> vmsLinks = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                newPatients.get(i).setPatientId(ids.get(i));
+                patientIds.put(newVmsIds.get(i), ids.get(i));
+                vmsLinks.add(new Object[]{ids.get(i), vmsName.toLowerCase(), newVmsIds.get(i)});
+            }
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO patient (patient_id, first_name, birthday, species, sex, owner_username) VALUES (?,?,?,?,?,?);",
+                    newPatients,
+                    BATCH_SIZE,
+                    (preparedStatement, patient) -> {
+                        preparedStatement.setInt(1, patient.getPatientId());
+                        preparedStatement.setString(2, patient.getName());
+                        preparedStatement.setObject(3, patient.getBirthday());
+                        preparedStatement.setString(4, patient.getSpecies());
+                        preparedStatement.setString(5, patient.getSex());
+                        preparedStatement.setString(6, patient.getOwnerUsername());
+                    }
+            );
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO patient_vms (patient_id, vms_name, vms_id) VALUES (?,?,?) ON CONFLICT DO NOTHING;",
+                    vmsLinks
+            );
+        }
+
+        jdbcTemplate.batchUpdate(
+                "UPDATE patient SET first_name = ?, birthday = ?, species = ?, sex = ?, owner_username = ? WHERE patient_id = ?;",
+                updatedPatients,
+                BATCH_SIZE,
+                (preparedStatement, patient) -> {
+                    preparedStatement.setString(1, patient.getName());
+                    preparedStatement.setObject(2, patient.getBirthday());
+                    preparedStatement.setString(3, patient.getSpecies());
+                    preparedStatement.setString(4, patient.getSex());
+                    preparedStatement.setString(5, patient.getOwnerUsername());
+                    preparedStatement.setInt(6, patient.getPatientId());
+                }
+        );
+
+        return patientIds;
+    }
+
     /**
      * Associates a patient with a VMS ID.
      *
@@ -179,20 +317,21 @@ public class PatientDao {
      * @return Patient
      */
     public Patient updatePatient(Patient patient) {
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE patient SET first_name = ?, birthday = ?, species = ?, sex = ?, owner_username = ? " +
-                        "WHERE patient_id = ?;",
-                patient.getName(),
-                patient.getBirthday(),
-                patient.getSpecies(),
-                patient.getSex(),
-                patient.getOwnerUsername(),
-                patient.getPatientId()
-        );
-        if (rowsAffected == 0) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "UPDATE patient SET first_name = ?, birthday = ?, species = ?, sex = ?, owner_username = ? " +
+                            "WHERE patient_id = ? " +
+                            "RETURNING *;",
+                    this::mapToPatient,
+                    patient.getName(),
+                    patient.getBirthday(),
+                    patient.getSpecies(),
+                    patient.getSex(),
+                    patient.getOwnerUsername(),
+                    patient.getPatientId()
+            );
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getPatientById(patient.getPatientId());
         }
     }
 
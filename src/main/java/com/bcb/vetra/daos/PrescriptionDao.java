@@ -4,12 +4,15 @@ import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.viewmodels.PrescriptionWithMedication;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
 
 /**
  * <strong>Data Access Object for prescriptions.</strong>
@@ -20,6 +23,8 @@ import java.util.List;
  */
 @Component
 public class PrescriptionDao {
+    private static final int BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
 
     public PrescriptionDao(DataSource dataSource) {
@@ -80,19 +85,28 @@ public class PrescriptionDao {
     }
 
     /**
-     * Creates a new prescription.
+     * Creates a new prescription. The medication is inserted in the same statement if it is not already present.
      *
      * @param prescription
      * @return PrescriptionWithMedication
      */
     public PrescriptionWithMedication create(PrescriptionWithMedication prescription) {
-        insertMedicationIfDoesNotExist(prescription);
         try {
-            Integer id = jdbcTemplate.queryForObject(
-                    "INSERT INTO prescription (medication_name, quantity, instructions, is_active, patient_id, doctor_username, refills) " +
+            return jdbcTemplate.queryForObject(
+                    "WITH medication_added AS ( " +
+                            "INSERT INTO medication (name, unit) VALUES (?, ?) " +
+                            "ON CONFLICT (name) DO NOTHING " +
+                            "RETURNING unit), " +
+                            "inserted AS ( " +
+                            "INSERT INTO prescription (medication_name, quantity, instructions, is_active, patient_id, doctor_username, refills) " +
                             "VALUES (?,?,?,?,?,?,?) " +
-                            "RETURNING prescription_id;",
-                    Integer.class,
+                            "RETURNING *) " +
+                            "SELECT inserted.*, COALESCE((SELECT unit FROM medication_added), medication.unit) AS unit " +
+                            "FROM inserted " +
+                            "LEFT JOIN medication ON medication.name = inserted.medication_name;",
+                    this::mapToPrescriptionWithMedication,
+                    prescription.getName(),
+                    prescription.getUnit(),
                     prescription.getName(),
                     prescription.getQuantity(),
                     prescription.getInstructions(),
@@ -101,12 +115,112 @@ public class PrescriptionDao {
                     prescription.getDoctorUsername(),
                     prescription.getRefills()
             );
-            return getPrescriptionById(id);
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create prescription.");
         }
     }
 
+    /**
+     * Imports prescriptions from a VMS, in one transaction. A prescription whose VMS ID was imported before updates the
+     * existing prescription; any other prescription is created and linked to its VMS ID. Missing medications are
+     * added. Importing the same prescriptions again therefore changes nothing.
+     *
+     * @param vmsName
+     * @param prescriptionsByVmsId Prescriptions keyed by their ID in the VMS. Prescription IDs are ignored.
+     * @return List of the created and updated PrescriptionWithMedication
+     */
+    @Transactional
+    public List<PrescriptionWithMedication> upsertAll(String vmsName, Map<String, PrescriptionWithMedication> prescriptionsByVmsId) {
+        if (prescriptionsByVmsId.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String name = vmsName.toLowerCase();
+        Map<String, String> medications = new HashMap<>();
+        for (PrescriptionWithMedication prescription : prescriptionsByVmsId.values()) {
+            medications.putIfAbsent(prescription.getName(), prescription.getUnit());
+        }
+        createMissingMedications(medications);
+
+        Map<String, Integer> existingIds = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT vms_id, prescription_id FROM prescription_vms WHERE vms_name = ? AND vms_id = ANY(?);",
+                (RowCallbackHandler) resultSet -> existingIds.put(resultSet.getString("vms_id"), resultSet.getInt("prescription_id")),
+                name,
+                prescriptionsByVmsId.keySet().toArray(new String[0])
+        );
+
+        List<String> newVmsIds = new ArrayList<>();
+        List<PrescriptionWithMedication> newPrescriptions = new ArrayList<>();
+        List<PrescriptionWithMedication> updatedPrescriptions = new ArrayList<>();
+        for (Map.Entry<String, PrescriptionWithMedication> entry : prescriptionsByVmsId.entrySet()) {
+            Integer id = existingIds.get(entry.getKey());
+            if (id == null) {
+                newVmsIds.add(entry.getKey());
+                newPrescriptions.add(entry.getValue());
+            } else {
+                entry.getValue().setPrescriptionId(id);
+                updatedPrescriptions.add(entry.getValue());
+            }
+        }
+
+        if (!newPrescriptions.isEmpty()) {
+            // IDs are reserved up front so the VMS links can be inserted in a batch as well.
+            List<Integer> ids = jdbcTemplate.queryForList(
+                    "SELECT nextval('prescription_prescription_id_seq') FROM generate_series(1, ?);",
+                    Integer.class,
+                    newPrescriptions.size()
+            );
+            List<Object[]> vmsLinks = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                newPrescriptions.get(i).setPrescriptionId(ids.get(i));
+                vmsLinks.add(new Object[]{ids.get(i), name, newVmsIds.get(i)});
+            }
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO prescription (prescription_id, medication_name, quantity, instructions, is_active, patient_id, doctor_username, refills) " +
+                            "VALUES (?,?,?,?,?,?,?,?);",
+                    newPrescriptions,
+                    BATCH_SIZE,
+                    (preparedStatement, prescription) -> {
+                        preparedStatement.setInt(1, prescription.getPrescriptionId());
+                        setPrescriptionValues(preparedStatement, 2, prescription);
+                    }
+            );
+            jdbcTemplate.batchUpdate("INSERT INTO prescription_vms (prescription_id, vms_name, vms_id) VALUES (?,?,?);", vmsLinks);
+        }
+
+        jdbcTemplate.batchUpdate(
+                "UPDATE prescription SET medication_name = ?, quantity = ?, instructions = ?, is_active = ?, patient_id = ?, doctor_username = ?, refills = ? " +
+                        "WHERE prescription_id = ?;",
+                updatedPrescriptions,
+                BATCH_SIZE,
+                (preparedStatement, prescription) -> {
+                    setPrescriptionValues(preparedStatement, 1, prescription);
+                    preparedStatement.setInt(8, prescription.getPrescriptionId());
+                }
+        );
+
+        List<PrescriptionWithMedication> upserted = new ArrayList<>(newPrescriptions);
+        upserted.addAll(updatedPrescriptions);
+        return upserted;
+    }
+
+    /**
+     * Adds medications that do not exist yet. Existing medications keep their unit.
+     *
+     * @param unitsByName Units keyed by medication name.
+     */
+    public void createMissingMedications(Map<String, String> unitsByName) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO medication (name, unit) VALUES (?, ?) ON CONFLICT (name) DO NOTHING;",
+                new ArrayList<>(unitsByName.entrySet()),
+                BATCH_SIZE,
+                (preparedStatement, medication) -> {
+                    preparedStatement.setString(1, medication.getKey());
+                    preparedStatement.setString(2, medication.getValue());
+                }
+        );
+    }
+
     /**
      * Updates a prescription.
      *
@@ -114,22 +228,27 @@ public class PrescriptionDao {
      * @return PrescriptionWithMedication
      */
     public PrescriptionWithMedication update(PrescriptionWithMedication prescription) {
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE prescription SET medication_name = ?, quantity = ?, instructions = ?, is_active = ?, patient_id = ?, doctor_username = ?, refills = ? " +
-                        "WHERE prescription_id = ?;",
-                prescription.getName(),
-                prescription.getQuantity(),
-                prescription.getInstructions(),
-                prescription.isActive(),
-                prescription.getPatientId(),
-                prescription.getDoctorUsername(),
-                prescription.getRefills(),
-                prescription.getPrescriptionId()
-        );
-        if (rowsAffected == 0) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "WITH updated AS ( " +
+                            "UPDATE prescription SET medication_name = ?, quantity = ?, instructions = ?, is_active = ?, patient_id = ?, doctor_username = ?, refills = ? " +
+                            "WHERE prescription_id = ? " +
+                            "RETURNING *) " +
+                            "SELECT updated.*, medication.unit " +
+                            "FROM updated " +
+                            "JOIN medication ON medication.name = updated.medication_name;",
+                    this::mapToPrescriptionWithMedication,
+                    prescription.getName(),
+                    prescription.getQuantity(),
+                    prescription.getInstructions(),
+                    prescription.isActive(),
+                    prescription.getPatientId(),
+                    prescription.getDoctorUsername(),
+                    prescription.getRefills(),
+                    prescription.getPrescriptionId()
+            );
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getPrescriptionById(prescription.getPrescriptionId());
         }
     }
 
@@ -158,6 +277,19 @@ public class PrescriptionDao {
     // Helper methods
     //----------------------
 
+    /**
+     * Sets the columns of a prescription, from medication name to refills, starting at the given parameter index.
+     */
+    private void setPrescriptionValues(PreparedStatement preparedStatement, int index, PrescriptionWithMedication prescription) throws SQLException {
+        preparedStatement.setString(index, prescription.getName());
+        preparedStatement.setInt(index + 1, prescription.getQuantity());
+        preparedStatement.setString(index + 2, prescription.getInstructions());
+        preparedStatement.setBoolean(index + 3, prescription.isActive());
+        preparedStatement.setInt(index + 4, prescription.getPatientId());
+        preparedStatement.setString(index + 5, prescription.getDoctorUsername());
+        preparedStatement.setInt(index + 6, prescription.getRefills());
+    }
+
     /**
      * Maps a row in the result set to a PrescriptionWithMedication object.
      *
@@ -180,31 +312,4 @@ public class PrescriptionDao {
         );
     }
 
-    /**
-     * Inserts a medication into medication table if it is not already present.
-     *
-     * @param medication
-     * @return boolean indicating success
-     */
-    private boolean insertMedicationIfDoesNotExist(PrescriptionWithMedication medication) {
-        try {
-            boolean exists = 0 < jdbcTemplate.queryForObject(
-                    "SELECT COUNT(*) FROM medication WHERE name = ?",
-                    Integer.class,
-                    medication.getName()
-            );
-            if (!exists) {
-                jdbcTemplate.update(
-                        "INSERT INTO medication (name, unit) VALUES (?, ?)",
-                        medication.getName(),
-                        medication.getUnit()
-                );
-                return true;
-            }
-            return false;
-        } catch (EmptyResultDataAccessException e) {
-            return false;
-        }
-    }
-
 }
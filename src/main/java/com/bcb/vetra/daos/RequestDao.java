@@ -2,14 +2,17 @@ package com.bcb.vetra.daos;
 
 import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.models.Request;
+import com.bcb.vetra.viewmodels.Page;
 import com.bcb.vetra.viewmodels.RequestWithPrescription;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * <strong>Data Access Object for requests.</strong>
@@ -20,10 +23,16 @@ import java.util.List;
  */
 @Component
 public class RequestDao {
+    // Requests without a date sort first, so the paged ordering and its cursor never hold a NULL.
+    private static final String NO_DATE = "-infinity";
+    private static final String PAGE_KEY = "COALESCE(request.request_date, '" + NO_DATE + "'::timestamp), request.request_id";
+
     private JdbcTemplate jdbcTemplate;
+    private RowStreamer rowStreamer;
 
     public RequestDao(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.rowStreamer = new RowStreamer(jdbcTemplate.getDataSource());
     }
 
     /**
@@ -84,6 +93,49 @@ public class RequestDao {
                 this::mapToRequestWithPrescription);
     }
 
+    /**
+     * Gets a page of all requests with prescription details, oldest first. Requests without a date come first.
+     *
+     * @param cursor The cursor of the previous page, or null for the first page.
+     * @param limit  The page size.
+     * @return Page of RequestWithPrescription
+     */
+    public Page<RequestWithPrescription> getAllRequestsWithPrescription(String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 2);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<RequestWithPrescription> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT request.*, prescription.* " +
+                            "FROM request " +
+                            "JOIN prescription ON request.prescription_id = prescription.prescription_id " +
+                            "ORDER BY " + PAGE_KEY + " LIMIT ?;",
+                    this::mapToRequestWithPrescription, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT request.*, prescription.* " +
+                            "FROM request " +
+                            "JOIN prescription ON request.prescription_id = prescription.prescription_id " +
+                            "WHERE (" + PAGE_KEY + ") > (CAST(? AS timestamp), ?) " +
+                            "ORDER BY " + PAGE_KEY + " LIMIT ?;",
+                    this::mapToRequestWithPrescription, PageCursor.parseTimestamp(after[0], NO_DATE), PageCursor.parseInt(after[1]), pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, request -> PageCursor.encode(
+                request.getRequestDate() == null ? NO_DATE : request.getRequestDate(), request.getRequestId()));
+    }
+
+    /**
+     * Streams all requests with prescription details to a consumer, ordered by request ID, through a RowStreamer.
+     *
+     * @param consumer Called with each RequestWithPrescription in order.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllWithPrescription(Consumer<RequestWithPrescription> consumer) {
+        rowStreamer.stream("SELECT request.*, prescription.* " +
+                        "FROM request " +
+                        "JOIN prescription ON request.prescription_id = prescription.prescription_id " +
+                        "ORDER BY request.request_id;",
+                this::mapToRequestWithPrescription, consumer);
+    }
+
     /**
      * Gets a request with prescription details by ID.
      *
@@ -104,13 +156,19 @@ public class RequestDao {
     }
 
     /**
-     * Gets all requests for a patient by ID.
+     * Gets the requests for every prescription of a patient, in one query.
      *
      * @param patientId
      * @return List of Request
      */
     public List<Request> getRequestsByPatientId(int patientId) {
-        return jdbcTemplate.query("SELECT * FROM request WHERE prescription_id = ? ORDER BY request_date", this::mapToRequest, patientId);
+        return jdbcTemplate.query(
+                "SELECT r.* " +
+                        "FROM request r " +
+                        "JOIN prescription p ON p.prescription_id = r.prescription_id " +
+                        "WHERE p.patient_id = ? ORDER BY r.request_date",
+                this::mapToRequest,
+                patientId);
     }
 
     /**
@@ -156,15 +214,14 @@ public class RequestDao {
     public Request create(Request request) {
         request.setStatus(request.getStatus().toUpperCase());
         try {
-            Integer id = jdbcTemplate.queryForObject(
+            return jdbcTemplate.queryForObject(
                     "INSERT INTO request (prescription_id, status) " +
                             "VALUES (?,?) " +
-                            "RETURNING request_id;",
-                    Integer.class,
+                            "RETURNING *;",
+                    this::mapToRequest,
                     request.getPrescriptionId(),
                     request.getStatus()
             );
-            return getRequestById(id);
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create request.");
         }
@@ -178,14 +235,19 @@ public class RequestDao {
      */
     public Request update(Request request) {
         request.setStatus(request.getStatus().toUpperCase());
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE request SET prescription_id = ?, status = ? " +
-                        "WHERE request_id = ?;",
-                request.getPrescriptionId(),
-                request.getStatus(),
-                request.getRequestId()
-        );
-        return getRequestById(request.getRequestId());
+        try {
+            return jdbcTemplate.queryForObject(
+                    "UPDATE request SET prescription_id = ?, status = ? " +
+                            "WHERE request_id = ? " +
+                            "RETURNING *;",
+                    this::mapToRequest,
+                    request.getPrescriptionId(),
+                    request.getStatus(),
+                    request.getRequestId()
+            );
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
     }
 
     /**
@@ -20,6 +20,8 @@ import java.util.List;
  */
 @Component
 public class ResultDao {
+    private static final int BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
 
     public ResultDao(DataSource dataSource) {
@@ -50,6 +52,23 @@ public class ResultDao {
         return jdbcTemplate.query("SELECT * FROM result WHERE test_id = ? ORDER BY result_id", this::mapToResult, testId);
     }
 
+    /**
+     * Gets the results of every test of a patient, in one query.
+     *
+     * @param patientId
+     * @return List of Result, ordered by test and then result
+     */
+    public List<Result> getResultsForPatient(int patientId) {
+        return jdbcTemplate.query(
+                "SELECT result.* FROM result " +
+                        "JOIN test ON test.test_id = result.test_id " +
+                        "WHERE test.patient_id = ? " +
+                        "ORDER BY result.test_id, result.result_id;",
+                this::mapToResult,
+                patientId
+        );
+    }
+
     /**
      * Creates a new result.
      *
@@ -58,11 +77,11 @@ public class ResultDao {
      */
     public Result create(Result result) {
         try {
-            Integer id = jdbcTemplate.queryForObject(
+            return jdbcTemplate.queryForObject(
                     "INSERT INTO result (test_id, result_value, parameter_name, range_low, range_high, unit) " +
                             "VALUES (?,?,?,?,?,?) " +
-                            "RETURNING result_id;",
-                    Integer.class,
+                            "RETURNING *;",
+                    this::mapToResult,
                     result.getTestID(),
                     result.getResultValue(),
                     result.getParameterName(),
@@ -70,12 +89,33 @@ public class ResultDao {
                     result.getRangeHigh(),
                     result.getUnit()
             );
-            return getResultById(id);
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create result.");
         }
     }
 
+    /**
+     * Creates many results with batched inserts. The results must already have their test ID set.
+     *
+     * @param results
+     */
+    public void createAll(List<Result> results) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO result (test_id, result_value, parameter_name, range_low, range_high, unit) " +
+                        "VALUES (?,?,?,?,?,?);",
+                results,
+                BATCH_SIZE,
+                (preparedStatement, result) -> {
+                    preparedStatement.setInt(1, result.getTestID());
+                    preparedStatement.setString(2, result.getResultValue());
+                    preparedStatement.setString(3, result.getParameterName());
+                    preparedStatement.setString(4, result.getRangeLow());
+                    preparedStatement.setString(5, result.getRangeHigh());
+                    preparedStatement.setString(6, result.getUnit());
+                }
+        );
+    }
+
     /**
      * Updates a result.
      *
@@ -83,21 +123,22 @@ public class ResultDao {
      * @return Result
      */
     public Result update(Result result) {
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE result SET test_id = ?, result_value = ?, parameter_name = ?, range_low = ?, range_high = ?, unit = ?" +
-                        "WHERE result_id = ?;",
-                result.getTestID(),
-                result.getResultValue(),
-                result.getParameterName(),
-                result.getRangeLow(),
-                result.getRangeHigh(),
-                result.getUnit(),
-                result.getResultID()
-        );
-        if (rowsAffected == 0) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "UPDATE result SET test_id = ?, result_value = ?, parameter_name = ?, range_low = ?, range_high = ?, unit = ? " +
+                            "WHERE result_id = ? " +
+                            "RETURNING *;",
+                    this::mapToResult,
+                    result.getTestID(),
+                    result.getResultValue(),
+                    result.getParameterName(),
+                    result.getRangeLow(),
+                    result.getRangeHigh(),
+                    result.getUnit(),
+                    result.getResultID()
+            );
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getResultById(result.getResultID());
         }
     }
 
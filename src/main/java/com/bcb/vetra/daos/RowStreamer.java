@@ -0,0 +1,38 @@
+package com.bcb.vetra.daos;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+/**
+ * <strong>Streams query results to a consumer.</strong>
+ * <br><br>
+ * Rows are read through a forward-only cursor in batches of FETCH_SIZE and handed to the consumer one at a time, so
+ * memory use does not grow with the table. Postgres only uses a cursor inside a transaction, so the DAO methods that
+ * stream are <i>@Transactional(readOnly = true)</i>; outside a transaction the driver reads the whole result at once.
+ */
+final class RowStreamer {
+    static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    RowStreamer(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Runs a query and passes each row, mapped, to a consumer in the order of the query.
+     *
+     * @param sql       The query.
+     * @param rowMapper Maps a row.
+     * @param consumer  Called with each mapped row.
+     */
+    <T> void stream(String sql, RowMapper<T> rowMapper, Consumer<T> consumer) {
+        jdbcTemplate.query(sql, resultSet -> {
+            consumer.accept(rowMapper.mapRow(resultSet, 0));
+        });
+    }
+}
@@ -2,17 +2,23 @@ package com.bcb.vetra.daos;
 
 import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.models.Notification;
+import com.bcb.vetra.models.Result;
 import com.bcb.vetra.models.Test;
-import com.bcb.vetra.models.User;
+import com.bcb.vetra.viewmodels.Page;
+import com.bcb.vetra.viewmodels.TestWithResults;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <strong>Data Access Object for diagnostic tests.</strong>
@@ -23,13 +29,16 @@ import java.util.List;
  */
 @Component
 public class TestDao {
+    private static final int BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
     private NotificationDao notificationDao;
-private UserDao userDao;
-    public TestDao(DataSource dataSource, NotificationDao notificationDao, UserDao userDao) {
+    private ResultDao resultDao;
+
+    public TestDao(DataSource dataSource, NotificationDao notificationDao, ResultDao resultDao) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         this.notificationDao = notificationDao;
-        this.userDao = userDao;
+        this.resultDao = resultDao;
     }
 
     /**
@@ -56,30 +65,150 @@ private UserDao userDao;
     }
 
     /**
-     * Creates a new test.
+     * Gets a page of the tests for a patient, newest first.
+     *
+     * @param patientId
+     * @param cursor    The cursor of the previous page, or null for the first page.
+     * @param limit     The page size.
+     * @return Page of Test
+     */
+    public Page<Test> getTestsForPatient(int patientId, String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 1);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<Test> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT * FROM test WHERE patient_id = ? ORDER BY test_id DESC LIMIT ?;",
+                    this::mapToTest, patientId, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT * FROM test WHERE patient_id = ? AND test_id < ? ORDER BY test_id DESC LIMIT ?;",
+                    this::mapToTest, patientId, PageCursor.parseInt(after[0]), pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, test -> PageCursor.encode(test.getId()));
+    }
+
+    /**
+     * Creates a new test and notifies the owner of the patient. The insert also returns the owner's username, so no
+     * separate lookup is needed for the notification.
      * @param test
      *
      * @return Test
      */
     public Test create(Test test) {
+        String[] ownerUsername = new String[1];
+        Test created;
         try {
-            Integer id = jdbcTemplate.queryForObject(
-                    "INSERT INTO test (name, time_stamp, patient_id, doctor_username) " +
+            created = jdbcTemplate.queryForObject(
+                    "WITH inserted AS ( " +
+                            "INSERT INTO test (name, time_stamp, patient_id, doctor_username) " +
                             "VALUES (?,?,?,?) " +
-                            "RETURNING test_id;",
-                    Integer.class,
+                            "RETURNING *) " +
+                            "SELECT inserted.*, patient.owner_username " +
+                            "FROM inserted " +
+                            "JOIN patient ON patient.patient_id = inserted.patient_id;",
+                    (resultSet, rowNumber) -> {
+                        ownerUsername[0] = resultSet.getString("owner_username");
+                        return mapToTest(resultSet, rowNumber);
+                    },
                     test.getName(),
                     test.getTimestamp(),
                     test.getPatientID(),
                     test.getDoctorUsername()
             );
-            User user = userDao.getUserByPatientId(test.getPatientID());
-            Notification notification = new Notification(user.getUsername(), test.getPatientID(), 0, 0, id, false);
-            notificationDao.create(notification);
-            return getTestById(id);
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create test.");
         }
+        notificationDao.create(new Notification(ownerUsername[0], created.getPatientID(), 0, 0, created.getId(), false));
+        return created;
+    }
+
+    /**
+     * Creates many tests with their results and notifies the owner of each patient, in one transaction. Used for bulk
+     * imports from a VMS.
+     *
+     * @param testsWithResults Each test mapped to its results. The test ID and result test IDs are ignored.
+     * @return List of the created Test
+     */
+    @Transactional
+    public List<Test> createAll(Map<Test, List<Result>> testsWithResults) {
+        List<TestWithResults> tests = new ArrayList<>(testsWithResults.size());
+        for (Map.Entry<Test, List<Result>> entry : testsWithResults.entrySet()) {
+            tests.add(new TestWithResults(entry.getKey(), entry.getValue()));
+        }
+        return insertAll(tests);
+    }
+
+    /**
+     * Imports tests with their results from a VMS, in one transaction. A test whose VMS ID was imported before
+     * replaces the existing test and its results; any other test is created, linked to its VMS ID and its owner is
+     * notified. Importing the same tests again therefore changes nothing.
+     *
+     * @param vmsName
+     * @param testsByVmsId Each test with its results, keyed by its ID in the VMS. IDs are ignored.
+     * @return List of the created and updated Test
+     */
+    @Transactional
+    public List<Test> upsertAll(String vmsName, Map<String, TestWithResults> testsByVmsId) {
+        if (testsByVmsId.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String name = vmsName.toLowerCase();
+        Map<String, Integer> existingIds = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT vms_id, test_id FROM test_vms WHERE vms_name = ? AND vms_id = ANY(?);",
+                (RowCallbackHandler) resultSet -> existingIds.put(resultSet.getString("vms_id"), resultSet.getInt("test_id")),
+                name,
+                testsByVmsId.keySet().toArray(new String[0])
+        );
+
+        List<String> newVmsIds = new ArrayList<>();
+        List<TestWithResults> newTests = new ArrayList<>();
+        List<Test> updatedTests = new ArrayList<>();
+        List<Result> updatedResults = new ArrayList<>();
+        for (Map.Entry<String, TestWithResults> entry : testsByVmsId.entrySet()) {
+            Integer id = existingIds.get(entry.getKey());
+            if (id == null) {
+                newVmsIds.add(entry.getKey());
+                newTests.add(entry.getValue());
+                continue;
+            }
+            Test test = entry.getValue().getTest();
+            updatedTests.add(new Test(id, test.getName(), test.getTimestamp(), test.getPatientID(), test.getDoctorUsername()));
+            for (Result result : entry.getValue().getResults()) {
+                result.setTestID(id);
+                updatedResults.add(result);
+            }
+        }
+
+        List<Test> created = insertAll(newTests);
+        List<Object[]> vmsLinks = new ArrayList<>(created.size());
+        for (int i = 0; i < created.size(); i++) {
+            vmsLinks.add(new Object[]{created.get(i).getId(), name, newVmsIds.get(i)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO test_vms (test_id, vms_name, vms_id) VALUES (?,?,?);", vmsLinks);
+
+        if (!updatedTests.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE test SET name = ?, time_stamp = ?, patient_id = ?, doctor_username = ? WHERE test_id = ?;",
+                    updatedTests,
+                    BATCH_SIZE,
+                    (preparedStatement, test) -> {
+                        preparedStatement.setString(1, test.getName());
+                        preparedStatement.setObject(2, test.getTimestamp());
+                        preparedStatement.setInt(3, test.getPatientID());
+                        preparedStatement.setString(4, test.getDoctorUsername());
+                        preparedStatement.setInt(5, test.getId());
+                    }
+            );
+            jdbcTemplate.update(
+                    "DELETE FROM result WHERE test_id = ANY(?);",
+                    (Object) updatedTests.stream().map(Test::getId).toArray(Integer[]::new)
+            );
+            resultDao.createAll(updatedResults);
+        }
+
+        List<Test> upserted = new ArrayList<>(created);
+        upserted.addAll(updatedTests);
+        return upserted;
     }
 
     /**
@@ -89,19 +218,20 @@ private UserDao userDao;
      * @return Test
      */
     public Test update(Test test) {
-        int rowsAffected = jdbcTemplate.update(
-                "UPDATE test SET name = ?, time_stamp = ?, patient_id = ?, doctor_username = ? " +
-                        "WHERE test_id = ?;",
-                test.getName(),
-                test.getTimestamp(),
-                test.getPatientID(),
-                test.getDoctorUsername(),
-                test.getId()
-        );
-        if (rowsAffected == 0) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    "UPDATE test SET name = ?, time_stamp = ?, patient_id = ?, doctor_username = ? " +
+                            "WHERE test_id = ? " +
+                            "RETURNING *;",
+                    this::mapToTest,
+                    test.getName(),
+                    test.getTimestamp(),
+                    test.getPatientID(),
+                    test.getDoctorUsername(),
+                    test.getId()
+            );
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getTestById(test.getId());
         }
     }
 
@@ -129,6 +259,54 @@ private UserDao userDao;
     // Helper methods
     //----------------------
 
+    /**
+     * Inserts tests with their results and notifies the owner of each patient. The test IDs are reserved from the
+     * sequence up front so the results can reference them, which keeps the number of statements constant: one to
+     * reserve IDs, batched inserts for the tests and the results, and one insert for all notifications.
+     *
+     * @param testsWithResults The test IDs and result test IDs are ignored.
+     * @return List of the created Test, in the same order
+     */
+    private List<Test> insertAll(List<TestWithResults> testsWithResults) {
+        if (testsWithResults.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('test_test_id_seq') FROM generate_series(1, ?);",
+                Integer.class,
+                testsWithResults.size()
+        );
+
+        List<Test> tests = new ArrayList<>(testsWithResults.size());
+        List<Result> results = new ArrayList<>();
+        int index = 0;
+        for (TestWithResults testWithResults : testsWithResults) {
+            Test test = testWithResults.getTest();
+            int id = ids.get(index++);
+            tests.add(new Test(id, test.getName(), test.getTimestamp(), test.getPatientID(), test.getDoctorUsername()));
+            for (Result result : testWithResults.getResults()) {
+                result.setTestID(id);
+                results.add(result);
+            }
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO test (test_id, name, time_stamp, patient_id, doctor_username) VALUES (?,?,?,?,?);",
+                tests,
+                BATCH_SIZE,
+                (preparedStatement, test) -> {
+                    preparedStatement.setInt(1, test.getId());
+                    preparedStatement.setString(2, test.getName());
+                    preparedStatement.setObject(3, test.getTimestamp());
+                    preparedStatement.setInt(4, test.getPatientID());
+                    preparedStatement.setString(5, test.getDoctorUsername());
+                }
+        );
+        resultDao.createAll(results);
+        notificationDao.createForTests(ids);
+        return tests;
+    }
+
     /**
      * Maps a ResultSet to a Test object.
      *
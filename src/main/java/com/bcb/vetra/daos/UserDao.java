@@ -2,16 +2,19 @@ package com.bcb.vetra.daos;
 
 import com.bcb.vetra.exception.DaoException;
 import com.bcb.vetra.models.User;
+import com.bcb.vetra.viewmodels.Page;
+import com.bcb.vetra.viewmodels.PatientAccess;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * <strong>Data Access Object for users.</strong>
@@ -22,6 +25,10 @@ import java.util.Map;
  */
 @Component
 public class UserDao {
+    private static final int BATCH_SIZE = 1000;
+    private static final int USERNAME_MAX_LENGTH = 30;
+    private static final int MAX_USERNAME_SUFFIX = 99;
+
     private final JdbcTemplate jdbcTemplate;
     private final PasswordEncoder passwordEncoder;
 
@@ -39,6 +46,26 @@ public class UserDao {
         return jdbcTemplate.query("SELECT * FROM \"user\" ORDER BY username;", this::mapToUser);
     }
 
+    /**
+     * Gets a page of all users, ordered by username.
+     *
+     * @param cursor The cursor of the previous page, or null for the first page.
+     * @param limit  The page size.
+     * @return Page of User
+     */
+    public Page<User> getUsers(String cursor, int limit) {
+        String[] after = PageCursor.decode(cursor, 1);
+        int pageSize = PageCursor.clampLimit(limit);
+        List<User> rows;
+        if (after == null) {
+            rows = jdbcTemplate.query("SELECT * FROM \"user\" ORDER BY username LIMIT ?;", this::mapToUser, pageSize + 1);
+        } else {
+            rows = jdbcTemplate.query("SELECT * FROM \"user\" WHERE username > ? ORDER BY username LIMIT ?;",
+                    this::mapToUser, after[0], pageSize + 1);
+        }
+        return PageCursor.toPage(rows, pageSize, user -> PageCursor.encode(user.getUsername()));
+    }
+
     /**
      * Gets a user by username.
      *
@@ -101,10 +128,9 @@ public class UserDao {
     public User createUser(User user) {
         String hashedPassword = passwordEncoder.encode(user.getPassword());
         String sql = "INSERT INTO \"user\" (username, password, first_name, last_name, email) " +
-                "VALUES (?,?,?,?,?) RETURNING username;";
+                "VALUES (?,?,?,?,?) RETURNING *;";
         try {
-            String username = jdbcTemplate.queryForObject(sql, String.class, user.getUsername(), hashedPassword, user.getFirstName(), user.getLastName(), user.getEmail());
-            return getUserByUsername(username);
+            return jdbcTemplate.queryForObject(sql, this::mapToUser, user.getUsername(), hashedPassword, user.getFirstName(), user.getLastName(), user.getEmail());
         } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Failed to create user.");
         }
@@ -127,6 +153,73 @@ public class UserDao {
         return count > 0;
     }
 
+    /**
+     * Imports users from a VMS, in one transaction. A user whose VMS ID was imported before keeps their username,
+     * password and email and only has their name updated; any other user is created and linked to its VMS ID.
+     * Importing the same users again therefore changes nothing, and costs a constant number of statements however
+     * many users there are.
+     * <br><br>
+     * A VMS ID is only ever linked to a user this method created. A new user whose username is already taken gets the
+     * first free numeric suffix instead, and is left out if there is none or the username is taken while importing.
+     * <br><br>
+     * Passwords are hashed once per distinct password in the batch, since imported users share a placeholder password.
+     *
+     * @param vmsName
+     * @param usersByVmsId Users keyed by their ID in the VMS.
+     * @return Map of VMS ID to username, without the users that were left out
+     */
+    @Transactional
+    public Map<String, String> upsertAll(String vmsName, Map<String, User> usersByVmsId) {
+        Map<String, String> usernames = new HashMap<>();
+        if (usersByVmsId.isEmpty()) {
+            return usernames;
+        }
+        String name = vmsName.toLowerCase();
+        jdbcTemplate.query(
+                "SELECT vms_id, username FROM user_vms WHERE vms_name = ? AND vms_id = ANY(?);",
+                (RowCallbackHandler) resultSet -> usernames.put(resultSet.getString("vms_id"), resultSet.getString("username")),
+                name,
+                usersByVmsId.keySet().toArray(new String[0])
+        );
+
+        Map<String, User> newUsers = new LinkedHashMap<>();
+        List<User> updatedUsers = new ArrayList<>();
+        Map<String, String> hashedPasswords = new HashMap<>();
+        for (Map.Entry<String, User> entry : usersByVmsId.entrySet()) {
+            User user = entry.getValue();
+            String username = usernames.get(entry.getKey());
+            if (username != null) {
+                user.setUsername(username);
+                updatedUsers.add(user);
+                continue;
+            }
+            user.setPassword(hashedPasswords.computeIfAbsent(user.getPassword(), passwordEncoder::encode));
+            newUsers.put(entry.getKey(), user);
+        }
+
+        Set<String> inserted = insertWithFreeUsernames(newUsers.values());
+        List<Object[]> vmsLinks = new ArrayList<>(inserted.size());
+        for (Map.Entry<String, User> entry : newUsers.entrySet()) {
+            String username = entry.getValue().getUsername();
+            if (inserted.contains(username)) {
+                vmsLinks.add(new Object[]{username, name, entry.getKey()});
+                usernames.put(entry.getKey(), username);
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user_vms (username, vms_name, vms_id) VALUES (?,?,?);", vmsLinks);
+        jdbcTemplate.batchUpdate(
+                "UPDATE \"user\" SET first_name = ?, last_name = ? WHERE username = ?;",
+                updatedUsers,
+                BATCH_SIZE,
+                (preparedStatement, user) -> {
+                    preparedStatement.setString(1, user.getFirstName());
+                    preparedStatement.setString(2, user.getLastName());
+                    preparedStatement.setString(3, user.getUsername());
+                }
+        );
+        return usernames;
+    }
+
     /**
      * Updates a user.
      *
@@ -135,12 +228,11 @@ public class UserDao {
      */
     public User updateUser(User user) {
         String sql = "UPDATE \"user\" SET first_name = ?, last_name = ?, email = ? " +
-                "WHERE username = ?";
-        int rowsAffected = jdbcTemplate.update(sql, user.getFirstName(), user.getLastName(), user.getEmail(), user.getUsername());
-        if (rowsAffected == 0) {
+                "WHERE username = ? RETURNING *;";
+        try {
+            return jdbcTemplate.queryForObject(sql, this::mapToUser, user.getFirstName(), user.getLastName(), user.getEmail(), user.getUsername());
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getUserByUsername(user.getUsername());
         }
     }
 
@@ -152,12 +244,11 @@ public class UserDao {
      */
     public User updatePassword(User user) {
         String hashedPassword = passwordEncoder.encode(user.getPassword());
-        String sql = "UPDATE \"user\" SET password = ? WHERE username = ?";
-        int rowsAffected = jdbcTemplate.update(sql, hashedPassword, user.getUsername());
-        if (rowsAffected == 0) {
+        String sql = "UPDATE \"user\" SET password = ? WHERE username = ? RETURNING *;";
+        try {
+            return jdbcTemplate.queryForObject(sql, this::mapToUser, hashedPassword, user.getUsername());
+        } catch (EmptyResultDataAccessException e) {
             throw new DaoException("Zero rows affected, expected at least one.");
-        } else {
-            return getUserByUsername(user.getUsername());
         }
     }
 
@@ -186,6 +277,20 @@ public class UserDao {
         return jdbcTemplate.query("SELECT role FROM \"role\" WHERE username = ?;", this::mapToRoles, username);
     }
 
+    /**
+     * Gets a user's roles and whether they own a patient in a single query. Used by access control checks.
+     *
+     * @param username
+     * @param patientId
+     * @return PatientAccess
+     */
+    public PatientAccess getPatientAccess(String username, int patientId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT ARRAY(SELECT role FROM \"role\" WHERE username = ?) AS roles, " +
+                        "EXISTS(SELECT 1 FROM patient WHERE patient_id = ? AND owner_username = ?) AS is_owner;",
+                this::mapToPatientAccess, username, patientId, username);
+    }
+
     /**
      * Adds a role to a user.
      *
@@ -194,9 +299,11 @@ public class UserDao {
      * @return List of String
      */
     public List<String> addRole(String username, String role) {
-        String sql = "INSERT INTO \"role\" (username, role) VALUES (?,?)";
-        jdbcTemplate.update(sql, username, role);
-        return getRoles(username);
+        // The outer SELECT can't see the row inserted by the CTE, so the new role is added with UNION.
+        String sql = "WITH added AS (INSERT INTO \"role\" (username, role) VALUES (?,?) RETURNING role) " +
+                "SELECT role FROM \"role\" WHERE username = ? " +
+                "UNION SELECT role FROM added;";
+        return jdbcTemplate.query(sql, this::mapToRoles, username, role, username);
     }
 
     /**
@@ -214,6 +321,69 @@ public class UserDao {
     // Helper methods
     //------------------
 
+    /**
+     * Inserts new users, first moving any whose username is taken, by an existing user or another one in the batch,
+     * to the first free numeric suffix. Users are inserted with ON CONFLICT DO NOTHING, so a username taken in the
+     * meantime leaves its user out rather than failing the import.
+     *
+     * @param users The users to insert. Usernames are changed in place.
+     * @return Set of the usernames inserted
+     */
+    private Set<String> insertWithFreeUsernames(Collection<User> users) {
+        if (users.isEmpty()) {
+            return new HashSet<>();
+        }
+        Set<String> wanted = new HashSet<>();
+        for (User user : users) {
+            for (int suffix = 1; suffix <= MAX_USERNAME_SUFFIX; suffix++) {
+                wanted.add(withSuffix(user.getUsername(), suffix));
+            }
+        }
+        Set<String> taken = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT username FROM \"user\" WHERE username = ANY(?);",
+                String.class,
+                (Object) wanted.toArray(new String[0])
+        ));
+
+        List<User> insertable = new ArrayList<>(users.size());
+        for (User user : users) {
+            for (int suffix = 1; suffix <= MAX_USERNAME_SUFFIX; suffix++) {
+                String username = withSuffix(user.getUsername(), suffix);
+                if (taken.add(username)) {
+                    user.setUsername(username);
+                    insertable.add(user);
+                    break;
+                }
+            }
+        }
+        if (insertable.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "INSERT INTO \"user\" (username, password, first_name, last_name, email) " +
+                        "SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::varchar[], ?::varchar[], ?::varchar[]) " +
+                        "ON CONFLICT (username) DO NOTHING RETURNING username;",
+                String.class,
+                insertable.stream().map(User::getUsername).toArray(String[]::new),
+                insertable.stream().map(User::getPassword).toArray(String[]::new),
+                insertable.stream().map(User::getFirstName).toArray(String[]::new),
+                insertable.stream().map(User::getLastName).toArray(String[]::new),
+                insertable.stream().map(User::getEmail).toArray(String[]::new)
+        ));
+    }
+
+    /**
+     * Appends a numeric suffix to a username, shortening it to keep it within the column. Suffix 1 is the username
+     * itself.
+     */
+    private String withSuffix(String username, int suffix) {
+        if (suffix == 1) {
+            return username;
+        }
+        String end = "_" + suffix;
+        return username.substring(0, Math.min(username.length(), USERNAME_MAX_LENGTH - end.length())) + end;
+    }
+
     /**
      * Maps a row in the ResultSet to a User object.
      *
@@ -244,4 +414,17 @@ public class UserDao {
     private String mapToRoles(ResultSet resultSet, int rowNumber) throws SQLException {
         return resultSet.getString("role");
     }
+
+    /**
+     * Maps a row in the ResultSet to a PatientAccess object.
+     *
+     * @param resultSet
+     * @param rowNumber
+     * @return PatientAccess
+     * @throws SQLException
+     */
+    private PatientAccess mapToPatientAccess(ResultSet resultSet, int rowNumber) throws SQLException {
+        String[] roles = (String[]) resultSet.getArray("roles").getArray();
+        return new PatientAccess(Arrays.asList(roles), resultSet.getBoolean("is_owner"));
+    }
 }
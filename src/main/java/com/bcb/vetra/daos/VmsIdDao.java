@@ -0,0 +1,51 @@
+package com.bcb.vetra.daos;
+
+import com.bcb.vetra.viewmodels.VmsIdIndex;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * <strong>Data Access Object for VMS IDs.</strong>
+ * <br><br>
+ * This class is responsible for loading the links between VMS IDs and local users and patients in bulk.
+ * <br><br>
+ * Models: <i>VmsIdIndex</i>
+ */
+@Component
+public class VmsIdDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public VmsIdDao(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Loads every user and patient linked to a VMS into an index, with a single query.
+     *
+     * @param vmsName
+     * @return VmsIdIndex
+     */
+    public VmsIdIndex loadIndex(String vmsName) {
+        String name = vmsName.toLowerCase();
+        VmsIdIndex index = new VmsIdIndex();
+        jdbcTemplate.query(
+                "SELECT vms_id, username, NULL::int AS patient_id FROM user_vms WHERE vms_name = ? " +
+                        "UNION ALL " +
+                        "SELECT vms_id, NULL, patient_id FROM patient_vms WHERE vms_name = ?;",
+                (RowCallbackHandler) resultSet -> {
+                    String username = resultSet.getString("username");
+                    if (username != null) {
+                        index.putUser(resultSet.getString("vms_id"), username);
+                    } else {
+                        index.putPatient(resultSet.getString("vms_id"), resultSet.getInt("patient_id"));
+                    }
+                },
+                name,
+                name
+        );
+        return index;
+    }
+}
@@ -0,0 +1,19 @@
+package com.bcb.vetra.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a pagination cursor sent by a client cannot be decoded. Answered with 400 Bad Request.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid pagination cursor.")
+public class InvalidCursorException extends DaoException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
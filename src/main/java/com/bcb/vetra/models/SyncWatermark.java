@@ -0,0 +1,22 @@
+package com.bcb.vetra.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Model class for the high-water mark of an entity imported from a VMS.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncWatermark {
+    private String vmsName;
+    private String entity;
+    private long highWaterMark;
+    private LocalDateTime updatedAt;
+}
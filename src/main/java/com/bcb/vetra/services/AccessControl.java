@@ -6,33 +6,43 @@ import com.bcb.vetra.daos.TestDao;
 import com.bcb.vetra.daos.UserDao;
 import com.bcb.vetra.models.Result;
 import com.bcb.vetra.models.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * <strong>Access Control Service</strong>
  * <br><br>
  * This class is responsible for providing more specific access control to resources based on user roles.
+ * Role and ownership lookups go through the AuthorizationCache, so a check costs at most one query and usually none.
+ * When <i>vetra.security.token-roles.trusted</i> is on, the roles of the logged-in user are read from their JWT claims
+ * instead of the role table, unless their roles have changed since the token was issued.
+ * <br><br>
+ * Whatever changes roles or patient ownership, e.g. a controller or the VMS sync, calls one of the invalidate methods
+ * once its write has been made, so the cached answers don't outlive the data they were read from.
  */
+@Service
 public class AccessControl {
     private UserDao userDao;
     private PatientDao patientDao;
     private MessageDao messageDao;
     private TestDao testDao;
+    private AuthorizationCache authorizationCache;
+    private boolean trustTokenRoles;
 
-    public AccessControl(PatientDao patientDao, UserDao userDao) {
-        this.patientDao = patientDao;
-        this.userDao = userDao;
-    }
-
-    public AccessControl(PatientDao patientDao, UserDao userDao, MessageDao messageDao) {
+    public AccessControl(PatientDao patientDao, UserDao userDao, MessageDao messageDao, TestDao testDao, AuthorizationCache authorizationCache,
+                         @Value("${vetra.security.token-roles.trusted:true}") boolean trustTokenRoles) {
         this.patientDao = patientDao;
         this.userDao = userDao;
         this.messageDao = messageDao;
-    }
-
-    public AccessControl(PatientDao patientDao, UserDao userDao, TestDao testDao) {
-        this.patientDao = patientDao;
-        this.userDao = userDao;
         this.testDao = testDao;
+        this.authorizationCache = authorizationCache;
+        this.trustTokenRoles = trustTokenRoles;
     }
 
 
@@ -48,10 +58,11 @@ public class AccessControl {
      * @return boolean
      */
     public boolean canAccessPatient(int patientId, String username) {
-        boolean isOwnedBy = patientDao.getPatientByIdAndOwner(patientId, username) != null;
-        boolean isDoctor = userDao.getRoles(username).contains("DOCTOR");
-        boolean isAdmin = userDao.getRoles(username).contains("ADMIN");
-        return isOwnedBy || isDoctor || isAdmin;
+        if (getTokenRoles(username) == null && authorizationCache.peekRoles(username) == null) {
+            // Nothing cached for this user yet, so resolve roles and ownership together in one query.
+            authorizationCache.loadPatientAccess(patientId, username, () -> userDao.getPatientAccess(username, patientId));
+        }
+        return isDoctorOrAdmin(username) || isOwner(patientId, username);
     }
 
     /**
@@ -62,11 +73,7 @@ public class AccessControl {
      * @return boolean
      */
     public boolean canAccessTest(Test test, String username) {
-        int patientId = test.getPatientID();
-        boolean isOwnedBy = patientDao.getPatientByIdAndOwner(patientId, username) != null;
-        boolean isDoctor = userDao.getRoles(username).contains("DOCTOR");
-        boolean isAdmin = userDao.getRoles(username).contains("ADMIN");
-        return isOwnedBy || isDoctor || isAdmin;
+        return canAccessPatient(test.getPatientID(), username);
     }
 
     /**
@@ -78,11 +85,11 @@ public class AccessControl {
      * @return boolean
      */
     public boolean canAccessResult(Result result, int testId, String username) {
+        if (isDoctorOrAdmin(username)) {
+            return true;
+        }
         int patientId = testDao.getTestById(result.getTestID()).getPatientID();
-        boolean isPatientOwnedBy = patientDao.getPatientByIdAndOwner(patientId, username) != null;
-        boolean isDoctor = userDao.getRoles(username).contains("DOCTOR");
-        boolean isAdmin = userDao.getRoles(username).contains("ADMIN");
-        return isPatientOwnedBy || isDoctor || isAdmin;
+        return isOwner(patientId, username);
     }
 
     /**
@@ -93,17 +100,81 @@ public class AccessControl {
      * @return boolean
      */
     public boolean canAccessMessage(int messageId, String username) {
-        boolean isOwnedBy = messageDao.getMessageByIdAndUsername(messageId, username) != null;
-        boolean isAdmin = userDao.getRoles(username).contains("ADMIN");
-
-        return isOwnedBy || isAdmin;
+        return isAdmin(username) || messageDao.getMessageByIdAndUsername(messageId, username) != null;
     }
 
     public boolean isAdmin(String username) {
-        return userDao.getRoles(username).contains("ADMIN");
+        return getRoles(username).contains("ADMIN");
     }
 
     public boolean isDoctorOrAdmin(String username) {
-        return userDao.getRoles(username).contains("DOCTOR") || userDao.getRoles(username).contains("ADMIN");
+        List<String> roles = getRoles(username);
+        return roles.contains("DOCTOR") || roles.contains("ADMIN");
+    }
+
+    /**
+     * Drops the cached roles and ownership of a user and distrusts the roles in their existing tokens. Called after a
+     * user's roles change or the user is deleted.
+     *
+     * @param username
+     */
+    public void invalidateUser(String username) {
+        authorizationCache.invalidateUser(username);
+    }
+
+    /**
+     * Drops the cached ownership of a patient. Called after a patient is created, updated or deleted.
+     *
+     * @param patientId
+     */
+    public void invalidatePatient(int patientId) {
+        authorizationCache.invalidatePatient(patientId);
+    }
+
+    /**
+     * Drops the cached ownership of many patients in one pass. Called after a bulk import.
+     *
+     * @param patientIds
+     */
+    public void invalidatePatients(Collection<Integer> patientIds) {
+        authorizationCache.invalidatePatients(patientIds);
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private List<String> getRoles(String username) {
+        List<String> tokenRoles = getTokenRoles(username);
+        if (tokenRoles != null) {
+            return tokenRoles;
+        }
+        return authorizationCache.getRoles(username, () -> userDao.getRoles(username));
+    }
+
+    /**
+     * Gets the roles carried in the JWT of the logged-in user.
+     *
+     * @param username
+     * @return List of String, or null if the token roles can't be used for this user
+     */
+    private List<String> getTokenRoles(String username) {
+        if (!trustTokenRoles) {
+            return null;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || !username.equals(authentication.getName())) {
+            return null;
+        }
+        if (!authorizationCache.areTokenRolesTrusted(username)) {
+            return null;
+        }
+        return authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+    }
+
+    private boolean isOwner(int patientId, String username) {
+        return authorizationCache.isOwner(patientId, username, () -> patientDao.getPatientByIdAndOwner(patientId, username) != null);
     }
 }
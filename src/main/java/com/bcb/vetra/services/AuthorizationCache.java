@@ -0,0 +1,275 @@
+package com.bcb.vetra.services;
+
+import com.bcb.vetra.viewmodels.PatientAccess;
+import eu.fraho.spring.securityJwt.base.config.TokenProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <strong>Authorization Cache</strong>
+ * <br><br>
+ * Caches role and patient ownership lookups used by AccessControl. Lookups are memoized for the current HTTP request and
+ * kept in a bounded cross-request cache for a short TTL. Entries are invalidated through AccessControl when roles or
+ * patient ownership change.
+ * <br><br>
+ * Role changes are also recorded so AccessControl stops trusting the roles embedded in a user's JWT until their old
+ * tokens expire, which is the access token expiration configured for the JWT starter (<i>fraho.jwt.token.expiration</i>).
+ * This record is kept in memory, so with more than one node each node only sees its own role changes, and a user whose
+ * roles were changed through another node keeps the old roles here until their token expires. When running more than
+ * one node, set <i>vetra.security.token-roles.trusted=false</i> so roles are always read from the database.
+ * <br><br>
+ * The LRU map is guarded by a ReentrantLock rather than a monitor, so virtual threads waiting for it don't pin their
+ * carrier thread.
+ */
+@Component
+public class AuthorizationCache {
+    private static final String REQUEST_MEMO = AuthorizationCache.class.getName() + ".MEMO";
+    private static final String ROLES_PREFIX = "roles:";
+    private static final String OWNER_PREFIX = "owner:";
+
+    private final long ttlNanos;
+    private final long tokenLifetimeNanos;
+    private final Map<String, CachedValue> entries;
+    private final ReentrantLock entriesLock = new ReentrantLock();
+    private final Map<String, Long> rolesChangedUntil = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public AuthorizationCache(@Value("${vetra.security.authz-cache.ttl-seconds:30}") long ttlSeconds,
+                              @Value("${vetra.security.authz-cache.max-entries:10000}") int maxEntries,
+                              TokenProperties tokenProperties) {
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.tokenLifetimeNanos = tokenProperties.getExpiration().toMillis() * 1_000_000L;
+        this.entries = new LinkedHashMap<String, CachedValue>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets the roles of a user, loading them on a miss.
+     *
+     * @param username
+     * @param loader   Called when the roles are not cached.
+     * @return List of String
+     */
+    public List<String> getRoles(String username, Supplier<List<String>> loader) {
+        return get(ROLES_PREFIX + username, () -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Checks whether a user owns a patient, loading the answer on a miss.
+     *
+     * @param patientId
+     * @param username
+     * @param loader    Called when the answer is not cached.
+     * @return boolean
+     */
+    public boolean isOwner(int patientId, String username, Supplier<Boolean> loader) {
+        return get(OWNER_PREFIX + patientId + ":" + username, loader);
+    }
+
+    /**
+     * Gets the cached roles of a user without loading them.
+     *
+     * @param username
+     * @return List of String, or null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> peekRoles(String username) {
+        return (List<String>) peek(ROLES_PREFIX + username);
+    }
+
+    /**
+     * Loads a user's roles and their ownership of a patient together, e.g. in a single query, and caches both. As with
+     * the other lookups, if an invalidation happened while loading, the answers may already be stale and are only kept
+     * for the current request.
+     *
+     * @param patientId
+     * @param username
+     * @param loader    Loads the roles and the ownership answer.
+     */
+    public void loadPatientAccess(int patientId, String username, Supplier<PatientAccess> loader) {
+        long loadedAt = generation.get();
+        PatientAccess access = loader.get();
+        boolean current = generation.get() == loadedAt;
+        put(ROLES_PREFIX + username, List.copyOf(access.getRoles()), current);
+        put(OWNER_PREFIX + patientId + ":" + username, access.isOwner(), current);
+    }
+
+    /**
+     * Checks whether the roles carried in a user's token can still be trusted. Once a user's roles change, tokens issued
+     * before the change carry stale roles, so they are distrusted until every such token has expired.
+     *
+     * @param username
+     * @return boolean
+     */
+    public boolean areTokenRolesTrusted(String username) {
+        Long until = rolesChangedUntil.get(username);
+        if (until == null) {
+            return true;
+        }
+        if (until - System.nanoTime() > 0) {
+            return false;
+        }
+        rolesChangedUntil.remove(username, until);
+        return true;
+    }
+
+    /**
+     * Drops everything cached for a user and distrusts the roles in their existing tokens. Called when a user's roles
+     * change or the user is deleted.
+     *
+     * @param username
+     */
+    public void invalidateUser(String username) {
+        rolesChangedUntil.put(username, System.nanoTime() + tokenLifetimeNanos);
+        String rolesKey = ROLES_PREFIX + username;
+        String ownerSuffix = ":" + username;
+        invalidate(key -> key.equals(rolesKey) || (key.startsWith(OWNER_PREFIX) && key.endsWith(ownerSuffix)));
+    }
+
+    /**
+     * Drops every ownership entry for a patient. Called when a patient is created, updated or deleted.
+     *
+     * @param patientId
+     */
+    public void invalidatePatient(int patientId) {
+        String ownerPrefix = OWNER_PREFIX + patientId + ":";
+        invalidate(key -> key.startsWith(ownerPrefix));
+    }
+
+    /**
+     * Drops every ownership entry for many patients in one pass. Called after a bulk import.
+     *
+     * @param patientIds
+     */
+    public void invalidatePatients(Collection<Integer> patientIds) {
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        Set<String> ownerPrefixes = new HashSet<>();
+        for (Integer patientId : patientIds) {
+            ownerPrefixes.add(OWNER_PREFIX + patientId + ":");
+        }
+        invalidate(key -> key.startsWith(OWNER_PREFIX)
+                && ownerPrefixes.contains(key.substring(0, key.indexOf(':', OWNER_PREFIX.length()) + 1)));
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Supplier<T> loader) {
+        Map<String, Object> memo = requestMemo();
+        if (memo != null && memo.containsKey(key)) {
+            return (T) memo.get(key);
+        }
+
+        long now = System.nanoTime();
+        CachedValue cached = getEntry(key);
+        T value;
+        if (cached != null && cached.expiresAt - now > 0) {
+            value = (T) cached.value;
+        } else {
+            // Loaded outside the lock so a slow query never blocks other callers. If an invalidation
+            // happened while loading, the value may already be stale and is not cached.
+            long loadedAt = generation.get();
+            value = loader.get();
+            if (generation.get() == loadedAt) {
+                putEntry(key, new CachedValue(value, now + ttlNanos));
+            }
+        }
+
+        if (memo != null) {
+            memo.put(key, value);
+        }
+        return value;
+    }
+
+    private Object peek(String key) {
+        Map<String, Object> memo = requestMemo();
+        if (memo != null && memo.containsKey(key)) {
+            return memo.get(key);
+        }
+        CachedValue cached = getEntry(key);
+        if (cached != null && cached.expiresAt - System.nanoTime() > 0) {
+            return cached.value;
+        }
+        return null;
+    }
+
+    private void put(String key, Object value, boolean current) {
+        if (current) {
+            putEntry(key, new CachedValue(value, System.nanoTime() + ttlNanos));
+        }
+        Map<String, Object> memo = requestMemo();
+        if (memo != null) {
+            memo.put(key, value);
+        }
+    }
+
+    private void invalidate(Predicate<String> matches) {
+        generation.incrementAndGet();
+        entriesLock.lock();
+        try {
+            entries.keySet().removeIf(matches);
+        } finally {
+            entriesLock.unlock();
+        }
+        Map<String, Object> memo = requestMemo();
+        if (memo != null) {
+            memo.keySet().removeIf(matches);
+        }
+    }
+
+    private CachedValue getEntry(String key) {
+        // get() also updates the access order, so it needs the lock too.
+        entriesLock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            entriesLock.unlock();
+        }
+    }
+
+    private void putEntry(String key, CachedValue value) {
+        entriesLock.lock();
+        try {
+            entries.put(key, value);
+        } finally {
+            entriesLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the memo map for the current HTTP request, or null when not called from a request thread (e.g. the VMS sync).
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> requestMemo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, Object> memo = (Map<String, Object>) attributes.getAttribute(REQUEST_MEMO, RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new HashMap<>();
+            attributes.setAttribute(REQUEST_MEMO, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return memo;
+    }
+
+    private record CachedValue(Object value, long expiresAt) {
+    }
+}
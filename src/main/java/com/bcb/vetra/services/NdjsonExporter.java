@@ -0,0 +1,62 @@
+package com.bcb.vetra.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * <strong>NDJSON Exporter</strong>
+ * <br><br>
+ * Writes rows to the response as newline-delimited JSON while they are read from the database, so an export uses the
+ * same amount of memory however many rows it contains. The rows are produced by a DAO stream method, which reads them
+ * through a forward-only cursor and passes each one to a consumer.
+ */
+@Component
+public class NdjsonExporter {
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectWriter objectWriter;
+
+    public NdjsonExporter(ObjectMapper objectMapper) {
+        this.objectWriter = objectMapper.writer();
+    }
+
+    /**
+     * Creates a streaming response that writes every row produced by a DAO stream method as one line of JSON.
+     *
+     * @param source A DAO stream method, called with the consumer that writes each row.
+     * @return ResponseEntity with an application/x-ndjson body
+     */
+    public <T> ResponseEntity<StreamingResponseBody> export(Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+            try {
+                source.accept(row -> writeLine(out, row));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, Object row) {
+        try {
+            out.write(objectWriter.writeValueAsBytes(row));
+            out.write('\n');
+        } catch (IOException e) {
+            // Usually the client went away. Rethrown unchecked so the DAO stops reading and closes the cursor.
+            throw new UncheckedIOException(e);
+        }
+    }
+}
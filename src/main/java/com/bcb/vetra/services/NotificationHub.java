@@ -0,0 +1,267 @@
+package com.bcb.vetra.services;
+
+import com.bcb.vetra.daos.NotificationsCreatedEvent;
+import com.bcb.vetra.models.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * <strong>Notification Hub</strong>
+ * <br><br>
+ * Pushes new notifications to the Server-Sent Events streams of their user, so clients don't have to poll for unread
+ * notifications. Streams are kept in memory per username, so a notification only reaches clients connected to the
+ * node that created it; a client that reconnects catches up from the database.
+ * <br><br>
+ * A new stream is registered before its missed notifications are read, so nothing created in between is lost. Pushes
+ * to it are held back until the missed notifications have been sent, and those already among them are dropped, so no
+ * notification reaches a stream twice.
+ * <br><br>
+ * Open streams are gauged as <i>vetra.notifications.streams</i>, notifications pushed to at least one stream are
+ * counted as <i>vetra.notifications.pushed</i> with the streams they reached in <i>vetra.notifications.fanout</i>, and
+ * streams dropped because they broke are counted as <i>vetra.notifications.dropped</i>.
+ */
+@Component
+public class NotificationHub {
+    private static final Logger log = LoggerFactory.getLogger(NotificationHub.class);
+    public static final String EVENT_NAME = "notification";
+
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+    private final Counter pushed;
+    private final Counter dropped;
+    private final DistributionSummary fanout;
+
+    public NotificationHub(@Value("${vetra.notifications.stream-timeout:PT30M}") Duration timeout, MeterRegistry meterRegistry) {
+        this.timeoutMillis = timeout.toMillis();
+        this.pushed = Counter.builder("vetra.notifications.pushed")
+                .description("Notifications pushed to at least one open stream")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("vetra.notifications.dropped")
+                .description("Streams closed because a push to them failed")
+                .register(meterRegistry);
+        this.fanout = DistributionSummary.builder("vetra.notifications.fanout")
+                .description("Streams a pushed notification was sent to")
+                .register(meterRegistry);
+        Gauge.builder("vetra.notifications.streams", this, NotificationHub::getSubscriberCount)
+                .description("Open notification streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a stream for a user and catches it up. The stream is removed from the hub when it completes, times out or
+     * fails.
+     *
+     * @param username
+     * @param missed   Reads the notifications the client missed, sent before any pushed ones.
+     * @return SseEmitter
+     */
+    public SseEmitter subscribe(String username, Supplier<List<Notification>> missed) {
+        Subscription subscription = new Subscription(new SseEmitter(timeoutMillis));
+        subscriptions.computeIfAbsent(username, key -> new CopyOnWriteArraySet<>()).add(subscription);
+        Runnable remove = () -> unsubscribe(username, subscription);
+        subscription.emitter.onCompletion(remove);
+        subscription.emitter.onTimeout(remove);
+        subscription.emitter.onError(error -> remove.run());
+
+        List<Notification> catchUp;
+        try {
+            catchUp = missed.get();
+        } catch (RuntimeException e) {
+            unsubscribe(username, subscription);
+            throw e;
+        }
+        Set<Integer> sentIds = new HashSet<>();
+        for (Notification notification : catchUp) {
+            if (!send(subscription.emitter, notification)) {
+                return subscription.emitter;
+            }
+            sentIds.add(notification.getId());
+        }
+        // Sent outside the lock, so a slow client never holds up the thread publishing to it.
+        while (true) {
+            List<Notification> held;
+            subscription.lock.lock();
+            try {
+                if (subscription.held.isEmpty()) {
+                    subscription.held = null;
+                    return subscription.emitter;
+                }
+                held = subscription.held;
+                subscription.held = new ArrayList<>();
+            } finally {
+                subscription.lock.unlock();
+            }
+            for (Notification notification : held) {
+                if (sentIds.add(notification.getId()) && !send(subscription.emitter, notification)) {
+                    return subscription.emitter;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a notification to the streams of its user.
+     *
+     * @param notification
+     */
+    public void publish(Notification notification) {
+        if (subscriptions.containsKey(notification.getUsername())) {
+            sendToUser(notification);
+        }
+    }
+
+    /**
+     * Publishes several notifications. See publish(Notification).
+     *
+     * @param notifications
+     */
+    public void publishAll(List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            publish(notification);
+        }
+    }
+
+    /**
+     * Publishes the notifications NotificationDao created. Inside a transaction they are only published once it
+     * commits, so clients never see a notification that was rolled back; outside of one they are published at once.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onNotificationsCreated(NotificationsCreatedEvent event) {
+        publishAll(event.notifications());
+    }
+
+    /**
+     * Sends a comment on every open stream so proxies and load balancers don't close idle connections.
+     */
+    @Scheduled(fixedDelayString = "${vetra.notifications.heartbeat:PT25S}")
+    public void heartbeat() {
+        for (Map.Entry<String, Set<Subscription>> entry : subscriptions.entrySet()) {
+            for (Subscription subscription : entry.getValue()) {
+                try {
+                    subscription.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    dropped.increment();
+                    unsubscribe(entry.getKey(), subscription);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of open streams.
+     *
+     * @return int
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Set<Subscription> userSubscriptions : subscriptions.values()) {
+            count += userSubscriptions.size();
+        }
+        return count;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void sendToUser(Notification notification) {
+        Set<Subscription> userSubscriptions = subscriptions.get(notification.getUsername());
+        if (userSubscriptions == null) {
+            return;
+        }
+        int sent = 0;
+        for (Subscription subscription : userSubscriptions) {
+            if (subscription.hold(notification)) {
+                continue;
+            }
+            if (send(subscription.emitter, notification)) {
+                sent++;
+            } else {
+                log.debug("Dropped broken notification stream of {}.", notification.getUsername());
+                dropped.increment();
+                unsubscribe(notification.getUsername(), subscription);
+            }
+        }
+        if (sent > 0) {
+            pushed.increment();
+            fanout.record(sent);
+        }
+    }
+
+    /**
+     * Sends a notification to a single stream.
+     *
+     * @return false if the stream is broken and was closed.
+     */
+    private boolean send(SseEmitter emitter, Notification notification) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(notification.getId()))
+                    .name(EVENT_NAME)
+                    .data(notification));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void unsubscribe(String username, Subscription subscription) {
+        subscriptions.computeIfPresent(username, (key, userSubscriptions) -> {
+            userSubscriptions.remove(subscription);
+            return userSubscriptions.isEmpty() ? null : userSubscriptions;
+        });
+    }
+
+    /**
+     * An open stream. Until it has caught up, notifications pushed to it are held instead of sent.
+     */
+    private static class Subscription {
+        private final SseEmitter emitter;
+        // A ReentrantLock rather than a monitor, so virtual threads waiting for it don't pin their carrier thread.
+        private final ReentrantLock lock = new ReentrantLock();
+        private List<Notification> held = new ArrayList<>();
+
+        private Subscription(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Holds a notification back if the stream is still catching up.
+         *
+         * @return false if the stream has caught up and the notification should be sent now.
+         */
+        private boolean hold(Notification notification) {
+            lock.lock();
+            try {
+                if (held == null) {
+                    return false;
+                }
+                held.add(notification);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.bcb.vetra.services;
+
+import com.bcb.vetra.daos.*;
+import com.bcb.vetra.models.Message;
+import com.bcb.vetra.models.Patient;
+import com.bcb.vetra.models.Request;
+import com.bcb.vetra.models.Result;
+import com.bcb.vetra.models.Test;
+import com.bcb.vetra.viewmodels.PatientDashboard;
+import com.bcb.vetra.viewmodels.PrescriptionWithMedication;
+import com.bcb.vetra.viewmodels.PrescriptionWithRequests;
+import com.bcb.vetra.viewmodels.TestWithResults;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * <strong>Patient Dashboard Service</strong>
+ * <br><br>
+ * Assembles a PatientDashboard with one set-based query per table, whatever the number of tests and prescriptions:
+ * the patient, its tests, the results of all of them, its prescriptions, the requests for all of them and its
+ * messages. Results and requests are grouped under their parents in memory. The queries run in one read-only
+ * transaction, so every section comes from the same snapshot.
+ * <br><br>
+ * Access is not checked here; callers authorize the patient once before asking for its dashboard.
+ */
+@Service
+public class PatientDashboardService {
+    public static final String TESTS = "tests";
+    public static final String PRESCRIPTIONS = "prescriptions";
+    public static final String MESSAGES = "messages";
+    public static final Set<String> SECTIONS = Set.of(TESTS, PRESCRIPTIONS, MESSAGES);
+
+    private final PatientDao patientDao;
+    private final TestDao testDao;
+    private final ResultDao resultDao;
+    private final PrescriptionDao prescriptionDao;
+    private final RequestDao requestDao;
+    private final MessageDao messageDao;
+
+    public PatientDashboardService(PatientDao patientDao, TestDao testDao, ResultDao resultDao, PrescriptionDao prescriptionDao,
+                                   RequestDao requestDao, MessageDao messageDao) {
+        this.patientDao = patientDao;
+        this.testDao = testDao;
+        this.resultDao = resultDao;
+        this.prescriptionDao = prescriptionDao;
+        this.requestDao = requestDao;
+        this.messageDao = messageDao;
+    }
+
+    /**
+     * Gets the dashboard of a patient.
+     *
+     * @param patientId
+     * @param sections  The sections to include, from SECTIONS.
+     * @return PatientDashboard, or null if the patient does not exist
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public PatientDashboard getDashboard(int patientId, Set<String> sections) {
+        Patient patient = patientDao.getPatientById(patientId);
+        if (patient == null) {
+            return null;
+        }
+        PatientDashboard dashboard = new PatientDashboard();
+        dashboard.setPatient(patient);
+        if (sections.contains(TESTS)) {
+            dashboard.setTests(getTests(patientId));
+        }
+        if (sections.contains(PRESCRIPTIONS)) {
+            dashboard.setPrescriptions(getPrescriptions(patientId));
+        }
+        if (sections.contains(MESSAGES)) {
+            List<Message> messages = messageDao.getMessagesByPatientId(patientId);
+            messages.sort(Comparator.comparing(Message::getTimestamp, Comparator.nullsLast(Comparator.reverseOrder())));
+            dashboard.setMessages(messages);
+        }
+        return dashboard;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Gets the tests of a patient with their results, newest first.
+     */
+    private List<TestWithResults> getTests(int patientId) {
+        List<Test> tests = testDao.getTestsForPatient(patientId);
+        tests.sort(Comparator.comparing(Test::getTimestamp, Comparator.nullsLast(Comparator.reverseOrder())));
+        Map<Integer, List<Result>> resultsByTest = new HashMap<>();
+        for (Result result : resultDao.getResultsForPatient(patientId)) {
+            resultsByTest.computeIfAbsent(result.getTestID(), key -> new ArrayList<>()).add(result);
+        }
+        List<TestWithResults> testsWithResults = new ArrayList<>(tests.size());
+        for (Test test : tests) {
+            testsWithResults.add(new TestWithResults(test, resultsByTest.getOrDefault(test.getId(), new ArrayList<>())));
+        }
+        return testsWithResults;
+    }
+
+    /**
+     * Gets the prescriptions of a patient with their requests, oldest request first.
+     */
+    private List<PrescriptionWithRequests> getPrescriptions(int patientId) {
+        List<PrescriptionWithMedication> prescriptions = prescriptionDao.getPrescriptionsByPatientId(patientId);
+        Map<Integer, List<Request>> requestsByPrescription = new HashMap<>();
+        for (Request request : requestDao.getRequestsByPatientId(patientId)) {
+            requestsByPrescription.computeIfAbsent(request.getPrescriptionId(), key -> new ArrayList<>()).add(request);
+        }
+        List<PrescriptionWithRequests> prescriptionsWithRequests = new ArrayList<>(prescriptions.size());
+        for (PrescriptionWithMedication prescription : prescriptions) {
+            prescriptionsWithRequests.add(new PrescriptionWithRequests(prescription,
+                    requestsByPrescription.getOrDefault(prescription.getPrescriptionId(), new ArrayList<>())));
+        }
+        return prescriptionsWithRequests;
+    }
+}
@@ -2,27 +2,50 @@ package com.bcb.vetra.services.deserializers;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 
 import java.io.IOException;
-import java.time.DateTimeException;
 import java.time.LocalDate;
 
+/**
+ * Deserializes a date sent as epoch days, either a JSON number or a string of digits, or as an ISO date (yyyy-MM-dd).
+ * The token is parsed straight from the parser without throwing; anything else, or a date that does not exist,
+ * becomes null. An object or array is skipped.
+ */
 public class EpochToLocalDateDeserializer extends JsonDeserializer<LocalDate> {
+    private static final long MIN_EPOCH_DAY = LocalDate.MIN.toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.MAX.toEpochDay();
 
     @Override
     public LocalDate deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
-        String value = jsonParser.getText();
-        try {
-            long epoch = Long.parseLong(value);
-            return LocalDate.ofEpochDay(epoch);
-        } catch (NumberFormatException e) {
-            try {
-                return LocalDate.parse(value);
-            } catch (DateTimeException e2) {
-                return null;
+        JsonToken token = jsonParser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return jsonParser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ? null : ofEpochDay(jsonParser.getLongValue());
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            if (token != null && token.isStructStart()) {
+                // Leave the parser after the object or array, so the fields that follow it are still read.
+                jsonParser.skipChildren();
             }
+            return null;
+        }
+        char[] chars = jsonParser.getTextCharacters();
+        int offset = jsonParser.getTextOffset();
+        int length = jsonParser.getTextLength();
+        long epochDay = JsonTokens.parseLong(chars, offset, length);
+        if (epochDay != JsonTokens.NOT_A_NUMBER) {
+            return ofEpochDay(epochDay);
         }
+        return JsonTokens.parseIsoDate(chars, offset, length);
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static LocalDate ofEpochDay(long epochDay) {
+        return epochDay >= MIN_EPOCH_DAY && epochDay <= MAX_EPOCH_DAY ? LocalDate.ofEpochDay(epochDay) : null;
     }
 }
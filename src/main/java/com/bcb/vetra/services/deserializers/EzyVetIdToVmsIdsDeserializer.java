@@ -0,0 +1,23 @@
+package com.bcb.vetra.services.deserializers;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deserializes the "id" of an ezyVet record into the vmsIds map of a model, keyed by "ezyVet".
+ */
+public class EzyVetIdToVmsIdsDeserializer extends JsonDeserializer<Map<String, String>> {
+
+    @Override
+    public Map<String, String> deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+        Map<String, String> vmsIds = new HashMap<>();
+        vmsIds.put("ezyVet", jsonParser.getValueAsString());
+        return vmsIds;
+    }
+}
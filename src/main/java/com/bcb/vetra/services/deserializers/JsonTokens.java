@@ -0,0 +1,70 @@
+package com.bcb.vetra.services.deserializers;
+
+import java.time.LocalDate;
+
+/**
+ * Parses the text of a JSON token in place, from the parser's character buffer. Invalid input gives a sentinel rather
+ * than an exception, and nothing is allocated, so bulk imports pay nothing for values in an unexpected form.
+ */
+final class JsonTokens {
+    /** Returned by parseLong for text that is not an integer. */
+    static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    private static final int MAX_DIGITS = 18;
+
+    private JsonTokens() {
+    }
+
+    /**
+     * Parses a decimal integer with an optional leading minus sign.
+     *
+     * @param chars
+     * @param offset
+     * @param length
+     * @return long, or NOT_A_NUMBER if the text is empty, has other characters or more than 18 digits
+     */
+    static long parseLong(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = length > 0 && chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > MAX_DIGITS) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an ISO date of the form yyyy-MM-dd.
+     *
+     * @param chars
+     * @param offset
+     * @param length
+     * @return LocalDate, or null if the text is not a valid date in that form
+     */
+    static LocalDate parseIsoDate(char[] chars, int offset, int length) {
+        if (length != 10 || chars[offset + 4] != '-' || chars[offset + 7] != '-') {
+            return null;
+        }
+        long year = parseLong(chars, offset, 4);
+        long month = parseLong(chars, offset + 5, 2);
+        long day = parseLong(chars, offset + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return null;
+        }
+        if (day > 28 && day > LocalDate.of((int) year, (int) month, 1).lengthOfMonth()) {
+            return null;
+        }
+        return LocalDate.of((int) year, (int) month, (int) day);
+    }
+}
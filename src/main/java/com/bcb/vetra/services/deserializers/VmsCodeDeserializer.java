@@ -0,0 +1,53 @@
+package com.bcb.vetra.services.deserializers;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * <strong>VMS Code Deserializer</strong>
+ * <br><br>
+ * Deserializes a field a VMS sends as a numeric code into the value VetRA stores, using the field's VmsCodeTable.
+ * Codes are read as JSON numbers or as strings of digits, straight from the parser; other scalars are taken to be a
+ * value already, as sent through the API, and kept as is. An object or array is skipped and read as null. Nothing
+ * throws, so unexpected input costs no more than expected input.
+ * <br><br>
+ * Each subclass binds one field of one VMS, e.g. SpeciesIdToSpeciesDeserializer for ezyVet species. Fields of another
+ * VMS get their own subclass, applied with a Jackson mix-in on that VMS's reader.
+ */
+public abstract class VmsCodeDeserializer extends JsonDeserializer<String> {
+    private final String tableKey;
+
+    /**
+     * @param vms   The VMS name in vms-codes.properties, e.g. "ezyvet".
+     * @param field The field name in vms-codes.properties, e.g. "species".
+     */
+    protected VmsCodeDeserializer(String vms, String field) {
+        this.tableKey = VmsCodes.key(vms, field);
+    }
+
+    @Override
+    public String deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+        JsonToken token = jsonParser.currentToken();
+        long code = JsonTokens.NOT_A_NUMBER;
+        if (token == JsonToken.VALUE_NUMBER_INT && jsonParser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            code = jsonParser.getLongValue();
+        } else if (token == JsonToken.VALUE_STRING) {
+            code = JsonTokens.parseLong(jsonParser.getTextCharacters(), jsonParser.getTextOffset(), jsonParser.getTextLength());
+        }
+        if (code == JsonTokens.NOT_A_NUMBER) {
+            if (token != null && token.isStructStart()) {
+                // Leave the parser after the object or array, so the fields that follow it are still read.
+                jsonParser.skipChildren();
+                return null;
+            }
+            return jsonParser.getValueAsString();
+        }
+        String value = VmsCodes.tableFor(tableKey).valueOf(code);
+        return value != null ? value : jsonParser.getText();
+    }
+}
@@ -0,0 +1,61 @@
+package com.bcb.vetra.services.deserializers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <strong>VMS Code Table</strong>
+ * <br><br>
+ * The values a VMS's numeric codes stand for, for one field, e.g. the species of ezyVet's species IDs. Codes up to
+ * DENSE_LIMIT are looked up by array index, larger ones in a map. Immutable, so tables can be shared between threads.
+ */
+public final class VmsCodeTable {
+    private static final int DENSE_LIMIT = 1024;
+
+    private final String[] dense;
+    private final Map<Long, String> sparse;
+    private final String unknown;
+
+    /**
+     * @param values  Values keyed by code.
+     * @param unknown The value of codes that are not in the table.
+     */
+    public VmsCodeTable(Map<Long, String> values, String unknown) {
+        long maxDense = -1;
+        for (long code : values.keySet()) {
+            if (code >= 0 && code < DENSE_LIMIT) {
+                maxDense = Math.max(maxDense, code);
+            }
+        }
+        this.dense = new String[(int) maxDense + 1];
+        this.sparse = new HashMap<>();
+        values.forEach((code, value) -> {
+            if (code >= 0 && code < DENSE_LIMIT) {
+                dense[code.intValue()] = value;
+            } else {
+                sparse.put(code, value);
+            }
+        });
+        this.unknown = unknown;
+    }
+
+    /**
+     * Gets the value of a code.
+     *
+     * @param code
+     * @return String, or the unknown value if the code is not in the table
+     */
+    public String valueOf(long code) {
+        String value = null;
+        if (code >= 0 && code < dense.length) {
+            value = dense[(int) code];
+        } else if (!sparse.isEmpty()) {
+            value = sparse.get(code);
+        }
+        return value != null ? value : unknown;
+    }
+
+    public String getUnknown() {
+        return unknown;
+    }
+}
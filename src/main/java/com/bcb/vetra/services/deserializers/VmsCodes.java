@@ -0,0 +1,125 @@
+package com.bcb.vetra.services.deserializers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <strong>VMS Codes</strong>
+ * <br><br>
+ * The code tables of every VMS, read from <i>vms-codes.properties</i> on the classpath. Each entry is
+ * <i>&lt;vms&gt;.&lt;field&gt;.&lt;code&gt;=&lt;value&gt;</i>, and <i>&lt;vms&gt;.&lt;field&gt;.unknown</i> gives the value of
+ * codes that are not listed. More entries can be added at startup with addAll, which VmsCodesConfig does for the file
+ * in <i>vetra.vms.codes-location</i>.
+ * <br><br>
+ * Deserializers are created by Jackson rather than by Spring, so the tables are held here instead of in a bean. They
+ * are replaced as a whole, so a deserializer always sees a consistent set.
+ */
+public final class VmsCodes {
+    private static final String DEFAULTS = "/vms-codes.properties";
+    private static final String UNKNOWN = "unknown";
+    private static final VmsCodeTable EMPTY = new VmsCodeTable(Map.of(), null);
+
+    private static Properties entries = loadDefaults();
+    private static volatile Map<String, VmsCodeTable> tables = build(entries);
+
+    private VmsCodes() {
+    }
+
+    /**
+     * Gets the code table of a field of a VMS.
+     *
+     * @param vms   e.g. "ezyvet"
+     * @param field e.g. "species"
+     * @return VmsCodeTable, empty with a null unknown value if nothing is configured
+     */
+    public static VmsCodeTable table(String vms, String field) {
+        return tableFor(key(vms, field));
+    }
+
+    /**
+     * Gets a code table by a key made with key, which callers on a hot path compute once.
+     *
+     * @param key
+     * @return VmsCodeTable
+     */
+    static VmsCodeTable tableFor(String key) {
+        VmsCodeTable table = tables.get(key);
+        return table != null ? table : EMPTY;
+    }
+
+    static String key(String vms, String field) {
+        return vms.toLowerCase(Locale.ROOT) + "." + field.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds entries to the tables, replacing the values of codes that are already configured. Keys are matched without
+     * regard to case, so <i>EzyVet.Species.2</i> replaces <i>ezyvet.species.2</i>.
+     *
+     * @param properties Entries in the form of vms-codes.properties.
+     */
+    public static synchronized void addAll(Properties properties) {
+        Properties merged = new Properties();
+        merged.putAll(entries);
+        merged.putAll(lowerCaseKeys(properties));
+        Map<String, VmsCodeTable> built = build(merged);
+        entries = merged;
+        tables = built;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static Properties loadDefaults() {
+        Properties properties = new Properties();
+        try (InputStream in = VmsCodes.class.getResourceAsStream(DEFAULTS)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + DEFAULTS + ".", e);
+        }
+        return lowerCaseKeys(properties);
+    }
+
+    private static Properties lowerCaseKeys(Properties properties) {
+        Properties lowerCase = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            lowerCase.setProperty(name.toLowerCase(Locale.ROOT), properties.getProperty(name));
+        }
+        return lowerCase;
+    }
+
+    private static Map<String, VmsCodeTable> build(Properties properties) {
+        Map<String, Map<Long, String>> values = new TreeMap<>();
+        Map<String, String> unknowns = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            int dot = name.lastIndexOf('.');
+            if (dot <= 0 || name.indexOf('.') == dot) {
+                throw new IllegalArgumentException("VMS code '" + name + "' must have the form <vms>.<field>.<code>.");
+            }
+            String table = name.substring(0, dot);
+            String code = name.substring(dot + 1);
+            String value = properties.getProperty(name).trim();
+            values.computeIfAbsent(table, key -> new HashMap<>());
+            if (code.equals(UNKNOWN)) {
+                unknowns.put(table, value);
+                continue;
+            }
+            long number = JsonTokens.parseLong(code.toCharArray(), 0, code.length());
+            if (number == JsonTokens.NOT_A_NUMBER) {
+                throw new IllegalArgumentException("VMS code '" + name + "' does not end with a number or 'unknown'.");
+            }
+            values.get(table).put(number, value);
+        }
+        Map<String, VmsCodeTable> built = new HashMap<>();
+        values.forEach((table, codes) -> built.put(table, new VmsCodeTable(codes, unknowns.get(table))));
+        return built;
+    }
+}
@@ -0,0 +1,43 @@
+package com.bcb.vetra.services.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * <strong>DAO Metrics Aspect</strong>
+ * <br><br>
+ * Times every public DAO method as <i>vetra.dao.queries</i>, tagged with the DAO, the method (the query name) and
+ * whether it succeeded. Calls from a DAO to its own methods are not proxied and count towards the caller.
+ */
+@Aspect
+@Component
+public class DaoMetricsAspect {
+    private final MeterRegistry meterRegistry;
+
+    public DaoMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("within(com.bcb.vetra.daos..*) && execution(public * *(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("vetra.dao.queries")
+                    .description("Time spent in DAO methods")
+                    .tag("dao", joinPoint.getSignature().getDeclaringType().getSimpleName())
+                    .tag("query", joinPoint.getSignature().getName())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+}
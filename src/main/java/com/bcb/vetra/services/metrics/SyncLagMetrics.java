@@ -0,0 +1,80 @@
+package com.bcb.vetra.services.metrics;
+
+import com.bcb.vetra.daos.MetaDao;
+import com.bcb.vetra.models.SyncWatermark;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Sync Lag Metrics</strong>
+ * <br><br>
+ * Publishes how far each VMS import is behind:
+ * <ul>
+ *     <li><i>vetra.sync.lag</i>: seconds between now and the high-water mark of each imported entity, tagged with the
+ *     VMS and entity. The mark is the source's last modification that was imported, so the lag also grows while
+ *     nothing changes in the VMS.</li>
+ *     <li><i>vetra.sync.action.age</i>: seconds since each action in the meta table, such as the last patient
+ *     import.</li>
+ * </ul>
+ * The marks are read from the database every <i>vetra.metrics.sync-lag-refresh</i>; the lag itself is computed when
+ * the gauges are read.
+ */
+@Component
+public class SyncLagMetrics {
+    private static final Logger log = LoggerFactory.getLogger(SyncLagMetrics.class);
+
+    private final MetaDao metaDao;
+    private final MultiGauge lag;
+    private final MultiGauge actionAge;
+
+    public SyncLagMetrics(MetaDao metaDao, MeterRegistry meterRegistry) {
+        this.metaDao = metaDao;
+        this.lag = MultiGauge.builder("vetra.sync.lag")
+                .description("Seconds between now and the last imported source modification")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.actionAge = MultiGauge.builder("vetra.sync.action.age")
+                .description("Seconds since a sync action was last performed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reloads the marks and action times, adding gauges for new entities.
+     */
+    @Scheduled(initialDelayString = "PT5S", fixedDelayString = "${vetra.metrics.sync-lag-refresh:PT30S}")
+    public void refresh() {
+        try {
+            List<MultiGauge.Row<?>> lagRows = new ArrayList<>();
+            for (SyncWatermark watermark : metaDao.getWatermarks()) {
+                long highWaterMark = watermark.getHighWaterMark();
+                lagRows.add(MultiGauge.Row.of(
+                        Tags.of("vms", watermark.getVmsName(), "entity", watermark.getEntity()),
+                        () -> Instant.now().getEpochSecond() - highWaterMark));
+            }
+            lag.register(lagRows, true);
+
+            List<MultiGauge.Row<?>> actionRows = new ArrayList<>();
+            for (Map.Entry<String, Instant> action : metaDao.getActionTimes().entrySet()) {
+                long performedAt = action.getValue().getEpochSecond();
+                actionRows.add(MultiGauge.Row.of(
+                        Tags.of("action", action.getKey()),
+                        () -> Instant.now().getEpochSecond() - performedAt));
+            }
+            actionAge.register(actionRows, true);
+        } catch (DataAccessException e) {
+            log.warn("Could not refresh sync lag metrics.", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bcb.vetra.services.querystats;
+
+import com.bcb.vetra.viewmodels.QueryStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <strong>Query Statistics</strong>
+ * <br><br>
+ * Collects call counts, error counts, row counts and a latency histogram for every SQL statement sent through the
+ * application's DataSource (see QueryStatsDataSource). Statements are keyed by their SQL text, so the same DAO query
+ * always lands in the same entry whatever its bind values.
+ * <br><br>
+ * Executions slower than <i>vetra.query-stats.slow-threshold</i> are logged as warnings together with the types of
+ * their bind parameters, never the values, so no patient data ends up in the log. At most
+ * <i>vetra.query-stats.max-statements</i> distinct statements are tracked; executions of any statement beyond that are
+ * added to a single <i>OTHER_STATEMENTS</i> entry.
+ */
+@Component
+public class QueryStatistics {
+    private static final Logger log = LoggerFactory.getLogger(QueryStatistics.class);
+    public static final String OTHER_STATEMENTS = "<other statements>";
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final long slowThresholdNanos;
+    private final int maxStatements;
+
+    public QueryStatistics(@Value("${vetra.query-stats.slow-threshold:PT0.5S}") Duration slowThreshold,
+                           @Value("${vetra.query-stats.max-statements:500}") int maxStatements) {
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * Records one execution of a statement, logging it if it was slow.
+     *
+     * @param sql
+     * @param nanos          How long the execution took.
+     * @param failed         Whether it threw.
+     * @param parameterShape The types of the bind parameters, e.g. "(String, Integer[])".
+     */
+    public void recordExecution(String sql, long nanos, boolean failed, String parameterShape) {
+        statsFor(sql).recordExecution(nanos, failed);
+        if (nanos >= slowThresholdNanos) {
+            log.warn("Slow query ({} ms, parameters {}): {}", nanos / 1_000_000, parameterShape, sql);
+        }
+    }
+
+    /**
+     * Records rows returned or changed by a statement.
+     *
+     * @param sql
+     * @param rows
+     */
+    public void recordRows(String sql, long rows) {
+        if (rows > 0) {
+            statsFor(sql).recordRows(rows);
+        }
+    }
+
+    /**
+     * Gets the statements that took the most time in total, slowest first.
+     *
+     * @param limit The number of statements to return.
+     * @return List of QueryStats
+     */
+    public List<QueryStats> getTop(int limit) {
+        List<StatementStats> all = new ArrayList<>(statements.values());
+        // Totals keep moving while sorting, so they are read once per statement.
+        Map<StatementStats, Long> totals = new HashMap<>();
+        for (StatementStats stats : all) {
+            totals.put(stats, stats.getTotalNanos());
+        }
+        all.sort((a, b) -> Long.compare(totals.get(b), totals.get(a)));
+
+        List<QueryStats> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, all.size()); i++) {
+            top.add(all.get(i).snapshot());
+        }
+        return top;
+    }
+
+    /**
+     * Clears every statistic, e.g. before measuring a change.
+     */
+    public void reset() {
+        statements.clear();
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private StatementStats statsFor(String sql) {
+        StatementStats stats = statements.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        // The size check is not atomic with the insert, so the limit can be overshot by a few concurrent statements.
+        String key = statements.size() < maxStatements ? sql : OTHER_STATEMENTS;
+        return statements.computeIfAbsent(key, StatementStats::new);
+    }
+}
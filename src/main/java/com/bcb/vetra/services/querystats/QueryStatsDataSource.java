@@ -0,0 +1,248 @@
+package com.bcb.vetra.services.querystats;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * <strong>Query Stats DataSource</strong>
+ * <br><br>
+ * Wraps the application's DataSource so every statement executed through it, by JdbcTemplate, the transaction
+ * templates or Flyway, is recorded in QueryStatistics. Connections, statements and result sets are handed out as
+ * proxies that time each execute call, remember the types of the bind parameters, and count the rows read from a
+ * result set or changed by an update.
+ * <br><br>
+ * The execute call covers the round trip and, as the PostgreSQL driver reads the whole result unless a fetch size is
+ * set, the transfer of the rows. Time spent by the caller mapping the rows is not included.
+ */
+public class QueryStatsDataSource extends DelegatingDataSource {
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final QueryStatistics statistics;
+
+    public QueryStatsDataSource(DataSource targetDataSource, QueryStatistics statistics) {
+        super(targetDataSource);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(obtainTargetDataSource().getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(obtainTargetDataSource().getConnection(username, password)));
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(QueryStatsDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Calls the wrapped object, rethrowing what it threw rather than the reflection wrapper.
+     */
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Handles the methods every proxy has to answer itself. Proxies are only equal to themselves, as JDBC objects are.
+     *
+     * @return the result, or null if the method is not one of them.
+     */
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> method.getParameterCount() == 1 ? proxy == args[0] : null;
+            case "hashCode" -> method.getParameterCount() == 0 ? System.identityHashCode(proxy) : null;
+            default -> null;
+        };
+    }
+
+    /**
+     * Describes a bind value without revealing it, e.g. "String", "Integer[120]" or "null".
+     */
+    private static String describe(String setter, Object value) {
+        if (setter.equals("setNull") || value == null) {
+            return "null";
+        }
+        if (value.getClass().isArray()) {
+            return value.getClass().getComponentType().getSimpleName() + "[" + java.lang.reflect.Array.getLength(value) + "]";
+        }
+        if (value instanceof Array array) {
+            try {
+                return array.getBaseTypeName() + "[]";
+            } catch (SQLException e) {
+                return "Array";
+            }
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object own = invokeObjectMethod(proxy, method, args);
+            if (own != null) {
+                return own;
+            }
+            Object result = invokeTarget(target, method, args);
+            return switch (method.getName()) {
+                case "prepareStatement" -> proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "prepareCall" -> proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "createStatement" -> proxy(Statement.class, new StatementHandler((Statement) result, null));
+                default -> result;
+            };
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private final SortedMap<Integer, String> parameterTypes = new TreeMap<>();
+        private final List<String> batchSql = new ArrayList<>();
+
+        /**
+         * @param sql The SQL of a prepared statement, or null for a plain statement that gets its SQL per call.
+         */
+        StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object own = invokeObjectMethod(proxy, method, args);
+            if (own != null) {
+                return own;
+            }
+            String name = method.getName();
+            if (EXECUTE_METHODS.contains(name)) {
+                return execute(method, args);
+            }
+
+            Object result = invokeTarget(target, method, args);
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameterTypes.put(index, describe(name, args[1]));
+            } else if (name.equals("clearParameters")) {
+                parameterTypes.clear();
+            } else if (name.equals("addBatch") && args != null && args.length == 1) {
+                batchSql.add((String) args[0]);
+            } else if (name.equals("clearBatch")) {
+                batchSql.clear();
+            } else if (name.equals("getResultSet") && result != null) {
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, currentSql(null)));
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String statementSql = currentSql(args);
+            long start = System.nanoTime();
+            boolean failed = false;
+            Object result;
+            try {
+                result = invokeTarget(target, method, args);
+            } catch (Throwable e) {
+                failed = true;
+                throw e;
+            } finally {
+                statistics.recordExecution(statementSql, System.nanoTime() - start, failed, parameterShape());
+                if (method.getName().startsWith("executeBatch") || method.getName().startsWith("executeLargeBatch")) {
+                    batchSql.clear();
+                }
+            }
+
+            if (result instanceof ResultSet resultSet) {
+                return proxy(ResultSet.class, new ResultSetHandler(resultSet, statementSql));
+            }
+            statistics.recordRows(statementSql, countRows(result));
+            return result;
+        }
+
+        /**
+         * Gets the SQL being executed: the prepared SQL, the SQL passed to this call, or the batch added to a plain
+         * statement.
+         */
+        private String currentSql(Object[] args) {
+            if (sql != null) {
+                return sql;
+            }
+            if (args != null && args.length > 0 && args[0] instanceof String callSql) {
+                return callSql;
+            }
+            return batchSql.isEmpty() ? "<unknown statement>" : String.join(";\n", batchSql);
+        }
+
+        private String parameterShape() {
+            return "(" + String.join(", ", parameterTypes.values()) + ")";
+        }
+
+        private long countRows(Object result) {
+            long rows = 0;
+            if (result instanceof Number count) {
+                rows = count.longValue();
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final String sql;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object own = invokeObjectMethod(proxy, method, args);
+            if (own != null) {
+                return own;
+            }
+            Object result = invokeTarget(target, method, args);
+            String name = method.getName();
+            if (name.equals("next") && Boolean.TRUE.equals(result)) {
+                rows++;
+            } else if (name.equals("close") && !recorded) {
+                recorded = true;
+                statistics.recordRows(sql, rows);
+            }
+            return result;
+        }
+    }
+}
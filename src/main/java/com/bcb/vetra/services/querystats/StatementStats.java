@@ -0,0 +1,89 @@
+package com.bcb.vetra.services.querystats;
+
+import com.bcb.vetra.viewmodels.QueryStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for a single SQL statement. Every counter is updated without locking, so concurrent executions of the
+ * same statement don't contend.
+ */
+class StatementStats {
+    /**
+     * Upper bounds of the latency histogram buckets, in milliseconds. Slower executions go to a last, unbounded bucket.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final String sql;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+
+    StatementStats(String sql) {
+        this.sql = sql;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void recordExecution(long nanos, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets[bucketOf(nanos)].increment();
+    }
+
+    void recordRows(long count) {
+        rows.add(count);
+    }
+
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    QueryStats snapshot() {
+        long callCount = calls.sum();
+        long total = totalNanos.sum();
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            histogram.put("<=" + BUCKET_BOUNDS_MILLIS[i] + "ms", buckets[i].sum());
+        }
+        histogram.put(">" + BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1] + "ms", buckets[BUCKET_BOUNDS_MILLIS.length].sum());
+        return new QueryStats(
+                sql,
+                callCount,
+                errors.sum(),
+                rows.sum(),
+                toMillis(total),
+                callCount == 0 ? 0 : toMillis(total / callCount),
+                toMillis(maxNanos.get()),
+                histogram
+        );
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static int bucketOf(long nanos) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (nanos <= BUCKET_BOUNDS_MILLIS[i] * 1_000_000) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
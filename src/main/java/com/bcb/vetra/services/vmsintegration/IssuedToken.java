@@ -0,0 +1,27 @@
+package com.bcb.vetra.services.vmsintegration;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * An access token issued by a VMS, with the time it expires.
+ */
+@Getter
+@AllArgsConstructor
+public class IssuedToken {
+    private final String accessToken;
+    private final Instant expiresAt;
+
+    /**
+     * Checks whether the token expires within the given time, i.e. should be refreshed now.
+     *
+     * @param margin
+     * @return boolean
+     */
+    public boolean expiresWithin(Duration margin) {
+        return !Instant.now().plus(margin).isBefore(expiresAt);
+    }
+}
@@ -0,0 +1,73 @@
+package com.bcb.vetra.services.vmsintegration;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State of the background sync job for a single VMS source. Returned by the sync endpoints so admins can see when a source last ran and whether it failed.
+ */
+@Getter
+public class SyncJobState {
+
+    public enum Status {
+        IDLE,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final String source;
+    private volatile Status status = Status.IDLE;
+    private volatile LocalDateTime lastStartedAt;
+    private volatile LocalDateTime lastFinishedAt;
+    private volatile LocalDateTime lastSuccessAt;
+    private volatile String lastError;
+    private volatile long runCount;
+    private volatile long failureCount;
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public SyncJobState(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Marks the job as started.
+     *
+     * @return false if the job was already running, in which case the caller should not run it again.
+     */
+    boolean tryStart() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        status = Status.RUNNING;
+        lastStartedAt = LocalDateTime.now();
+        return true;
+    }
+
+    void succeeded() {
+        LocalDateTime now = LocalDateTime.now();
+        status = Status.SUCCEEDED;
+        lastFinishedAt = now;
+        lastSuccessAt = now;
+        lastError = null;
+        runCount++;
+        running.set(false);
+    }
+
+    void failed(String error) {
+        status = Status.FAILED;
+        lastFinishedAt = LocalDateTime.now();
+        lastError = error;
+        runCount++;
+        failureCount++;
+        running.set(false);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+}
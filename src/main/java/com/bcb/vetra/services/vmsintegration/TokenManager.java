@@ -0,0 +1,121 @@
+package com.bcb.vetra.services.vmsintegration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <strong>Token Manager</strong>
+ * <br><br>
+ * Keeps the access token of a VMS API valid for its integration. The token is refreshed before it expires, both when
+ * a caller asks for it inside the refresh margin and by a background check, so calls are not sent with a token that is
+ * about to be rejected. Concurrent callers share a single in-flight refresh.
+ * <br><br>
+ * Subclasses only implement requestToken(). Declare a subclass as a bean to inject it into a VmsIntegration.
+ */
+public abstract class TokenManager {
+    private static final Logger log = LoggerFactory.getLogger(TokenManager.class);
+
+    private final Duration refreshMargin;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile IssuedToken current;
+    private Mono<IssuedToken> inFlight;
+    private long refreshCount;
+
+    /**
+     * @param refreshMargin How long before expiry the token is refreshed.
+     */
+    protected TokenManager(Duration refreshMargin) {
+        this.refreshMargin = refreshMargin;
+    }
+
+    /**
+     * Requests a new token from the VMS.
+     *
+     * @return Mono of the new token
+     */
+    protected abstract Mono<IssuedToken> requestToken();
+
+    /**
+     * Gets a valid access token, refreshing it first if there is none or it expires within the refresh margin.
+     *
+     * @return Mono of the access token
+     */
+    public Mono<String> getAccessToken() {
+        IssuedToken token = current;
+        if (token != null && !token.expiresWithin(refreshMargin)) {
+            return Mono.just(token.getAccessToken());
+        }
+        return refresh().map(IssuedToken::getAccessToken);
+    }
+
+    /**
+     * Requests a new token, or joins the refresh already in flight.
+     *
+     * @return Mono of the new token
+     */
+    public Mono<IssuedToken> refresh() {
+        lock.lock();
+        try {
+            if (inFlight == null) {
+                long refresh = ++refreshCount;
+                // Cleared before the result reaches any caller, so a caller whose new token is rejected starts
+                // another refresh instead of joining this finished one.
+                inFlight = Mono.defer(this::requestToken)
+                        .doOnNext(token -> current = token)
+                        .doOnEach(signal -> clearInFlight(refresh))
+                        .doFinally(signal -> clearInFlight(refresh))
+                        .cache();
+            }
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the current token if it is the one given, e.g. after the VMS rejected it with a 401. The next call to
+     * getAccessToken() refreshes it. A token that was already replaced is left alone, so many callers rejected with the
+     * same token cause a single refresh.
+     *
+     * @param rejectedAccessToken
+     */
+    public void invalidate(String rejectedAccessToken) {
+        IssuedToken token = current;
+        if (token != null && token.getAccessToken().equals(rejectedAccessToken)) {
+            current = null;
+        }
+    }
+
+    /**
+     * Refreshes the token in the background when it is about to expire. Only runs once a token has been requested, so
+     * integrations that are not enabled never authenticate.
+     */
+    @Scheduled(initialDelayString = "${vetra.vms.token.check-interval:PT30S}", fixedDelayString = "${vetra.vms.token.check-interval:PT30S}")
+    public void refreshIfExpiring() {
+        IssuedToken token = current;
+        if (token != null && token.expiresWithin(refreshMargin)) {
+            refresh().subscribe(
+                    refreshed -> log.debug("Refreshed access token in {}.", getClass().getSimpleName()),
+                    error -> log.warn("Background token refresh in {} failed: {}", getClass().getSimpleName(), error.getMessage()));
+        }
+    }
+
+    /**
+     * Clears the in-flight refresh if it is still the given one, and not a newer refresh.
+     */
+    private void clearInFlight(long refresh) {
+        lock.lock();
+        try {
+            if (refreshCount == refresh) {
+                inFlight = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -15,4 +15,10 @@ public interface VmsIntegration {
      * @return codes: 1 - success, 0 - failure
      */
     public int updateDB();
+
+    /**
+     * Name of the VMS this integration pulls from. Used by the sync engine to track job state and to enable or trigger a single source.
+     * @return source name, e.g. "ezyvet"
+     */
+    public String getName();
 }
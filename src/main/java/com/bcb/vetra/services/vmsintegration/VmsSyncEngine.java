@@ -0,0 +1,162 @@
+package com.bcb.vetra.services.vmsintegration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * <strong>VMS Sync Engine</strong>
+ * <br><br>
+ * Runs the enabled VmsIntegration implementations in the background so that read endpoints only query the database.
+ * Each source is synced on a fixed delay (<i>vetra.sync.interval</i>) and can also be triggered manually by an admin.
+ * A source is never run twice at the same time; a trigger while it is running is ignored.
+ * <br><br>
+ * Every run is timed as <i>vetra.sync.runs</i> (tagged with the source and outcome), and the seconds since each
+ * source last succeeded are gauged as <i>vetra.sync.last.success.age</i>.
+ */
+@Service
+public class VmsSyncEngine {
+    private static final Logger log = LoggerFactory.getLogger(VmsSyncEngine.class);
+
+    private final Map<String, VmsIntegration> integrations = new LinkedHashMap<>();
+    private final Map<String, SyncJobState> states = new LinkedHashMap<>();
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    public VmsSyncEngine(List<VmsIntegration> vmsIntegrations, TaskScheduler taskScheduler, MeterRegistry meterRegistry,
+                         @Value("${vetra.sync.sources:mock}") List<String> enabledSources) {
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+        for (VmsIntegration integration : vmsIntegrations) {
+            String name = integration.getName().toLowerCase();
+            if (enabledSources.contains(name)) {
+                SyncJobState state = new SyncJobState(name);
+                integrations.put(name, integration);
+                states.put(name, state);
+                Gauge.builder("vetra.sync.last.success.age", state, VmsSyncEngine::secondsSinceSuccess)
+                        .description("Seconds since the source last synced successfully")
+                        .baseUnit("seconds")
+                        .tag("source", name)
+                        .register(meterRegistry);
+            }
+        }
+        log.info("VMS sync enabled for sources: {}", integrations.keySet());
+    }
+
+    /**
+     * Syncs every enabled source in turn. Runs on the scheduler thread.
+     */
+    @Scheduled(initialDelayString = "${vetra.sync.initial-delay:PT10S}", fixedDelayString = "${vetra.sync.interval:PT5M}")
+    public void syncAll() {
+        for (String source : integrations.keySet()) {
+            runSource(source);
+        }
+    }
+
+    /**
+     * Schedules an immediate sync of all enabled sources.
+     *
+     * @return The current state of every source.
+     */
+    public List<SyncJobState> triggerAll() {
+        for (String source : integrations.keySet()) {
+            trigger(source);
+        }
+        return getStates();
+    }
+
+    /**
+     * Schedules an immediate sync of a single source.
+     *
+     * @param source The name of the source.
+     * @return The current state of the source, or null if the source is not enabled.
+     */
+    public SyncJobState trigger(String source) {
+        String name = source.toLowerCase();
+        SyncJobState state = states.get(name);
+        if (state == null) {
+            return null;
+        }
+        if (!state.isRunning()) {
+            taskScheduler.schedule(() -> runSource(name), Instant.now());
+        }
+        return state;
+    }
+
+    /**
+     * Runs a single source on the calling thread, recording the outcome in its job state.
+     *
+     * @param source The name of the source.
+     * @return true if the sync ran and succeeded.
+     */
+    public boolean runSource(String source) {
+        VmsIntegration integration = integrations.get(source);
+        SyncJobState state = states.get(source);
+        if (integration == null || !state.tryStart()) {
+            return false;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            int code = integration.updateDB();
+            if (code == 1) {
+                state.succeeded();
+                outcome = "success";
+                return true;
+            }
+            state.failed("updateDB returned " + code);
+        } catch (RuntimeException e) {
+            log.error("Sync of source '{}' failed.", source, e);
+            state.failed(e.getMessage());
+            outcome = "error";
+        } finally {
+            sample.stop(meterRegistry.timer("vetra.sync.runs", "source", source, "outcome", outcome));
+        }
+        return false;
+    }
+
+    /**
+     * Gets the job state of every enabled source.
+     *
+     * @return List of SyncJobState
+     */
+    public List<SyncJobState> getStates() {
+        return new ArrayList<>(states.values());
+    }
+
+    /**
+     * Gets the job state of a single source.
+     *
+     * @param source The name of the source.
+     * @return SyncJobState, or null if the source is not enabled.
+     */
+    public SyncJobState getState(String source) {
+        return states.get(source.toLowerCase());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Gets the seconds since a source last succeeded, or NaN if it has not succeeded since startup.
+     */
+    private static double secondsSinceSuccess(SyncJobState state) {
+        LocalDateTime lastSuccessAt = state.getLastSuccessAt();
+        if (lastSuccessAt == null) {
+            return Double.NaN;
+        }
+        return Duration.between(lastSuccessAt, LocalDateTime.now()).toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A contact record from the ezyVet <i>/contact</i> endpoint. Customers are imported as owners.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EzyVetContact {
+    private String id;
+    @JsonAlias({"first_name", "firstName"})
+    private String firstName;
+    @JsonAlias({"last_name", "lastName"})
+    private String lastName;
+    @JsonAlias({"modified_at", "modifiedAt"})
+    private long modifiedAt;
+}
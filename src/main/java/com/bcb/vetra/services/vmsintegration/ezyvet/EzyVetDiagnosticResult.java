@@ -0,0 +1,26 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A diagnostic result record from the ezyVet <i>/diagnosticresult</i> endpoint. Imported as a test; its values come
+ * from the matching diagnostic result items.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EzyVetDiagnosticResult {
+    private String id;
+    @JsonAlias({"animal_id", "animalId"})
+    private String animalId;
+    private String name;
+    @JsonAlias({"date", "result_date"})
+    private long date;
+    @JsonAlias({"modified_at", "modifiedAt"})
+    private long modifiedAt;
+}
@@ -0,0 +1,28 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A single value of a diagnostic result, from the ezyVet <i>/diagnosticresultitem</i> endpoint. Imported as a result.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EzyVetDiagnosticResultItem {
+    private String id;
+    @JsonAlias({"diagnostic_result_id", "diagnosticResultId"})
+    private String diagnosticResultId;
+    private String name;
+    @JsonAlias({"value", "result"})
+    private String value;
+    private String unit;
+    @JsonAlias({"range_low", "reference_low"})
+    private String rangeLow;
+    @JsonAlias({"range_high", "reference_high"})
+    private String rangeHigh;
+}
@@ -2,314 +2,762 @@ package com.bcb.vetra.services.vmsintegration.ezyvet;
 
 import com.bcb.vetra.daos.*;
 import com.bcb.vetra.models.Patient;
+import com.bcb.vetra.models.Result;
+import com.bcb.vetra.models.Test;
 import com.bcb.vetra.models.User;
+import com.bcb.vetra.services.AccessControl;
+import com.bcb.vetra.services.vmsintegration.TokenManager;
 import com.bcb.vetra.services.vmsintegration.VmsIntegration;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.bcb.vetra.services.vmsintegration.governor.OutboundCallGovernor;
+import com.bcb.vetra.viewmodels.PrescriptionWithMedication;
+import com.bcb.vetra.viewmodels.TestWithResults;
+import com.bcb.vetra.viewmodels.VmsIdIndex;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 @Service
 public class EzyVetIntegration implements VmsIntegration {
-    private final String BASE_URL = "https://api.trial.ezyvet.com/v1";
-    private final String AUTH_PATH = "/oauth/access_token";
+    private static final Logger log = LoggerFactory.getLogger(EzyVetIntegration.class);
     private final String ANIMAL_PATH = "/animal";
     private final String CONTACT_PATH = "/contact";
     private final String TEST_PATH = "/diagnosticresult";
-    private final String ADD_LIMIT = "?limit=";
+    private final String TEST_ITEM_PATH = "/diagnosticresultitem";
+    private final String PRESCRIPTION_PATH = "/prescription";
+    private final String PRESCRIPTION_ITEM_PATH = "/prescriptionitem";
     private final String CREATED_AT = "created_at=";
+    private final String MODIFIED_AT = "modified_at=";
+    private final String SORT_BY_MODIFIED_AT = "&sort_by=modified_at&sort_dir=asc";
+    private final String SORT_BY_ID = "&sort_by=id&sort_dir=asc";
     private final String PATIENTS_UPDATED = "ezyvet patients updated";
-    private final String TESTS_UPDATED = "ezyvet tests updated";
-    private final String ANSI_BLUE = "\u001B[34m";
-    private final String ANSI_RESET = "\u001B[0m";
-    private WebClient.Builder builder;
-    private ObjectMapper objectMapper;
-    private Token token;
-    private boolean isAuthenticated = false;
-    private boolean isSetup = false;
-    private boolean isDisabled = false;
+    private final String CONTACTS = "contact";
+    private final String DIAGNOSTIC_RESULTS = "diagnosticresult";
+    private final String PRESCRIPTION_ITEMS = "prescriptionitem";
+    private final String VMS_ID_KEY = "ezyVet";
+    // Column widths of the rows an import writes; longer values are cut so one record can't fail its page.
+    private final int USERNAME_MAX_LENGTH = 30;
+    private final int NAME_MAX_LENGTH = 50;
+    private final int PATIENT_NAME_MAX_LENGTH = 20;
+    private final int TEST_NAME_MAX_LENGTH = 50;
+    private final int RESULT_FIELD_MAX_LENGTH = 250;
+    private final int MEDICATION_MAX_LENGTH = 50;
+    private final int INSTRUCTIONS_MAX_LENGTH = 300;
+    private String baseUrl;
+    private WebClient webClient;
+    private EzyVetPageReader pageReader;
+    private TransactionTemplate transactionTemplate;
     private PatientDao patientDao;
     private PrescriptionDao prescriptionDao;
     private ResultDao resultDao;
     private TestDao testDao;
     private UserDao userDao;
     private MetaDao metaDao;
-
-    public EzyVetIntegration(ObjectMapper objectMapper, WebClient.Builder builder, PatientDao patientDao, PrescriptionDao prescriptionDao, ResultDao resultDao, TestDao testDao, UserDao userDao, MetaDao metaDao) {
-        this.objectMapper = objectMapper;
-        this.builder = builder;
+    private VmsIdDao vmsIdDao;
+    private OutboundCallGovernor governor;
+    private TokenManager tokenManager;
+    private AccessControl accessControl;
+    private int concurrency;
+    private int pageSize;
+    private Duration requestTimeout;
+    private Duration retryRetention;
+    private String defaultDoctor;
+
+    public EzyVetIntegration(ObjectMapper objectMapper, WebClient.Builder builder, PatientDao patientDao, PrescriptionDao prescriptionDao, ResultDao resultDao, TestDao testDao, UserDao userDao, MetaDao metaDao, VmsIdDao vmsIdDao,
+                             OutboundCallGovernor ezyVetGovernor, EzyVetTokenManager tokenManager, AccessControl accessControl, PlatformTransactionManager transactionManager,
+                             @Value("${vetra.ezyvet.concurrency:8}") int concurrency,
+                             @Value("${vetra.ezyvet.page-size:200}") int pageSize,
+                             @Value("${vetra.ezyvet.request-timeout:PT30S}") Duration requestTimeout,
+                             @Value("${vetra.ezyvet.retry-retention:P30D}") Duration retryRetention,
+                             @Value("${vetra.ezyvet.default-doctor:cakelly4}") String defaultDoctor,
+                             @Value("${vetra.ezyvet.base-url:https://api.trial.ezyvet.com/v1}") String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.pageReader = new EzyVetPageReader(objectMapper);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Built once so every call shares the client's connection pool.
+        this.webClient = builder.build();
+        this.governor = ezyVetGovernor;
+        this.tokenManager = tokenManager;
+        this.accessControl = accessControl;
+        this.concurrency = concurrency;
+        this.pageSize = pageSize;
+        this.requestTimeout = requestTimeout;
+        this.retryRetention = retryRetention;
+        this.defaultDoctor = defaultDoctor;
         this.patientDao = patientDao;
         this.prescriptionDao = prescriptionDao;
         this.resultDao = resultDao;
         this.testDao = testDao;
         this.userDao = userDao;
         this.metaDao = metaDao;
+        this.vmsIdDao = vmsIdDao;
     }
 
+    /**
+     * Syncs owners, new patients, diagnostic results and prescriptions. Owners, diagnostic results and prescriptions
+     * are imported incrementally from their high-water marks; if an import fails midway the exception is thrown, and
+     * the next sync resumes after the last committed page.
+     * <br><br>
+     * The links between ezyVet IDs and local owners and patients are loaded once into a VmsIdIndex, which every step
+     * uses to resolve records and keeps up to date as it creates rows.
+     *
+     * @return int
+     */
     @Override
     public int updateDB() {
-
-        if (!isAuthenticated) {
-            getAccessToken();
-            if (isDisabled) {
-                return 0;
-            }
-        }
-        if (!isSetup) {
-            setup();
+        try {
+            tokenManager.getAccessToken().block();
+        } catch (RuntimeException e) {
+            log.warn("Could not authenticate with EzyVet API. Skipping this sync: {}", e.getMessage());
+            return 0;
         }
+        VmsIdIndex index = vmsIdDao.loadIndex(getName());
 
-        getNewPatients();
-
-
-        isSetup = true;
+        Set<String> newOwners = importOwners(index);
+        getNewPatients(index, newOwners);
+        importDiagnosticResults(index);
+        importPrescriptions(index);
         return 1;
     }
 
-    // get access token
-    private void getAccessToken() {
-        AuthRequestBody authRequestBody = new AuthRequestBody(
-                System.getenv("PARTNER_ID"),
-                System.getenv("CLIENT_ID"),
-                System.getenv("CLIENT_SECRET"),
-                System.getenv("GRANT_TYPE"),
-                System.getenv("SCOPE")
-        );
+    @Override
+    public String getName() {
+        return "ezyvet";
+    }
 
-        try {
-            this.token = builder.build()
-                    .post()
-                    .uri(BASE_URL + AUTH_PATH)
-                    .bodyValue(authRequestBody)
-                    .retrieve()
-                    .bodyToMono(Token.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            message(e.getMessage());
-            message("Fatal error: Could not authenticate with EzyVet API. Exiting.");
-            isDisabled = true;
-            return;
+    /**
+     * Imports the ezyVet customers modified since the high-water mark as owners, one page per transaction together
+     * with the new mark, so customers added after the first sync become owners too. Importing a customer again only
+     * updates the owner's name.
+     * <br><br>
+     * Customers for whom no free username could be found are parked like unresolved diagnostic results, and
+     * requested again at the start of every sync.
+     *
+     * @return the ezyVet IDs of the owners this run linked for the first time
+     */
+    private Set<String> importOwners(VmsIdIndex index) {
+        Set<String> newOwners = new HashSet<>();
+        Function<Map<String, User>, Set<String>> upsert = owners -> linkOwners(owners, index, newOwners);
+        String url = baseUrl + CONTACT_PATH + "?is_customer=1";
+        retryParked(CONTACTS, CONTACT_PATH, url, "contact", EzyVetContact.class, (contacts, unresolved) -> toOwners(contacts), upsert);
+
+        long watermark = metaDao.getWatermark(getName(), CONTACTS);
+        for (List<EzyVetContact> contacts : fetchChangedPages(CONTACT_PATH, url, "contact",
+                EzyVetContact.class, EzyVetContact::getModifiedAt, EzyVetContact::getId, watermark).toIterable(1)) {
+            commitPage(CONTACTS, toOwners(contacts), upsert, Set.of(), highWaterMark(contacts, EzyVetContact::getModifiedAt));
         }
-        message("Successfully authenticated.");
-        this.isAuthenticated = true;
+        log.info("New owners imported: {}", newOwners.size());
+        return newOwners;
     }
 
+    /**
+     * Gets the patients created since the last update for every ezyVet owner and adds them to the database, and every
+     * patient of an owner linked by this sync. Owners are fetched in parallel, at most <i>vetra.ezyvet.concurrency</i>
+     * at a time, so a sync is bounded by the API rather than by the latency of each call.
+     * <br><br>
+     * An owner whose request fails is logged and the others are still imported, but the time of the last update is
+     * then left where it was, so the next sync asks for the failed owners' patients again. Otherwise it is set to when
+     * this run started, so patients created while it ran are fetched next time.
+     *
+     * @param newOwners The ezyVet IDs of owners whose patients have never been fetched.
+     */
+    private void getNewPatients(VmsIdIndex index, Set<String> newOwners) {
+        List<String> userIds = new ArrayList<>(index.getUserVmsIds());
+
+        // get time of last update in epoch seconds
+        LocalDateTime startedAt = LocalDateTime.now(ZoneOffset.UTC);
+        long lastUpdated = metaDao.getTimeForAction(PATIENTS_UPDATED).toEpochSecond(ZoneOffset.UTC);
+        String createdAfter = encodeParameterValue(">", lastUpdated);
 
-    // one-time setup
-    private void setup() {
-        List<User> users = new ArrayList<>();
-        // get random owners
-        String responseBody = "";
-        try {
-            responseBody = builder.build()
-                    .get()
-                    .uri(BASE_URL + CONTACT_PATH + ADD_LIMIT + 20 + "&is_customer=1")
-                    .header("authorization", "Bearer " + token.getAccessToken())
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            if (e.getStatusCode().toString().contains("401")) {
-                reAuthenticate(this::setup);
-            }
-            message(e.getMessage());
-        }
+        // get patients for each owner
+        Set<String> failedOwners = ConcurrentHashMap.newKeySet();
+        Map<String, List<Patient>> patients = Flux.fromIterable(userIds)
+                .flatMap(userId -> fetchPatientsForOwner(userId, newOwners.contains(userId) ? null : createdAfter)
+                                .map(ownerPatients -> Map.entry(userId, ownerPatients))
+                                .onErrorResume(e -> {
+                                    log.warn("Could not get patients of owner {}: {}", userId, e.getMessage());
+                                    failedOwners.add(userId);
+                                    return Mono.empty();
+                                }),
+                        concurrency)
+                .filter(entry -> !entry.getValue().isEmpty())
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block();
 
-        try {
-            JsonNode root = objectMapper.readTree(responseBody);                         // A JsonNode is a particular place in a JSON tree. It can be an object, an array, etc.
-            ArrayNode items = (ArrayNode) root.path("items");                         // An ArrayNode is a JsonNode that is an array.
-            message("The following owners have been retrieved:");
-            List<String> ownerNames = new ArrayList<>();                                 // Used to track duplicates.
-            for (JsonNode item : items) {
-                JsonNode contactNode = item.path("contact");                          // .path(key) returns a JsonNode value for the given key.
-                User user = objectMapper.treeToValue(contactNode, User.class);           // treeToValue(JsonNode, Class) converts a JsonNode to a Java object.
-                JsonNode vmsIdNode = contactNode.path("id");
-                user.addVmsId("ezyVet", vmsIdNode.asText());
-                if (!ownerNames.contains(user.getFirstName()) && !user.getFirstName().isEmpty()) {
-                    ownerNames.add(user.getFirstName());
-                    user.setUsername(user.getFirstName() + user.getLastName() + vmsIdNode.asText());
-                    user.setEmail(user.getUsername() + "@example.com");
-                    user.setPassword("password");
-                    users.add(user);
+        // add patients to database, deduplicated on their ezyVet ID
+        Map<String, Patient> patientsByVmsId = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Patient>> patientEntry : patients.entrySet()) {
+            String username = index.getUsername(patientEntry.getKey());
+            for (Patient patient : patientEntry.getValue()) {
+                String vmsId = patient.getVmsIds() == null ? null : patient.getVmsIds().get(VMS_ID_KEY);
+                if (vmsId != null) {
+                    patient.setOwnerUsername(username);
+                    patient.setName(truncate(patient.getName(), PATIENT_NAME_MAX_LENGTH));
+                    patientsByVmsId.putIfAbsent(vmsId, patient);
                 }
             }
-        } catch (JsonProcessingException e) {
-            message("Error parsing patient response body. \n" + e.getMessage());
         }
-
-        for (User user : users) {
-            userDao.createUser(user);
-            userDao.attributeVmsIdToUser(user.getUsername(), user.getVmsIds());
-            message("User created: " + user.toString());
+        Map<String, Integer> patientIds = patientDao.upsertAll(getName(), patientsByVmsId);
+        accessControl.invalidatePatients(patientIds.values());
+        index.putPatients(patientIds);
+        log.info("Patients imported: {}", patientsByVmsId.size());
+        if (!failedOwners.isEmpty()) {
+            log.warn("Patients of {} owners could not be fetched and will be fetched again next sync.", failedOwners.size());
+            return;
         }
+        metaDao.setTimeForAction(PATIENTS_UPDATED, startedAt);
+    }
 
-
+    /**
+     * Fetches the patients of one owner, following the pages to the end. On a 401 the access token is renewed once
+     * and the request is retried.
+     *
+     * @param userId       The ezyVet ID of the owner.
+     * @param createdAfter The encoded created_at filter, or null for all of the owner's patients.
+     * @return Mono of the owner's patients
+     */
+    private Mono<List<Patient>> fetchPatientsForOwner(String userId, String createdAfter) {
+        String url = baseUrl + ANIMAL_PATH + "?contact_id=" + userId + (createdAfter == null ? "" : "&" + CREATED_AT + createdAfter);
+        return fetchAllPages(ANIMAL_PATH, url, "animal", Patient.class)
+                .collectList();
     }
 
-    private void getNewPatients() {
-        Map<String, List<Patient>> patients = new HashMap<>();
+    /**
+     * Imports the diagnostic results modified since the high-water mark as tests, together with their items as results.
+     * Records are requested in (modified_at, id) order and each page is committed in one transaction together with the
+     * new high-water mark. The mark is inclusive, so records sharing the last timestamp are imported again, which the
+     * upsert makes harmless.
+     * <br><br>
+     * Results whose animal is not a VetRA patient yet are parked in the same transaction instead of holding back the
+     * mark, and requested again by ID at the start of every sync until their patient has been imported.
+     */
+    private void importDiagnosticResults(VmsIdIndex index) {
+        Function<Map<String, TestWithResults>, Set<String>> upsert = tests -> {
+            testDao.upsertAll(getName(), tests);
+            return tests.keySet();
+        };
+        retryParked(DIAGNOSTIC_RESULTS, TEST_PATH, baseUrl + TEST_PATH, "diagnosticresult", EzyVetDiagnosticResult.class,
+                (diagnosticResults, unresolved) -> toTests(diagnosticResults, index, unresolved), upsert);
+
+        long watermark = metaDao.getWatermark(getName(), DIAGNOSTIC_RESULTS);
+        int imported = 0;
+        for (List<EzyVetDiagnosticResult> diagnosticResults : fetchChangedPages(TEST_PATH, baseUrl + TEST_PATH, "diagnosticresult",
+                EzyVetDiagnosticResult.class, EzyVetDiagnosticResult::getModifiedAt, EzyVetDiagnosticResult::getId, watermark).toIterable(1)) {
+            Set<String> unresolved = new LinkedHashSet<>();
+            Map<String, TestWithResults> tests = toTests(diagnosticResults, index, unresolved);
+            imported += commitPage(DIAGNOSTIC_RESULTS, tests, upsert, unresolved,
+                    highWaterMark(diagnosticResults, EzyVetDiagnosticResult::getModifiedAt));
+        }
+        log.info("Diagnostic results imported: {}", imported);
+    }
 
-        // get list of owner ids from vms table
-        List<String> userIds = userDao.getEzyVetUserIds();
+    /**
+     * Imports the prescription items modified since the high-water mark as prescriptions, one page per transaction in
+     * the same way as diagnostic results. The animal of each item is looked up from its prescription header.
+     */
+    private void importPrescriptions(VmsIdIndex index) {
+        Function<Map<String, PrescriptionWithMedication>, Set<String>> upsert = prescriptions -> {
+            prescriptionDao.upsertAll(getName(), prescriptions);
+            return prescriptions.keySet();
+        };
+        retryParked(PRESCRIPTION_ITEMS, PRESCRIPTION_ITEM_PATH, baseUrl + PRESCRIPTION_ITEM_PATH, "prescriptionitem",
+                EzyVetPrescriptionItem.class, (items, unresolved) -> toPrescriptions(items, index, unresolved), upsert);
+
+        long watermark = metaDao.getWatermark(getName(), PRESCRIPTION_ITEMS);
+        int imported = 0;
+        for (List<EzyVetPrescriptionItem> items : fetchChangedPages(PRESCRIPTION_ITEM_PATH, baseUrl + PRESCRIPTION_ITEM_PATH, "prescriptionitem",
+                EzyVetPrescriptionItem.class, EzyVetPrescriptionItem::getModifiedAt, EzyVetPrescriptionItem::getId, watermark).toIterable(1)) {
+            Set<String> unresolved = new LinkedHashSet<>();
+            Map<String, PrescriptionWithMedication> prescriptions = toPrescriptions(items, index, unresolved);
+            imported += commitPage(PRESCRIPTION_ITEMS, prescriptions, upsert, unresolved,
+                    highWaterMark(items, EzyVetPrescriptionItem::getModifiedAt));
+        }
+        log.info("Prescriptions imported: {}", imported);
+    }
 
-        // get time of last update in epoch seconds
-        long lastUpdated = metaDao.getTimeForAction(PATIENTS_UPDATED).toEpochSecond(ZoneOffset.UTC);
+    //---------------------
+    // Helper methods
+    //---------------------
 
-        // get patients for each owner
-        for (String userId : userIds) {
-            String responseBody = "";
-            try {
-                responseBody = builder.build()
-                        .get()
-                        .uri(BASE_URL + ANIMAL_PATH + "?contact_id=" + userId + "&" + CREATED_AT + encodeParameterValue(">", lastUpdated))  // toEpochSecond(ZoneOffset) converts a time to epoch second, assuming UTC timezone.
-                        .header("authorization", "Bearer " + token.getAccessToken())
-                        .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
-            } catch (WebClientResponseException e) {
-                if (e.getStatusCode().toString().contains("401")) {
-                    reAuthenticate(this::getNewPatients);
-                }
-                message(e.getMessage());
-            } catch (UnsupportedEncodingException e) {
-                message(e.getMessage());
+    /**
+     * Maps ezyVet customers to new owners keyed by ezyVet ID, leaving out contacts without an ID or first name.
+     */
+    private Map<String, User> toOwners(List<EzyVetContact> contacts) {
+        Map<String, User> owners = new LinkedHashMap<>();
+        for (EzyVetContact contact : contacts) {
+            if (contact.getId() != null && contact.getFirstName() != null && !contact.getFirstName().isBlank()) {
+                owners.putIfAbsent(contact.getId(), toOwner(contact));
             }
-            try {
-                JsonNode root = objectMapper.readTree(responseBody);
-                ArrayNode items = (ArrayNode) root.path("items");
-                for (JsonNode item : items) {
-                    JsonNode patientNode = item.path("animal");
-                    Patient patient = objectMapper.treeToValue(patientNode, Patient.class);
-                    JsonNode vmsIdNode = patientNode.path("id");
-                    patient.addVmsId("ezyVet", vmsIdNode.asText());
-                    if (patients.containsKey(userId)) {
-                        patients.get(userId).add(patient);
-                    } else {
-                        patients.put(userId, new ArrayList<>(Arrays.asList(patient)));
+        }
+        return owners;
+    }
+
+    /**
+     * Writes owners and links them to their ezyVet IDs. The index and the new owners are only updated once the
+     * transaction has committed, so a page that is rolled back and written again one owner at a time leaves no links
+     * behind that were never stored.
+     *
+     * @param newOwners Collects the ezyVet IDs of owners linked for the first time.
+     * @return the ezyVet IDs of the owners that were written
+     */
+    private Set<String> linkOwners(Map<String, User> owners, VmsIdIndex index, Set<String> newOwners) {
+        Map<String, String> usernames = userDao.upsertAll(getName(), owners);
+        if (usernames.size() < owners.size()) {
+            log.warn("Parked {} ezyVet customers because no free username could be found for them.", owners.size() - usernames.size());
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (String vmsId : usernames.keySet()) {
+                    if (index.getUsername(vmsId) == null) {
+                        newOwners.add(vmsId);
                     }
                 }
-            } catch (JsonProcessingException e) {
-                message("Error parsing patient response body. \n" + e.getMessage());
+                index.putUsers(usernames);
             }
+        });
+        return usernames.keySet();
+    }
+
+    /**
+     * Maps an ezyVet customer to a new owner. The password is a placeholder the owner has to reset.
+     */
+    private User toOwner(EzyVetContact contact) {
+        String username = toUsername(contact);
+        return new User(username, "password", truncate(contact.getFirstName(), NAME_MAX_LENGTH),
+                truncate(Objects.toString(contact.getLastName(), ""), NAME_MAX_LENGTH), username + "@example.com");
+    }
 
+    /**
+     * Builds a username from an owner's name and ezyVet ID. The name is shortened so the username fits the column,
+     * and the ID keeps it unique.
+     */
+    private String toUsername(EzyVetContact contact) {
+        String name = (contact.getFirstName() + Objects.toString(contact.getLastName(), "")).replaceAll("\\s", "");
+        int room = Math.max(USERNAME_MAX_LENGTH - contact.getId().length(), 0);
+        return name.substring(0, Math.min(name.length(), room)) + contact.getId();
+    }
+
+    /**
+     * Maps diagnostic results to tests with their items as results, keyed by ezyVet ID. The items of all of them are
+     * fetched in one go.
+     *
+     * @param unresolved Collects the IDs of results whose animal is not a VetRA patient yet.
+     */
+    private Map<String, TestWithResults> toTests(List<EzyVetDiagnosticResult> diagnosticResults, VmsIdIndex index, Set<String> unresolved) {
+        Map<String, TestWithResults> tests = new LinkedHashMap<>();
+        if (diagnosticResults.isEmpty()) {
+            return tests;
         }
+        List<String> resultIds = diagnosticResults.stream().map(EzyVetDiagnosticResult::getId).toList();
+        Map<String, List<EzyVetDiagnosticResultItem>> itemsByResultId = fetchAllPages(TEST_ITEM_PATH,
+                baseUrl + TEST_ITEM_PATH + "?diagnostic_result_id=" + encodeInFilter(resultIds), "diagnosticresultitem", EzyVetDiagnosticResultItem.class)
+                .filter(item -> item.getDiagnosticResultId() != null)
+                .collect(Collectors.groupingBy(EzyVetDiagnosticResultItem::getDiagnosticResultId))
+                .block();
 
-        // add patients to database
-        for (Map.Entry<String, List<Patient>> patientEntry : patients.entrySet()) {
-            String username = userDao.getUsernameByVmsId(patientEntry.getKey(), "ezyvet");
-            for (Patient patient : patientEntry.getValue()) {
-                patient.setOwnerUsername(username);
-                patientDao.create(patient);
-                message("Patient created: " + patient.toString());
+        for (EzyVetDiagnosticResult diagnosticResult : diagnosticResults) {
+            int patientId = index.getPatientId(diagnosticResult.getAnimalId());
+            if (patientId == 0) {
+                unresolved.add(diagnosticResult.getId());
+                continue;
             }
+            tests.put(diagnosticResult.getId(), toTestWithResults(diagnosticResult, patientId,
+                    itemsByResultId.getOrDefault(diagnosticResult.getId(), List.of())));
         }
-        metaDao.setTimeForActionToNow(PATIENTS_UPDATED);
+        return tests;
     }
 
-    // get new tests
+    /**
+     * Maps a diagnostic result and its items to a test with results.
+     */
+    private TestWithResults toTestWithResults(EzyVetDiagnosticResult diagnosticResult, int patientId, List<EzyVetDiagnosticResultItem> items) {
+        String name = diagnosticResult.getName() == null ? "Diagnostic result" : truncate(diagnosticResult.getName(), TEST_NAME_MAX_LENGTH);
+        long date = diagnosticResult.getDate() > 0 ? diagnosticResult.getDate() : diagnosticResult.getModifiedAt();
+        Test test = new Test(0, name, LocalDateTime.ofEpochSecond(date, 0, ZoneOffset.UTC), patientId, defaultDoctor);
+        List<Result> results = new ArrayList<>(items.size());
+        for (EzyVetDiagnosticResultItem item : items) {
+            if (item.getValue() != null) {
+                results.add(new Result(0, 0,
+                        truncate(item.getValue(), RESULT_FIELD_MAX_LENGTH),
+                        truncate(item.getName(), RESULT_FIELD_MAX_LENGTH),
+                        truncate(item.getRangeLow(), RESULT_FIELD_MAX_LENGTH),
+                        truncate(item.getRangeHigh(), RESULT_FIELD_MAX_LENGTH),
+                        truncate(item.getUnit(), RESULT_FIELD_MAX_LENGTH)));
+            }
+        }
+        return new TestWithResults(test, results);
+    }
+
+    /**
+     * Maps prescription items to prescriptions, keyed by ezyVet ID. The prescription headers of all of them are
+     * fetched in one go to find their animals. Items without a product are left out, as they can never be imported.
+     *
+     * @param unresolved Collects the IDs of items whose animal is not a VetRA patient yet.
+     */
+    private Map<String, PrescriptionWithMedication> toPrescriptions(List<EzyVetPrescriptionItem> items, VmsIdIndex index, Set<String> unresolved) {
+        Map<String, PrescriptionWithMedication> prescriptions = new LinkedHashMap<>();
+        if (items.isEmpty()) {
+            return prescriptions;
+        }
+        Set<String> headerIds = items.stream().map(EzyVetPrescriptionItem::getPrescriptionId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<String, String> animalIds = headerIds.isEmpty() ? Map.of() : fetchAllPages(PRESCRIPTION_PATH,
+                baseUrl + PRESCRIPTION_PATH + "?id=" + encodeInFilter(headerIds), "prescription", EzyVetPrescription.class)
+                .filter(prescription -> prescription.getAnimalId() != null)
+                .collectMap(EzyVetPrescription::getId, EzyVetPrescription::getAnimalId)
+                .block();
+
+        for (EzyVetPrescriptionItem item : items) {
+            if (item.getProductName() == null) {
+                continue;
+            }
+            int patientId = index.getPatientId(animalIds.get(item.getPrescriptionId()));
+            if (patientId == 0) {
+                unresolved.add(item.getId());
+                continue;
+            }
+            prescriptions.put(item.getId(), toPrescription(item, patientId));
+        }
+        return prescriptions;
+    }
+
+    /**
+     * Maps a prescription item to a prescription.
+     */
+    private PrescriptionWithMedication toPrescription(EzyVetPrescriptionItem item, int patientId) {
+        return new PrescriptionWithMedication(
+                0,
+                truncate(item.getProductName(), MEDICATION_MAX_LENGTH),
+                (int) Math.round(item.getQuantity()),
+                item.getUnit() == null ? "each" : truncate(item.getUnit(), MEDICATION_MAX_LENGTH),
+                item.getInstructions() == null ? "" : truncate(item.getInstructions(), INSTRUCTIONS_MAX_LENGTH),
+                item.getRefills(),
+                item.isActive(),
+                patientId,
+                defaultDoctor
+        );
+    }
 
-    private void getNewTests() {
-        List<String> patientIds = patientDao.getEzyVetPatientIds();
-        long lastUpdated = metaDao.getTimeForAction(TESTS_UPDATED).toEpochSecond(ZoneOffset.UTC);
-        String response = "";
-        for (String patientId : patientIds) {
+    /**
+     * Cuts a value down to the width of its column.
+     */
+    private String truncate(String value, int maxLength) {
+        return value == null || value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    /**
+     * Gets the largest modified_at of a page of records.
+     */
+    private <T> long highWaterMark(List<T> records, ToLongFunction<T> modifiedAt) {
+        return records.stream().mapToLong(modifiedAt).max().orElse(0);
+    }
+
+    /**
+     * Commits one page of an import in a single transaction: its rows, the records parked because they could not be
+     * mapped yet or that the upsert did not write, and the new high-water mark. Imported rows are taken off the parked
+     * records.
+     * <br><br>
+     * If a row breaks a constraint the page is written again one row per transaction, and the rows that fail on their
+     * own are parked as well, so one bad record neither rolls back the rest of its page nor holds back the mark.
+     *
+     * @param entity     The entity name of the watermark and parked records.
+     * @param rows       The rows to write, keyed by ezyVet ID.
+     * @param upsert     Writes rows and returns the IDs of the ones it wrote.
+     * @param unresolved The IDs of records to park.
+     * @param watermark  The new high-water mark, or a negative number to leave it.
+     * @return Number of rows written
+     */
+    private <R> int commitPage(String entity, Map<String, R> rows, Function<Map<String, R>, Set<String>> upsert, Set<String> unresolved, long watermark) {
+        try {
+            return transactionTemplate.execute(status -> {
+                Set<String> written = upsert.apply(rows);
+                Set<String> parked = new LinkedHashSet<>(unresolved);
+                rows.keySet().stream().filter(vmsId -> !written.contains(vmsId)).forEach(parked::add);
+                finishPage(entity, parked, written, watermark);
+                return written.size();
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.warn("A page of ezyVet {} records broke a constraint, importing it one record at a time: {}", entity, e.getMostSpecificCause().getMessage());
+        }
+
+        Set<String> parked = new LinkedHashSet<>(unresolved);
+        Set<String> written = new LinkedHashSet<>();
+        for (Map.Entry<String, R> row : rows.entrySet()) {
             try {
-                String url = BASE_URL + TEST_PATH + "?animal_id=" + patientId + "&" + CREATED_AT + encodeParameterValue(">", lastUpdated);
-                response = sendGetRequest(url);
-            } catch (WebClientResponseException e) {
-                if (e.getStatusCode().toString().contains("401")) {
-                    reAuthenticate(this::getNewTests);
+                if (transactionTemplate.execute(status -> upsert.apply(Map.of(row.getKey(), row.getValue()))).contains(row.getKey())) {
+                    written.add(row.getKey());
+                } else {
+                    parked.add(row.getKey());
                 }
-                message(e.getMessage());
-            } catch (UnsupportedEncodingException e) {
-                message(e.getMessage());
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Parked ezyVet {} {}: {}", entity, row.getKey(), e.getMostSpecificCause().getMessage());
+                parked.add(row.getKey());
             }
-            try {
-                JsonNode root = objectMapper.readTree(response);
-                ArrayNode items = (ArrayNode) root.path("items");
+        }
+        transactionTemplate.executeWithoutResult(status -> finishPage(entity, parked, written, watermark));
+        return written.size();
+    }
 
-                //TODO: DO things here
+    /**
+     * Records the outcome of a page: parks and unparks its records, and advances the high-water mark.
+     */
+    private void finishPage(String entity, Set<String> parked, Set<String> written, long watermark) {
+        metaDao.parkRecords(getName(), entity, parked);
+        metaDao.unparkRecords(getName(), entity, written);
+        if (watermark >= 0) {
+            metaDao.advanceWatermark(getName(), entity, watermark);
+        }
+    }
 
-            } catch (JsonProcessingException e) {
-                message("Error parsing test response body. \n" + e.getMessage());
-            }
+    /**
+     * Requests the parked records of an entity again by ID, a page at a time, and imports the ones that can be mapped
+     * now. Records that still can't stay parked, records that are gone from ezyVet or can never be imported are taken
+     * off, and records parked for longer than <i>vetra.ezyvet.retry-retention</i> are given up on.
+     *
+     * @param entity   The entity name of the parked records.
+     * @param endpoint The API path of the records.
+     * @param url      The URL of the records with its filters, to which the ID filter is added.
+     * @param itemName The name of the record inside each item.
+     * @param type     The class to bind each record to.
+     * @param mapper   Maps records to rows keyed by ezyVet ID, collecting the IDs it can't map yet.
+     * @param upsert   Writes rows and returns the IDs of the ones it wrote.
+     */
+    private <T, R> void retryParked(String entity, String endpoint, String url, String itemName, Class<T> type,
+                                    BiFunction<List<T>, Set<String>, Map<String, R>> mapper, Function<Map<String, R>, Set<String>> upsert) {
+        int dropped = metaDao.dropParkedRecords(getName(), entity, retryRetention);
+        if (dropped > 0) {
+            log.warn("Gave up on {} ezyVet {} records parked for longer than {}.", dropped, entity, retryRetention);
+        }
+        List<String> parked = metaDao.getParkedRecords(getName(), entity);
+        int imported = 0;
+        for (int from = 0; from < parked.size(); from += pageSize) {
+            List<String> ids = parked.subList(from, Math.min(from + pageSize, parked.size()));
+            List<T> records = fetchAllPages(endpoint, url + (url.contains("?") ? "&" : "?") + "id=" + encodeInFilter(ids), itemName, type)
+                    .collectList()
+                    .block();
+            Set<String> unresolved = new HashSet<>();
+            Map<String, R> rows = mapper.apply(records, unresolved);
+            imported += commitPage(entity, rows, upsert, Set.of(), -1);
+
+            Set<String> settled = new HashSet<>(ids);
+            settled.removeAll(unresolved);
+            settled.removeAll(rows.keySet());
+            metaDao.unparkRecords(getName(), entity, settled);
+        }
+        if (!parked.isEmpty()) {
+            log.info("Parked ezyVet {} records imported: {} of {}", entity, imported, parked.size());
         }
     }
 
-    private void getResults() {
+    /**
+     * Fetches the records of an ezyVet list endpoint modified at or after a mark, in (modified_at, id) order, one page
+     * per list. Pages are chained with keyset filters on the last record read instead of page numbers, so records
+     * modified while the sync runs move to the end of the set rather than shifting later pages over unread records.
+     * <br><br>
+     * ezyVet sorts on a single field, so the keyset is followed in two steps: the records of one modified_at are read
+     * sorted by id, starting after the last id read, and then the records after it sorted by modified_at. A full page
+     * of the latter holds back the records of its last timestamp, which are read in full by the next step.
+     *
+     * @param endpoint   The API path, used by the governor to keep limits per endpoint.
+     * @param url        The URL with its filters, without modified_at, sorting or paging parameters.
+     * @param itemName   The name of the record inside each item.
+     * @param type       The class to bind each record to.
+     * @param modifiedAt Gets the modified_at of a record.
+     * @param id         Gets the ID of a record.
+     * @param since      The high-water mark to start from, inclusive.
+     * @return Flux of non-empty pages of records
+     */
+    private <T> Flux<List<T>> fetchChangedPages(String endpoint, String url, String itemName, Class<T> type,
+                                                ToLongFunction<T> modifiedAt, Function<T, String> id, long since) {
+        Keyset first = new Keyset(since, null, true);
+        return fetchKeysetPage(endpoint, url, itemName, type, modifiedAt, id, first)
+                .expand(page -> page.next() == null
+                        ? Mono.empty()
+                        : fetchKeysetPage(endpoint, url, itemName, type, modifiedAt, id, page.next()))
+                .map(KeysetPage::items)
+                .filter(items -> !items.isEmpty());
+    }
 
+    /**
+     * Fetches the page of records after a keyset, and works out the keyset of the page after it.
+     */
+    private <T> Mono<KeysetPage<T>> fetchKeysetPage(String endpoint, String url, String itemName, Class<T> type,
+                                                    ToLongFunction<T> modifiedAt, Function<T, String> id, Keyset keyset) {
+        String separator = url.contains("?") ? "&" : "?";
+        String pageUrl = keyset.sameModifiedAt()
+                ? url + separator + MODIFIED_AT + keyset.modifiedAt()
+                        + (keyset.afterId() == null ? "" : "&id=" + encodeParameterValue(">", Long.parseLong(keyset.afterId())))
+                        + SORT_BY_ID
+                : url + separator + MODIFIED_AT + encodeParameterValue(">", keyset.modifiedAt()) + SORT_BY_MODIFIED_AT;
+        return fetchPage(endpoint, pageUrl, 1, itemName, type).map(page -> {
+            List<T> items = page.getItems();
+            if (keyset.sameModifiedAt()) {
+                Keyset next = page.hasNext()
+                        ? new Keyset(keyset.modifiedAt(), id.apply(items.get(items.size() - 1)), true)
+                        : new Keyset(keyset.modifiedAt(), null, false);
+                return new KeysetPage<>(items, next);
+            }
+            if (!page.hasNext()) {
+                return new KeysetPage<>(items, null);
+            }
+            long last = modifiedAt.applyAsLong(items.get(items.size() - 1));
+            List<T> before = items.stream().filter(item -> modifiedAt.applyAsLong(item) < last).toList();
+            return new KeysetPage<>(before, new Keyset(last, null, true));
+        });
+    }
+
+    /**
+     * A position in a (modified_at, id) ordered set: either within the records of one modified_at, after an id, or
+     * after all records of that modified_at.
+     */
+    private record Keyset(long modifiedAt, String afterId, boolean sameModifiedAt) {
     }
 
-    // get new medications
+    /**
+     * The records of a page and the keyset of the page after it, or null on the last page.
+     */
+    private record KeysetPage<T>(List<T> items, Keyset next) {
+    }
 
-    private void getNewMedications() {
+    /**
+     * Fetches every page of an ezyVet list endpoint in order, reading each page with the streaming page reader.
+     *
+     * @param endpoint The API path, used by the governor to keep limits per endpoint.
+     * @param url      The URL with its filters, without paging parameters.
+     * @param itemName The name of the record inside each item.
+     * @param type     The class to bind each record to.
+     * @return Flux of the records of all pages
+     */
+    private <T> Flux<T> fetchAllPages(String endpoint, String url, String itemName, Class<T> type) {
+        return fetchPages(endpoint, url, itemName, type).concatMapIterable(EzyVetPage::getItems);
+    }
 
+    /**
+     * Fetches every page of an ezyVet list endpoint in order. A page is only requested once the previous one has been
+     * read, since the next page number comes from its meta fields. Page numbers only hold for a set whose order does
+     * not change while it is read, such as the records of an owner or a list of IDs; use fetchChangedPages for
+     * records sorted by modified_at.
+     *
+     * @param endpoint The API path, used by the governor to keep limits per endpoint.
+     * @param url      The URL with its filters, without paging parameters.
+     * @param itemName The name of the record inside each item.
+     * @param type     The class to bind each record to.
+     * @return Flux of EzyVetPage
+     */
+    private <T> Flux<EzyVetPage<T>> fetchPages(String endpoint, String url, String itemName, Class<T> type) {
+        return fetchPage(endpoint, url, 1, itemName, type)
+                .expand(page -> page.hasNext()
+                        ? fetchPage(endpoint, url, page.getPage() + 1, itemName, type)
+                        : Mono.empty());
     }
 
-    //---------------------
-    // Helper methods
-    //---------------------
+    /**
+     * Fetches and reads a single page of an ezyVet list endpoint.
+     */
+    private <T> Mono<EzyVetPage<T>> fetchPage(String endpoint, String url, int page, String itemName, Class<T> type) {
+        String pageUrl = url + (url.contains("?") ? "&" : "?") + "limit=" + pageSize + "&page=" + page;
+        return getWithReauthentication(endpoint, pageUrl)
+                .map(body -> {
+                    try {
+                        return pageReader.read(body.asInputStream(true), itemName, type);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Error parsing " + endpoint + " response body.", e);
+                    }
+                });
+    }
 
     /**
-     * Logs a message to the console.
+     * Sends a GET request through the governor with the current access token. If the token is rejected it is dropped
+     * from the token manager and the request is sent once more with a new one, instead of rerunning the whole sync step.
      *
-     * @param message
+     * @param endpoint The API path, used by the governor to keep limits per endpoint.
+     * @param url
+     * @return Mono of the response body
      */
-    private void message(String message) {
-        System.out.println(LocalDateTime.now() + ANSI_BLUE + "  [--EzyVetIntegration--]:  " + ANSI_RESET + message);
+    private Mono<DataBuffer> getWithReauthentication(String endpoint, String url) {
+        return tokenManager.getAccessToken()
+                .flatMap(accessToken -> getAsync(endpoint, url, accessToken)
+                        .onErrorResume(WebClientResponseException.Unauthorized.class, e -> {
+                            tokenManager.invalidate(accessToken);
+                            return tokenManager.getAccessToken().flatMap(renewed -> getAsync(endpoint, url, renewed));
+                        }));
     }
 
     /**
-     * Used after HTTP requests if response code is 4xx. Obtains a new access token and reruns the given method.
+     * Sends a GET request to the given URL, rate limited, retried and circuit broken by the governor. Each attempt
+     * fails if it takes longer than the request timeout.
      *
-     * @param method
+     * @param endpoint    The API path, used by the governor to keep limits per endpoint.
+     * @param url         The URL with its filters already encoded, so it is sent as is rather than as a URI template.
+     * @param accessToken
+     * @return Mono of the response body, joined into one buffer that is released when its stream is closed.
      */
-    private void reAuthenticate(Runnable method) {
-        isAuthenticated = false;
-        getAccessToken();
-        method.run();
+    private Mono<DataBuffer> getAsync(String endpoint, String url, String accessToken) {
+        return governor.execute(endpoint, () -> DataBufferUtils.join(webClient
+                        .get()
+                        .uri(URI.create(url))
+                        .header("authorization", "Bearer " + accessToken)
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class))
+                .timeout(requestTimeout)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
     }
 
     /**
      * Encodes a comparator and value into a URL-encoded string for use in API call parameters.
      *
-     * @param comparator (>, <, gt, lt)
+     * @param comparator (>, <, >=, gt, lt, gte)
      * @param value
      * @return
-     * @throws UnsupportedEncodingException
      */
-    private String encodeParameterValue(String comparator, long value) throws UnsupportedEncodingException {
+    private String encodeParameterValue(String comparator, long value) {
         if (comparator.equals(">")) {
             comparator = "gt";
         } else if (comparator.equals("<")) {
             comparator = "lt";
+        } else if (comparator.equals(">=")) {
+            comparator = "gte";
         }
         String JsonString = String.format("{\"%s\":%s}", comparator, value);
-        return URLEncoder.encode(JsonString, "UTF-8");
+        return URLEncoder.encode(JsonString, StandardCharsets.UTF_8);
     }
 
     /**
-     * Sends a GET request to the given URL and returns the response body as a string.
-     * @param url
+     * Encodes a list of IDs into a URL-encoded "in" filter for use in API call parameters.
+     *
+     * @param ids
      * @return
      */
-    private String sendGetRequest(String url) throws WebClientResponseException {
-        return builder.build()
-                .get()
-                .uri(url)
-                .header("authorization", "Bearer " + token.getAccessToken())
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+    private String encodeInFilter(Collection<String> ids) {
+        String jsonString = ids.stream().collect(Collectors.joining(",", "{\"in\":[", "]}"));
+        return URLEncoder.encode(jsonString, StandardCharsets.UTF_8);
     }
 
 }
@@ -0,0 +1,23 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.services.deserializers.EzyVetIdToVmsIdsDeserializer;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Map;
+
+/**
+ * Jackson mix-ins applied only when reading ezyVet responses. They map the "id" of an ezyVet record to the model's
+ * vmsIds, so records can be read straight into the models without going through a JSON tree.
+ */
+final class EzyVetMixins {
+
+    private EzyVetMixins() {
+    }
+
+    abstract static class PatientMixin {
+        @JsonProperty("id")
+        @JsonDeserialize(using = EzyVetIdToVmsIdsDeserializer.class)
+        private Map<String, String> vmsIds;
+    }
+}
@@ -0,0 +1,29 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of an ezyVet list response: the records read from <i>items</i> and the paging fields of <i>meta</i>.
+ */
+@Getter
+@Setter
+public class EzyVetPage<T> {
+    private int page;
+    private int pageSize;
+    private int itemsOnPage;
+    private int itemsTotal;
+    private List<T> items = new ArrayList<>();
+
+    /**
+     * Checks whether there is a page after this one.
+     *
+     * @return boolean
+     */
+    public boolean hasNext() {
+        return itemsOnPage > 0 && pageSize > 0 && (long) page * pageSize < itemsTotal;
+    }
+}
@@ -0,0 +1,97 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.models.Patient;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <strong>ezyVet Page Reader</strong>
+ * <br><br>
+ * Reads an ezyVet list response with a streaming JsonParser. Each record is bound directly to its model as the parser
+ * reaches it, and no JSON tree of the response is ever built. A response looks like:
+ * <pre>
+ * {"meta": {"items_page": 1, "items_page_size": 200, "items_page_total": 200, "items_total": 1234, ...},
+ *  "items": [{"animal": {...}}, ...]}
+ * </pre>
+ */
+public class EzyVetPageReader {
+    private final ObjectMapper objectMapper;
+
+    public EzyVetPageReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy()
+                .addMixIn(Patient.class, EzyVetMixins.PatientMixin.class);
+    }
+
+    /**
+     * Reads a page. The stream is closed when done.
+     *
+     * @param inputStream The response body.
+     * @param itemName    The name of the record inside each item, e.g. "animal" or "contact".
+     * @param type        The class to bind each record to.
+     * @return EzyVetPage
+     * @throws IOException if the response is not a valid list response.
+     */
+    public <T> EzyVetPage<T> read(InputStream inputStream, String itemName, Class<T> type) throws IOException {
+        EzyVetPage<T> page = new EzyVetPage<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("meta")) {
+                    readMeta(parser, page);
+                } else if (field.equals("items")) {
+                    readItems(parser, itemName, type, page);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return page;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void readMeta(JsonParser parser, EzyVetPage<?> page) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "items_page" -> page.setPage(parser.getValueAsInt());
+                case "items_page_size" -> page.setPageSize(parser.getValueAsInt());
+                case "items_page_total" -> page.setItemsOnPage(parser.getValueAsInt());
+                case "items_total" -> page.setItemsTotal(parser.getValueAsInt());
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private <T> void readItems(JsonParser parser, String itemName, Class<T> type, EzyVetPage<T> page) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals(itemName)) {
+                    page.getItems().add(objectMapper.readValue(parser, type));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual + ".");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A prescription header from the ezyVet <i>/prescription</i> endpoint. Only used to find the animal of its items.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EzyVetPrescription {
+    private String id;
+    @JsonAlias({"animal_id", "animalId"})
+    private String animalId;
+}
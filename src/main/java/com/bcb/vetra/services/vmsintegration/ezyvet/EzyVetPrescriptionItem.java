@@ -0,0 +1,43 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A prescribed product from the ezyVet <i>/prescriptionitem</i> endpoint. Each item is imported as one prescription.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EzyVetPrescriptionItem {
+    private String id;
+    @JsonAlias({"prescription_id", "prescriptionId"})
+    private String prescriptionId;
+    @JsonAlias({"product_name", "name"})
+    private String productName;
+    private double quantity;
+    private String unit;
+    @JsonAlias({"label", "instructions"})
+    private String instructions;
+    @JsonAlias({"repeats", "refills"})
+    private int refills;
+    // ezyVet sends flags as "1" and "0", which Jackson does not coerce into a boolean.
+    @Getter(AccessLevel.NONE)
+    private String active;
+    @JsonAlias({"modified_at", "modifiedAt"})
+    private long modifiedAt;
+
+    /**
+     * Checks whether the item is active. An item without the flag counts as active.
+     *
+     * @return boolean
+     */
+    public boolean isActive() {
+        return active == null || !(active.equals("0") || active.equalsIgnoreCase("false"));
+    }
+}
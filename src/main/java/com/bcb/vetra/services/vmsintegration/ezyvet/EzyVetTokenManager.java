@@ -0,0 +1,70 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.services.vmsintegration.IssuedToken;
+import com.bcb.vetra.services.vmsintegration.TokenManager;
+import com.bcb.vetra.services.vmsintegration.governor.OutboundCallGovernor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Token manager for the ezyVet API. Requests client credential tokens with the <i>vetra.ezyvet.*</i> credentials,
+ * which default to the PARTNER_ID, CLIENT_ID, CLIENT_SECRET, GRANT_TYPE and SCOPE environment variables.
+ */
+@Component
+public class EzyVetTokenManager extends TokenManager {
+    private final String AUTH_PATH = "/oauth/access_token";
+    private String authUrl;
+    private AuthRequestBody authRequestBody;
+    private WebClient webClient;
+    private OutboundCallGovernor governor;
+    private Duration requestTimeout;
+
+    public EzyVetTokenManager(WebClient.Builder builder, OutboundCallGovernor ezyVetGovernor,
+                              @Value("${vetra.vms.token.refresh-margin:PT2M}") Duration refreshMargin,
+                              @Value("${vetra.ezyvet.request-timeout:PT30S}") Duration requestTimeout,
+                              @Value("${vetra.ezyvet.base-url:https://api.trial.ezyvet.com/v1}") String baseUrl,
+                              @Value("${vetra.ezyvet.partner-id:${PARTNER_ID:}}") String partnerId,
+                              @Value("${vetra.ezyvet.client-id:${CLIENT_ID:}}") String clientId,
+                              @Value("${vetra.ezyvet.client-secret:${CLIENT_SECRET:}}") String clientSecret,
+                              @Value("${vetra.ezyvet.grant-type:${GRANT_TYPE:}}") String grantType,
+                              @Value("${vetra.ezyvet.scope:${SCOPE:}}") String scope) {
+        super(refreshMargin);
+        this.authUrl = baseUrl + AUTH_PATH;
+        this.authRequestBody = new AuthRequestBody(partnerId, clientId, clientSecret, grantType, scope);
+        this.webClient = builder.build();
+        this.governor = ezyVetGovernor;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    protected Mono<IssuedToken> requestToken() {
+        return governor.execute(AUTH_PATH, () -> webClient
+                        .post()
+                        .uri(authUrl)
+                        .bodyValue(authRequestBody)
+                        .retrieve()
+                        .bodyToMono(Token.class)
+                        .timeout(requestTimeout))
+                .map(token -> new IssuedToken(token.getAccessToken(), expiresAt(token)));
+    }
+
+    /**
+     * Works out when a token expires from its expires_in. A token without a usable lifetime is only refreshed after
+     * it is rejected.
+     */
+    private Instant expiresAt(Token token) {
+        if (token.getExpiresIn() == null) {
+            return Instant.MAX;
+        }
+        try {
+            return Instant.now().plusSeconds(Long.parseLong(token.getExpiresIn().trim()));
+        } catch (NumberFormatException e) {
+            return Instant.MAX;
+        }
+    }
+}
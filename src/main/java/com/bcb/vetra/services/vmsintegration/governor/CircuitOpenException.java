@@ -0,0 +1,11 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+/**
+ * Thrown when a call is rejected because the circuit breaker of its endpoint is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String endpoint) {
+        super("Circuit breaker for '" + endpoint + "' is open.");
+    }
+}
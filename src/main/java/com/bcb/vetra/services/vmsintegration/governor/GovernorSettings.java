@@ -0,0 +1,31 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * Settings of an OutboundCallGovernor. Every endpoint gets its own token bucket and circuit breaker with these settings.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class GovernorSettings {
+    /** Largest burst of calls per endpoint. */
+    private int capacity = 60;
+    /** Sustained calls per second per endpoint. */
+    private double permitsPerSecond = 1;
+    /** Retries after a 429, a 5xx, a timeout or a connection error. */
+    private int maxRetries = 3;
+    private Duration initialBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    /** A 429 asking to wait longer than this fails the call instead of stalling the sync. */
+    private Duration maxRetryAfter = Duration.ofMinutes(2);
+    /** Consecutive failures that open the circuit of an endpoint. */
+    private int failureThreshold = 5;
+    private Duration openDuration = Duration.ofSeconds(60);
+}
@@ -0,0 +1,23 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the counters of an OutboundCallGovernor. Counts are totals since startup, except <i>queued</i>, which
+ * is the number of calls currently waiting for a permit.
+ */
+@Getter
+@AllArgsConstructor
+public class GovernorStats {
+    private String name;
+    private long calls;
+    private long queued;
+    private long throttled;
+    private long retried;
+    private long rejected;
+    private long failed;
+    private Map<String, CircuitBreaker.State> circuits;
+}
@@ -0,0 +1,241 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <strong>Outbound Call Governor</strong>
+ * <br><br>
+ * Wraps calls to an external API so a sync stays within the vendor's limits and backs off when the vendor is struggling.
+ * Each endpoint has:
+ * <ul>
+ *     <li>a token bucket that delays calls beyond the configured rate,</li>
+ *     <li>retries with exponential backoff and jitter after a 5xx, a timeout or a connection error,</li>
+ *     <li>a 429 handler that honors Retry-After and pauses the endpoint's bucket for every caller,</li>
+ *     <li>a circuit breaker that stops calling an endpoint after repeated failures.</li>
+ * </ul>
+ * Other errors, such as a 401, are passed straight to the caller.
+ * <br><br>
+ * Each attempt is timed as <i>vetra.vms.requests</i> (tagged with the VMS, endpoint and outcome), throttling, retries,
+ * rejections and failures are counted as <i>vetra.vms.events</i>, and calls waiting on a bucket are gauged as
+ * <i>vetra.vms.queued</i>.
+ */
+public class OutboundCallGovernor {
+    private final String name;
+    private final GovernorSettings settings;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuits = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final AtomicLong queued = new AtomicLong();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final MeterRegistry meterRegistry;
+
+    public OutboundCallGovernor(String name, GovernorSettings settings, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("vetra.vms.queued", queued, AtomicLong::get)
+                .description("Outbound VMS calls waiting for their rate limit")
+                .tag("vms", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a call under the governor. The call is subscribed to once per attempt, so it must create a new request
+     * each time.
+     *
+     * @param endpoint The endpoint the call goes to, e.g. "/animal". Limits and circuits are kept per endpoint.
+     * @param call     Creates the call.
+     * @return Mono of the call's result, failing with the last error once retries are exhausted, or with
+     * CircuitOpenException if the endpoint's circuit is open.
+     */
+    public <T> Mono<T> execute(String endpoint, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> attempt(endpoint, call))
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal ->
+                        retryDelay(endpoint, signal.failure(), signal.totalRetries()))))
+                .doOnError(e -> {
+                    failed.increment();
+                    countEvent(endpoint, "failed");
+                });
+    }
+
+    /**
+     * Gets a snapshot of the counters and circuit states.
+     *
+     * @return GovernorStats
+     */
+    public GovernorStats getStats() {
+        Map<String, CircuitBreaker.State> states = new LinkedHashMap<>();
+        circuits.forEach((endpoint, circuit) -> states.put(endpoint, circuit.getState()));
+        return new GovernorStats(name, calls.sum(), queued.get(), throttled.sum(), retried.sum(), rejected.sum(), failed.sum(), states);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private <T> Mono<T> attempt(String endpoint, Supplier<Mono<T>> call) {
+        CircuitBreaker circuit = circuitFor(endpoint);
+        if (!circuit.tryAcquire()) {
+            rejected.increment();
+            countEvent(endpoint, "rejected");
+            return Mono.error(new CircuitOpenException(endpoint));
+        }
+        calls.increment();
+        Mono<T> send = Mono.defer(() -> {
+            // Started on subscription, so time spent waiting on the bucket is not counted as latency.
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return Mono.defer(call)
+                    .doOnSuccess(result -> {
+                        sample.stop(requestTimer(endpoint, "success"));
+                        circuit.onSuccess();
+                    })
+                    .doOnError(e -> {
+                        sample.stop(requestTimer(endpoint, outcome(e)));
+                        if (isEndpointFailure(e)) {
+                            circuit.onFailure();
+                        } else {
+                            // The endpoint answered, e.g. with a 4xx, so it is up.
+                            circuit.onSuccess();
+                        }
+                    });
+        });
+
+        Duration wait = bucketFor(endpoint).reserve();
+        if (!wait.isZero()) {
+            throttled.increment();
+            countEvent(endpoint, "throttled");
+            queued.incrementAndGet();
+            send = Mono.delay(wait)
+                    .doFinally(signal -> queued.decrementAndGet())
+                    .then(send);
+        }
+        return send.doOnCancel(circuit::onCancelled);
+    }
+
+    private Mono<Long> retryDelay(String endpoint, Throwable failure, long retries) {
+        if (retries >= settings.getMaxRetries()) {
+            return Mono.error(failure);
+        }
+        if (failure instanceof WebClientResponseException e && e.getStatusCode().value() == 429) {
+            Duration retryAfter = parseRetryAfter(e.getHeaders());
+            Duration pause = retryAfter != null ? retryAfter : backoff(retries);
+            if (pause.compareTo(settings.getMaxRetryAfter()) > 0) {
+                return Mono.error(failure);
+            }
+            // Every caller of this endpoint waits, and the retry itself waits on the bucket.
+            bucketFor(endpoint).pause(pause);
+            retried.increment();
+            countEvent(endpoint, "retried");
+            return Mono.just(0L);
+        }
+        if (isEndpointFailure(failure)) {
+            retried.increment();
+            countEvent(endpoint, "retried");
+            return Mono.delay(backoff(retries));
+        }
+        return Mono.error(failure);
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half of the delay is fixed and half is random, so retries from many
+     * callers spread out instead of arriving together.
+     */
+    private Duration backoff(long retries) {
+        long initial = settings.getInitialBackoff().toMillis();
+        long max = settings.getMaxBackoff().toMillis();
+        long delay = Math.min(max, initial << Math.min(retries, 20));
+        long half = delay / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private Timer requestTimer(String endpoint, String outcome) {
+        return Timer.builder("vetra.vms.requests")
+                .description("Latency of outbound VMS calls")
+                .tag("vms", name)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private void countEvent(String endpoint, String event) {
+        meterRegistry.counter("vetra.vms.events", "vms", name, "endpoint", endpoint, "event", event).increment();
+    }
+
+    /**
+     * Classifies a failed attempt for the request timer.
+     */
+    private String outcome(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 ? "throttled" : response.getStatusCode().is5xxServerError() ? "server_error" : "client_error";
+        }
+        if (e instanceof TimeoutException) {
+            return "timeout";
+        }
+        return e instanceof WebClientRequestException ? "connection_error" : "error";
+    }
+
+    private boolean isEndpointFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+
+    /**
+     * Parses a Retry-After header given either in seconds or as an HTTP date.
+     *
+     * @return Duration, or null if there is no usable header.
+     */
+    private Duration parseRetryAfter(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private TokenBucket bucketFor(String endpoint) {
+        return buckets.computeIfAbsent(endpoint, key -> new TokenBucket(settings.getCapacity(), settings.getPermitsPerSecond()));
+    }
+
+    private CircuitBreaker circuitFor(String endpoint) {
+        return circuits.computeIfAbsent(endpoint, key -> new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenDuration()));
+    }
+}
@@ -0,0 +1,90 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket rate limiter. Holds up to <i>capacity</i> permits and refills them at a steady rate, so callers can
+ * burst up to the capacity and are then held to the refill rate.
+ * <br><br>
+ * Permits are reserved rather than waited for: reserve() always takes a permit, possibly going into debt, and returns
+ * how long the caller has to wait before using it. This lets reactive callers delay without blocking a thread.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double permitsPerNano;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double permits;
+    private long lastRefill;
+
+    /**
+     * @param capacity        The maximum number of permits, i.e. the largest burst.
+     * @param permitsPerSecond The refill rate.
+     */
+    public TokenBucket(int capacity, double permitsPerSecond) {
+        if (capacity < 1 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket needs a capacity of at least 1 and a positive rate.");
+        }
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.permits = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Reserves a permit.
+     *
+     * @return How long to wait before the permit may be used. Zero if a permit was available.
+     */
+    public Duration reserve() {
+        lock.lock();
+        try {
+            refill();
+            permits -= 1;
+            if (permits >= 0) {
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos((long) Math.ceil(-permits / permitsPerNano));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the bucket for a while, e.g. after the server answered 429. Permits already reserved are not affected.
+     *
+     * @param pause How long no permits should be handed out.
+     */
+    public void pause(Duration pause) {
+        lock.lock();
+        try {
+            refill();
+            // One permit short of the debt, so the next reservation waits the pause and no longer.
+            double debt = pause.toNanos() * permitsPerNano;
+            permits = Math.min(permits, 1 - debt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of permits currently available, negative when callers are waiting.
+     *
+     * @return double
+     */
+    public double getAvailablePermits() {
+        lock.lock();
+        try {
+            refill();
+            return permits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,374 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import com.bcb.vetra.daos.CopyRows;
+import com.bcb.vetra.models.Result;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * <strong>Clinic Data Generator</strong>
+ * <br><br>
+ * Generates a synthetic clinic into COPY buffers: doctors, then owners with their patients, and for every patient its
+ * tests and results, prescriptions and refill requests, messages and the notifications they raise. Rows get explicit
+ * IDs from the given ID sources, so children can reference their parents without a round trip.
+ * <br><br>
+ * All randomness comes from one seeded SplittableRandom consumed in a fixed order, and all dates are relative to the
+ * as-of date, so the same settings always produce the same rows however they are split into batches.
+ * <br><br>
+ * Counts follow geometric distributions around the configured means, so most owners have one or two pets and a few
+ * have many. Doctors get a primary-care load skewed towards the first ones, species, sexes, ages and panels are
+ * weighted like a small-animal practice, and activity is denser in recent months.
+ */
+class ClinicDataGenerator {
+    static final Map<String, String> MEDICATION_UNITS = new LinkedHashMap<>();
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Carlos", "Karen", "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sandra", "Mark", "Ashley", "Steven",
+            "Emily", "Andrew", "Maria", "Joshua", "Michelle", "Kevin", "Amanda", "Brian", "Melissa", "Priya", "Wei"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor",
+            "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez",
+            "Lewis", "Robinson", "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Patel"};
+    private static final String[] PET_NAMES = {"Bella", "Max", "Luna", "Charlie", "Lucy", "Cooper", "Daisy", "Milo",
+            "Bailey", "Rocky", "Sadie", "Bear", "Molly", "Tucker", "Stella", "Duke", "Chloe", "Oliver", "Penny", "Leo",
+            "Zoey", "Teddy", "Lily", "Bentley", "Nala", "Simba", "Coco", "Winston", "Rosie", "Jack", "Gizmo", "Pepper",
+            "Ginger", "Oreo", "Shadow", "Biscuit", "Mochi", "Willow", "Ziggy", "Hazel"};
+
+    private static final String[] SPECIES = {"Canine", "Feline", "Rabbit", "Avian", "Equine"};
+    private static final int[] SPECIES_WEIGHTS = {58, 34, 3, 3, 2};
+    private static final String[] SEXES = {"M", "CM", "F", "SF"};
+    private static final int[] SEX_WEIGHTS = {12, 38, 12, 38};
+
+    private static final String[] MEDICATIONS = {"Carprofen", "Amoxicillin", "Apoquel", "Gabapentin", "Cerenia",
+            "Meloxicam", "Cephalexin", "Metronidazole", "Prednisone", "Famotidine", "Enalapril", "Levothyroxine",
+            "Methimazole", "Trazodone", "Simparica Trio", "Bravecto"};
+    private static final String[] MEDICATION_UNIT_NAMES = {"tablet", "capsule", "tablet", "capsule", "tablet",
+            "mL", "capsule", "tablet", "tablet", "tablet", "tablet", "tablet", "tablet", "tablet", "chew", "chew"};
+    private static final int[] MEDICATION_WEIGHTS = {14, 12, 12, 9, 6, 8, 8, 7, 7, 4, 3, 3, 3, 4, 12, 8};
+    private static final String[] INSTRUCTIONS = {
+            "Give one by mouth twice daily with food.",
+            "Give one by mouth once daily.",
+            "Give one by mouth every 8 hours until gone.",
+            "Give one by mouth once a month.",
+            "Give as directed. Call the clinic if vomiting or diarrhea occurs."};
+
+    private static final String[] DOCTOR_MESSAGES = {
+            "%s's %s results are back and everything looks normal.",
+            "%s's %s showed a few values outside the normal range. Please call us to schedule a recheck.",
+            "Just checking in on %s after the %s. Let us know if anything changes.",
+            "%s is due for a wellness exam and vaccines. Reply here or call to book a visit."};
+    private static final String[] OWNER_MESSAGES = {
+            "Hi, %s has been scratching more than usual since last week. Should we come in?",
+            "%s finished the medication. Does it need to be refilled?",
+            "Thank you for seeing %s yesterday, they are doing much better.",
+            "%s has not been eating much for two days. Is that something to worry about?"};
+
+    /** Notifications older than this are mostly read. */
+    private static final int RECENT_DAYS = 14;
+
+    static {
+        for (int i = 0; i < MEDICATIONS.length; i++) {
+            MEDICATION_UNITS.put(MEDICATIONS[i], MEDICATION_UNIT_NAMES[i]);
+        }
+    }
+
+    private final ClinicDatasetSettings settings;
+    private final SplittableRandom random;
+    private final LocalDateTime asOf;
+    private final String passwordHash;
+
+    private final CopyRows users = new CopyRows("\"user\"", "username, password, first_name, last_name, email");
+    private final CopyRows roles = new CopyRows("role", "username, role");
+    private final CopyRows patients = new CopyRows("patient", "patient_id, first_name, birthday, species, sex, owner_username");
+    private final CopyRows tests = new CopyRows("test", "test_id, name, time_stamp, patient_id, doctor_username");
+    private final CopyRows results = new CopyRows("result", "result_id, test_id, result_value, parameter_name, range_low, range_high, unit");
+    private final CopyRows prescriptions = new CopyRows("prescription", "prescription_id, quantity, instructions, refills, is_active, patient_id, medication_name, doctor_username");
+    private final CopyRows requests = new CopyRows("request", "request_id, prescription_id, status, request_date");
+    private final CopyRows messages = new CopyRows("message", "message_id, body, time_stamp, from_username, to_username, test_id, prescription_id, patient_id");
+    private final CopyRows notifications = new CopyRows("notification", "notification_id, username, patient_id, message_id, request_id, test_id, is_read, timestamp");
+
+    private final LongSupplier patientIds;
+    private final LongSupplier testIds;
+    private final LongSupplier resultIds;
+    private final LongSupplier prescriptionIds;
+    private final LongSupplier requestIds;
+    private final LongSupplier messageIds;
+    private final LongSupplier notificationIds;
+
+    // Scratch space for the patient being generated, reused to avoid allocating per patient.
+    private long[] patientTestIds = new long[16];
+    private String[] patientTestNames = new String[16];
+    private LocalDateTime[] patientTestTimes = new LocalDateTime[16];
+    private long[] patientPrescriptionIds = new long[8];
+
+    /**
+     * @param settings
+     * @param asOf         The day the history ends.
+     * @param passwordHash The encoded password of every generated user.
+     * @param ids          The source of the IDs of each table with a serial ID, keyed by table name.
+     */
+    ClinicDataGenerator(ClinicDatasetSettings settings, LocalDate asOf, String passwordHash, Map<String, LongSupplier> ids) {
+        this.settings = settings;
+        this.random = new SplittableRandom(settings.getSeed());
+        this.asOf = asOf.atTime(LocalTime.of(18, 0));
+        this.passwordHash = passwordHash;
+        this.patientIds = ids.get("patient");
+        this.testIds = ids.get("test");
+        this.resultIds = ids.get("result");
+        this.prescriptionIds = ids.get("prescription");
+        this.requestIds = ids.get("request");
+        this.messageIds = ids.get("message");
+        this.notificationIds = ids.get("notification");
+    }
+
+    /**
+     * Gets the buffers in an order that copies parents before their children.
+     *
+     * @return List of CopyRows
+     */
+    List<CopyRows> getRowsInLoadOrder() {
+        return List.of(users, roles, patients, tests, results, prescriptions, requests, messages, notifications);
+    }
+
+    /**
+     * Generates the doctors, named <i>doctor1..n</i>. Must be called before any owner.
+     */
+    void generateDoctors() {
+        for (int n = 1; n <= settings.getDoctors(); n++) {
+            generateUser("doctor" + n, "DOCTOR", n);
+        }
+    }
+
+    /**
+     * Generates an owner, named <i>owner{n}</i>, with their patients and everything that happened to them.
+     *
+     * @param n The number of the owner, from 1.
+     */
+    void generateOwner(int n) {
+        String username = "owner" + n;
+        generateUser(username, "OWNER", n);
+        int pets = 1 + geometric(settings.getPatientsPerOwner() - 1);
+        for (int i = 0; i < pets; i++) {
+            generatePatient(username);
+        }
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void generateUser(String username, String role, int n) {
+        String firstName = pick(FIRST_NAMES);
+        String lastName = pick(LAST_NAMES);
+        users.add(username).add(passwordHash).add(firstName).add(lastName)
+                .add(firstName.toLowerCase() + "." + lastName.toLowerCase() + n + "@example.com").endRow();
+        roles.add(username).add(role).endRow();
+    }
+
+    private void generatePatient(String owner) {
+        long patientId = patientIds.getAsLong();
+        String species = SPECIES[weighted(SPECIES_WEIGHTS)];
+        // Ages skew young, with a long tail of seniors.
+        int ageDays = (int) Math.min(20 * 365, 30 + exponential(6 * 365));
+        LocalDate birthday = asOf.toLocalDate().minusDays(ageDays);
+        String petName = pick(PET_NAMES);
+        patients.add(patientId).add(petName).add(birthday).add(species).add(SEXES[weighted(SEX_WEIGHTS)])
+                .add(owner).endRow();
+
+        // Activity starts at birth or at the start of the history, whichever is later.
+        int activeDays = Math.max(1, Math.min(ageDays, settings.getHistoryDays()));
+        String doctor = primaryDoctor();
+
+        int testCount = geometric(settings.getTestsPerPatient());
+        ensureTestCapacity(testCount);
+        for (int i = 0; i < testCount; i++) {
+            LocalDateTime timestamp = recentTime(activeDays);
+            String testDoctor = random.nextDouble() < 0.85 ? doctor : anyDoctor();
+            long testId = testIds.getAsLong();
+            LabPanel panel = LabPanel.pick(random);
+            tests.add(testId).add(panel.getTestName()).add(timestamp).add(patientId).add(testDoctor).endRow();
+            for (Result result : panel.generateResults(random, (int) testId)) {
+                results.add(resultIds.getAsLong()).add(testId).add(result.getResultValue()).add(result.getParameterName())
+                        .add(result.getRangeLow()).add(result.getRangeHigh()).add(result.getUnit()).endRow();
+            }
+            notify(owner, patientId, 0, 0, testId, timestamp);
+            patientTestIds[i] = testId;
+            patientTestNames[i] = panel.getTestName();
+            patientTestTimes[i] = timestamp;
+        }
+
+        int prescriptionCount = geometric(settings.getPrescriptionsPerPatient());
+        if (patientPrescriptionIds.length < prescriptionCount) {
+            patientPrescriptionIds = new long[prescriptionCount * 2];
+        }
+        for (int i = 0; i < prescriptionCount; i++) {
+            patientPrescriptionIds[i] = generatePrescription(patientId, random.nextDouble() < 0.85 ? doctor : anyDoctor(), activeDays);
+        }
+
+        int messageCount = geometric(settings.getMessagesPerPatient());
+        for (int i = 0; i < messageCount; i++) {
+            generateMessage(owner, doctor, patientId, petName, testCount, prescriptionCount, activeDays);
+        }
+    }
+
+    private long generatePrescription(long patientId, String doctor, int activeDays) {
+        long prescriptionId = prescriptionIds.getAsLong();
+        int medication = weighted(MEDICATION_WEIGHTS);
+        int refills = random.nextInt(6);
+        LocalDateTime prescribed = recentTime(activeDays);
+        long daysAgo = Duration.between(prescribed, asOf).toDays();
+        boolean active = daysAgo < 180 && random.nextDouble() < 0.8;
+        int quantity = MEDICATION_UNIT_NAMES[medication].equals("mL") ? 10 * (1 + random.nextInt(10)) : 10 * (1 + random.nextInt(9));
+        prescriptions.add(prescriptionId).add(quantity).add(pick(INSTRUCTIONS)).add(refills).add(active).add(patientId)
+                .add(MEDICATIONS[medication]).add(doctor).endRow();
+
+        // Refills are requested about a month apart; the latest one may still be waiting for the doctor.
+        int requestCount = Math.min(refills, geometric(settings.getRequestsPerPrescription()));
+        LocalDateTime requested = prescribed;
+        for (int i = 0; i < requestCount; i++) {
+            requested = requested.plusDays(21 + random.nextInt(20)).plusMinutes(random.nextInt(600));
+            if (requested.isAfter(asOf)) {
+                break;
+            }
+            long requestId = requestIds.getAsLong();
+            boolean recent = requested.isAfter(asOf.minusDays(7));
+            String status = recent && random.nextDouble() < 0.7 ? "PENDING" : random.nextDouble() < 0.9 ? "APPROVED" : "DENIED";
+            requests.add(requestId).add(prescriptionId).add(status).add(requested).endRow();
+            notify(doctor, patientId, 0, requestId, 0, requested);
+        }
+        return prescriptionId;
+    }
+
+    private void generateMessage(String owner, String doctor, long patientId, String petName, int testCount, int prescriptionCount, int activeDays) {
+        long messageId = messageIds.getAsLong();
+        long testId = 0;
+        long prescriptionId = 0;
+        LocalDateTime timestamp;
+        String body;
+        String from;
+        String to;
+        if (random.nextDouble() < 0.6) {
+            from = doctor;
+            to = owner;
+            if (testCount > 0 && random.nextDouble() < 0.6) {
+                int test = random.nextInt(testCount);
+                testId = patientTestIds[test];
+                timestamp = patientTestTimes[test].plusMinutes(30 + random.nextInt(24 * 60));
+                body = String.format(DOCTOR_MESSAGES[random.nextInt(3)], petName, patientTestNames[test]);
+            } else {
+                timestamp = recentTime(activeDays);
+                body = String.format(DOCTOR_MESSAGES[3], petName);
+            }
+        } else {
+            from = owner;
+            to = doctor;
+            timestamp = recentTime(activeDays);
+            int template = random.nextInt(OWNER_MESSAGES.length);
+            if (template == 1 && prescriptionCount > 0) {
+                prescriptionId = patientPrescriptionIds[random.nextInt(prescriptionCount)];
+            }
+            body = String.format(OWNER_MESSAGES[template], petName);
+        }
+        if (timestamp.isAfter(asOf)) {
+            timestamp = asOf;
+        }
+        messages.add(messageId).add(body).add(timestamp).add(from).add(to);
+        addReference(messages, testId);
+        addReference(messages, prescriptionId);
+        messages.add(patientId).endRow();
+        notify(to, patientId, messageId, 0, 0, timestamp);
+    }
+
+    /**
+     * Adds a notification. References of 0 are left NULL.
+     */
+    private void notify(String username, long patientId, long messageId, long requestId, long testId, LocalDateTime timestamp) {
+        boolean recent = timestamp.isAfter(asOf.minusDays(RECENT_DAYS));
+        boolean read = random.nextDouble() < (recent ? 0.3 : 0.95);
+        notifications.add(notificationIds.getAsLong()).add(username).add(patientId);
+        addReference(notifications, messageId);
+        addReference(notifications, requestId);
+        addReference(notifications, testId);
+        notifications.add(read).add(timestamp).endRow();
+    }
+
+    private static void addReference(CopyRows rows, long id) {
+        if (id == 0) {
+            rows.addNull();
+        } else {
+            rows.add(id);
+        }
+    }
+
+    private void ensureTestCapacity(int count) {
+        if (patientTestIds.length < count) {
+            patientTestIds = new long[count * 2];
+            patientTestNames = new String[count * 2];
+            patientTestTimes = new LocalDateTime[count * 2];
+        }
+    }
+
+    /**
+     * Picks the primary doctor of a patient. Earlier doctors carry more patients, like senior doctors of a practice.
+     */
+    private String primaryDoctor() {
+        double u = random.nextDouble();
+        return "doctor" + (1 + (int) (u * u * settings.getDoctors()));
+    }
+
+    private String anyDoctor() {
+        return "doctor" + (1 + random.nextInt(settings.getDoctors()));
+    }
+
+    /**
+     * Picks a time within the last days, denser towards the as-of date, during clinic hours.
+     */
+    private LocalDateTime recentTime(int days) {
+        double u = random.nextDouble();
+        int daysAgo = (int) (u * u * days);
+        return asOf.toLocalDate().minusDays(daysAgo).atTime(8 + random.nextInt(10), random.nextInt(60), random.nextInt(60));
+    }
+
+    /**
+     * Draws from a geometric distribution over 0, 1, 2, ... with the given mean.
+     */
+    private int geometric(double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        double p = 1 / (1 + mean);
+        return (int) Math.min(10_000, StrictMath.floor(StrictMath.log(1 - random.nextDouble()) / StrictMath.log(1 - p)));
+    }
+
+    private double exponential(double mean) {
+        return -mean * StrictMath.log(1 - random.nextDouble());
+    }
+
+    private int weighted(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
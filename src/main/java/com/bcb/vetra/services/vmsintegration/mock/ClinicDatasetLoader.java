@@ -0,0 +1,123 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import com.bcb.vetra.daos.BulkLoadDao;
+import com.bcb.vetra.daos.CopyRows;
+import com.bcb.vetra.daos.MetaDao;
+import com.bcb.vetra.daos.PrescriptionDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * <strong>Clinic Dataset Loader</strong>
+ * <br><br>
+ * Generates a synthetic clinic with ClinicDataGenerator and copies it into the database batch by batch, so memory
+ * stays bounded however many owners are generated. The whole load is one transaction: the tables it writes are locked
+ * against other writers until it commits, and a failed load leaves nothing behind.
+ * <br><br>
+ * Generated usernames are fixed (<i>owner1..n</i>, <i>doctor1..n</i>), so a database holds one synthetic clinic. The
+ * load is recorded in the meta table and later calls do nothing; recreate the database to load a different one.
+ */
+@Component
+public class ClinicDatasetLoader {
+    private static final Logger log = LoggerFactory.getLogger(ClinicDatasetLoader.class);
+    private static final String LOADED_ACTION = "mock dataset loaded";
+
+    /** IDs taken from a table's sequence at a time. */
+    private static final int ID_BLOCK_SIZE = 1000;
+
+    /** Tables with a serial ID, which the generator assigns itself from IDs reserved in the table's sequence. */
+    private static final Map<String, String> ID_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        ID_COLUMNS.put("patient", "patient_id");
+        ID_COLUMNS.put("test", "test_id");
+        ID_COLUMNS.put("result", "result_id");
+        ID_COLUMNS.put("prescription", "prescription_id");
+        ID_COLUMNS.put("request", "request_id");
+        ID_COLUMNS.put("message", "message_id");
+        ID_COLUMNS.put("notification", "notification_id");
+    }
+
+    private final BulkLoadDao bulkLoadDao;
+    private final MetaDao metaDao;
+    private final PrescriptionDao prescriptionDao;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+
+    public ClinicDatasetLoader(BulkLoadDao bulkLoadDao, MetaDao metaDao, PrescriptionDao prescriptionDao,
+                               PasswordEncoder passwordEncoder, PlatformTransactionManager transactionManager) {
+        this.bulkLoadDao = bulkLoadDao;
+        this.metaDao = metaDao;
+        this.prescriptionDao = prescriptionDao;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Loads the dataset described by the settings, unless a synthetic clinic was loaded before.
+     *
+     * @param settings
+     * @return Map of table name to rows copied, empty if the dataset was already loaded
+     */
+    public Map<String, Long> load(ClinicDatasetSettings settings) {
+        if (settings.getDoctors() < 1) {
+            throw new IllegalArgumentException("The synthetic clinic needs at least one doctor.");
+        }
+        if (metaDao.actionExists(LOADED_ACTION)) {
+            log.info("A synthetic clinic is already loaded; recreate the database to load another.");
+            return new LinkedHashMap<>();
+        }
+        LocalDate asOf = settings.getAsOf() != null ? settings.getAsOf() : LocalDate.now();
+        log.info("Loading a synthetic clinic of {} owners and {} doctors, seed {}, as of {}.",
+                settings.getOwners(), settings.getDoctors(), settings.getSeed(), asOf);
+        long start = System.nanoTime();
+
+        Map<String, Long> copied = transactionTemplate.execute(status -> {
+            bulkLoadDao.lockForLoad("\"user\"", "role", "patient", "test", "result", "prescription", "request", "message", "notification");
+            Map<String, LongSupplier> ids = new LinkedHashMap<>();
+            ID_COLUMNS.forEach((table, idColumn) -> ids.put(table, new ReservedIds(bulkLoadDao, table, idColumn, ID_BLOCK_SIZE)));
+            prescriptionDao.createMissingMedications(ClinicDataGenerator.MEDICATION_UNITS);
+
+            // Hashing is deliberately slow, so every generated user shares one hash.
+            ClinicDataGenerator generator = new ClinicDataGenerator(settings, asOf, passwordEncoder.encode(settings.getPassword()), ids);
+            Map<String, Long> rowCounts = new LinkedHashMap<>();
+            generator.generateDoctors();
+            int batchSize = Math.max(1, settings.getOwnersPerBatch());
+            for (int owner = 1; owner <= settings.getOwners(); owner++) {
+                generator.generateOwner(owner);
+                if (owner % batchSize == 0) {
+                    copyAll(generator, rowCounts);
+                    log.info("Copied {} of {} owners.", owner, settings.getOwners());
+                }
+            }
+            copyAll(generator, rowCounts);
+
+            metaDao.createAction(LOADED_ACTION);
+            return rowCounts;
+        });
+
+        bulkLoadDao.analyze("\"user\"", "role", "patient", "test", "result", "prescription", "request", "message", "notification");
+        log.info("Loaded the synthetic clinic in {} s: {}", (System.nanoTime() - start) / 1_000_000_000, copied);
+        return copied;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void copyAll(ClinicDataGenerator generator, Map<String, Long> rowCounts) {
+        for (CopyRows rows : generator.getRowsInLoadOrder()) {
+            String table = rows.getTable().replace("\"", "");
+            rowCounts.merge(table, bulkLoadDao.copy(rows), Long::sum);
+        }
+    }
+}
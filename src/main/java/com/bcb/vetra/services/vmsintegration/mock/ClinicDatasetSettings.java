@@ -0,0 +1,38 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Settings of the synthetic clinic generated by the mock VMS. Counts per owner, patient and prescription are means;
+ * the actual counts vary from record to record. The same settings, seed and as-of date always produce the same rows.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClinicDatasetSettings {
+    /** Owners to generate. 0 leaves the mock VMS adding a few tests to existing patients on every sync instead. */
+    private int owners = 0;
+    private int doctors = 50;
+    private long seed = 42;
+    /** Day the history ends; today if not set. Fix it to reproduce a dataset exactly. */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate asOf;
+    /** Days of history before the as-of date. */
+    private int historyDays = 1095;
+    private double patientsPerOwner = 1.6;
+    private double testsPerPatient = 6;
+    private double prescriptionsPerPatient = 1.5;
+    private double requestsPerPrescription = 1.2;
+    private double messagesPerPatient = 3;
+    /** Password of every generated user. */
+    private String password = "password";
+    /** Owners generated and copied per round trip; bounds the memory the load needs. */
+    private int ownersPerBatch = 5000;
+}
@@ -0,0 +1,148 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import com.bcb.vetra.models.Result;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Diagnostic panels the mock VMS reports, with their parameters and reference ranges. Most values fall inside the
+ * reference range; a panel occasionally comes back with some abnormal values, the way real results do.
+ */
+enum LabPanel {
+    CBC("CBC", 30,
+            Parameter.numeric("WBC", 4.0, 15.5, "10^3/uL", 1),
+            Parameter.numeric("RBC", 4.5, 8.25, "10^6/uL", 2),
+            Parameter.numeric("Hemoglobin", 11.9, 18.9, "g/dL", 1),
+            Parameter.numeric("Hematocrit", 36, 60, "%", 0),
+            Parameter.numeric("MCV", 58, 79, "fL", 0),
+            Parameter.numeric("Platelets", 170, 400, "10^3/uL", 0)),
+    CHEMISTRY("Chemistry panel", 25,
+            Parameter.numeric("ALT", 10, 125, "U/L", 0),
+            Parameter.numeric("ALP", 23, 212, "U/L", 0),
+            Parameter.numeric("BUN", 7, 27, "mg/dL", 0),
+            Parameter.numeric("Creatinine", 0.5, 1.8, "mg/dL", 1),
+            Parameter.numeric("Glucose", 74, 143, "mg/dL", 0),
+            Parameter.numeric("Total protein", 5.2, 8.2, "g/dL", 1),
+            Parameter.numeric("Albumin", 2.3, 4.0, "g/dL", 1),
+            Parameter.numeric("Calcium", 7.9, 12.0, "mg/dL", 1)),
+    FECAL("Fecal", 20,
+            Parameter.qualitative("Hookworms", 0.08),
+            Parameter.qualitative("Roundworms", 0.06),
+            Parameter.qualitative("Whipworms", 0.04),
+            Parameter.qualitative("Tapeworms", 0.05)),
+    URINALYSIS("Urinalysis", 15,
+            Parameter.numeric("Specific gravity", 1.015, 1.045, null, 3),
+            Parameter.numeric("pH", 5.5, 7.5, null, 1),
+            Parameter.qualitative("Protein", 0.10),
+            Parameter.qualitative("Glucose", 0.03),
+            Parameter.qualitative("Blood", 0.07)),
+    HEARTWORM("Heartworm antigen", 10,
+            Parameter.qualitative("Dirofilaria immitis", 0.02));
+
+    private static final double ABNORMAL_PANEL_RATE = 0.15;
+    private static final double ABNORMAL_VALUE_RATE = 0.35;
+    private static final int TOTAL_WEIGHT;
+
+    static {
+        int total = 0;
+        for (LabPanel panel : values()) {
+            total += panel.weight;
+        }
+        TOTAL_WEIGHT = total;
+    }
+
+    private final String testName;
+    private final int weight;
+    private final Parameter[] parameters;
+
+    LabPanel(String testName, int weight, Parameter... parameters) {
+        this.testName = testName;
+        this.weight = weight;
+        this.parameters = parameters;
+    }
+
+    String getTestName() {
+        return testName;
+    }
+
+    int getResultCount() {
+        return parameters.length;
+    }
+
+    /**
+     * Picks a panel, weighted by how often clinics run it.
+     *
+     * @param random
+     * @return LabPanel
+     */
+    static LabPanel pick(SplittableRandom random) {
+        int roll = random.nextInt(TOTAL_WEIGHT);
+        for (LabPanel panel : values()) {
+            roll -= panel.weight;
+            if (roll < 0) {
+                return panel;
+            }
+        }
+        return CBC;
+    }
+
+    /**
+     * Generates the results of one run of the panel.
+     *
+     * @param random
+     * @param testId
+     * @return List of Result
+     */
+    List<Result> generateResults(SplittableRandom random, int testId) {
+        boolean abnormal = random.nextDouble() < ABNORMAL_PANEL_RATE;
+        List<Result> results = new ArrayList<>(parameters.length);
+        for (Parameter parameter : parameters) {
+            results.add(parameter.generate(random, testId, abnormal));
+        }
+        return results;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private record Parameter(String name, double low, double high, String unit, int decimals, double positiveRate) {
+
+        static Parameter numeric(String name, double low, double high, String unit, int decimals) {
+            return new Parameter(name, low, high, unit, decimals, -1);
+        }
+
+        static Parameter qualitative(String name, double positiveRate) {
+            return new Parameter(name, 0, 0, null, 0, positiveRate);
+        }
+
+        Result generate(SplittableRandom random, int testId, boolean abnormalPanel) {
+            if (positiveRate >= 0) {
+                double rate = abnormalPanel ? Math.min(1, positiveRate * 4) : positiveRate;
+                return new Result(0, testId, random.nextDouble() < rate ? "Positive" : "Negative", name);
+            }
+            double middle = (low + high) / 2;
+            double spread = (high - low) / 4;
+            double value = middle + gaussian(random) * spread;
+            if (abnormalPanel && random.nextDouble() < ABNORMAL_VALUE_RATE) {
+                value = random.nextBoolean() ? high + Math.abs(gaussian(random)) * spread : low - Math.abs(gaussian(random)) * spread / 2;
+            }
+            value = Math.max(0, value);
+            return new Result(0, testId, format(value, decimals), name, format(low, decimals), format(high, decimals), unit);
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            // Box-Muller rather than nextGaussian, whose algorithm is unspecified, so a seed gives the same values on every JDK.
+            double u = 1 - random.nextDouble();
+            return StrictMath.sqrt(-2 * StrictMath.log(u)) * StrictMath.cos(2 * Math.PI * random.nextDouble());
+        }
+
+        private static String format(double value, int decimals) {
+            return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import com.bcb.vetra.daos.TestDao;
+import com.bcb.vetra.models.Result;
+import com.bcb.vetra.models.Test;
+import com.bcb.vetra.services.vmsintegration.VmsIntegration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * <strong>Mock VMS Integration</strong>
+ * <br><br>
+ * Stands in for a real VMS during development. With <i>vetra.mock.tests-per-sync</i> set, every sync reports a few
+ * new tests for existing patients, like a clinic running diagnostics through the day. It is off by default, since the
+ * tests pile up for as long as the application runs.
+ * <br><br>
+ * When <i>vetra.mock.dataset.owners</i> is set, the first sync also loads a synthetic clinic of that size with
+ * ClinicDatasetLoader, so queries and caches can be profiled against production-scale data.
+ */
+@Component
+public class MockVmsIntegration implements VmsIntegration {
+    private static final Logger log = LoggerFactory.getLogger(MockVmsIntegration.class);
+
+    private final TestDao testDao;
+    private final JdbcTemplate jdbcTemplate;
+    private final ClinicDatasetLoader datasetLoader;
+    private final ClinicDatasetSettings datasetSettings;
+    private final String doctor;
+    private final int testsPerSync;
+    private final SplittableRandom random;
+
+    public MockVmsIntegration(TestDao testDao, JdbcTemplate jdbcTemplate, ClinicDatasetLoader datasetLoader, ClinicDatasetSettings datasetSettings,
+                              @Value("${vetra.mock.doctor:}") String doctor,
+                              @Value("${vetra.mock.tests-per-sync:0}") int testsPerSync) {
+        this.testDao = testDao;
+        this.jdbcTemplate = jdbcTemplate;
+        this.datasetLoader = datasetLoader;
+        this.datasetSettings = datasetSettings;
+        // The synthetic clinic has no cakelly4, the doctor of database/VetRA.sql.
+        this.doctor = !doctor.isBlank() ? doctor : datasetSettings.getOwners() > 0 ? "doctor1" : "cakelly4";
+        this.testsPerSync = testsPerSync;
+        this.random = new SplittableRandom(datasetSettings.getSeed());
+    }
+
+    /**
+     * Updates the database with new tests, after loading the synthetic clinic if one is configured. Implemented from
+     * VmsIntegration.
+     *
+     * @return int
+     */
+    @Override
+    public int updateDB() {
+        if (datasetSettings.getOwners() > 0) {
+            datasetLoader.load(datasetSettings);
+        }
+        int tests = addTests();
+        if (tests > 0) {
+            log.info("Added {} tests to the database.", tests);
+        } else {
+            log.info("No new tests to add.");
+        }
+        return 1;
+    }
+
+    @Override
+    public String getName() {
+        return "mock";
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Adds up to testsPerSync tests, each for a random existing patient.
+     */
+    private int addTests() {
+        if (testsPerSync <= 0) {
+            return 0;
+        }
+        double[] positions = new double[random.nextInt(testsPerSync + 1)];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextDouble();
+        }
+        Map<Test, List<Result>> testMap = new LinkedHashMap<>();
+        for (int patientId : samplePatientIds(positions)) {
+            LabPanel panel = LabPanel.pick(random);
+            testMap.put(new Test(0, panel.getTestName(), patientId, doctor, LocalDateTime.now()), panel.generateResults(random, 0));
+        }
+        if (testMap.isEmpty()) {
+            return 0;
+        }
+        return testDao.createAll(testMap).size();
+    }
+
+    /**
+     * Picks patients spread over the patient ID range: for every position, the first patient at or after that fraction
+     * of the range. Each pick is a primary key lookup, so sampling stays cheap on any number of patients.
+     *
+     * @param positions Fractions of the ID range, from 0 inclusive to 1 exclusive.
+     * @return List of distinct patient IDs, empty if there are no patients
+     */
+    private List<Integer> samplePatientIds(double[] positions) {
+        if (positions.length == 0) {
+            return new ArrayList<>();
+        }
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "WITH bounds AS (SELECT MIN(patient_id) AS low, MAX(patient_id) AS high FROM patient) " +
+                        "SELECT (SELECT patient.patient_id FROM patient " +
+                        "WHERE patient.patient_id >= bounds.low + floor(probe * (bounds.high - bounds.low + 1))::int " +
+                        "ORDER BY patient.patient_id LIMIT 1) " +
+                        "FROM bounds, unnest(?::float8[]) AS probe " +
+                        "WHERE bounds.low IS NOT NULL;",
+                Integer.class,
+                positions
+        );
+        ids.removeIf(Objects::isNull);
+        return new ArrayList<>(new LinkedHashSet<>(ids));
+    }
+}
@@ -0,0 +1,38 @@
+package com.bcb.vetra.services.vmsintegration.mock;
+
+import com.bcb.vetra.daos.BulkLoadDao;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out the IDs of one table for ClinicDataGenerator, taking them from the table's sequence a block at a time.
+ * Other writers, such as a sync running at the same time, take their IDs from the same sequence, so the generated rows
+ * never collide with theirs. IDs left over from the last block are skipped, as the sequence skips IDs of rolled back
+ * inserts.
+ */
+class ReservedIds implements LongSupplier {
+    private static final long[] NONE = new long[0];
+
+    private final BulkLoadDao bulkLoadDao;
+    private final String table;
+    private final String idColumn;
+    private final int blockSize;
+    private long[] ids = NONE;
+    private int next;
+
+    ReservedIds(BulkLoadDao bulkLoadDao, String table, String idColumn, int blockSize) {
+        this.bulkLoadDao = bulkLoadDao;
+        this.table = table;
+        this.idColumn = idColumn;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long getAsLong() {
+        if (next == ids.length) {
+            ids = bulkLoadDao.reserveIds(table, idColumn, blockSize);
+            next = 0;
+        }
+        return ids[next++];
+    }
+}
@@ -0,0 +1,21 @@
+package com.bcb.vetra.viewmodels;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * View model for one page of a keyset-paginated listing. <i>nextCursor</i> is passed back as the <i>cursor</i> request
+ * parameter to get the following page, and is null on the last page.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Page<T> {
+    private List<T> items;
+    private String nextCursor;
+}
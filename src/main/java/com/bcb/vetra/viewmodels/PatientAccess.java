@@ -0,0 +1,20 @@
+package com.bcb.vetra.viewmodels;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * View model for the facts an access check needs about a user and a patient: the user's roles and whether they own the patient.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PatientAccess {
+    private List<String> roles;
+    private boolean isOwner;
+}
@@ -0,0 +1,27 @@
+package com.bcb.vetra.viewmodels;
+
+import com.bcb.vetra.models.Message;
+import com.bcb.vetra.models.Patient;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * View Model class for everything shown when a patient is opened: the patient, its tests with their results, its
+ * prescriptions with their refill requests and the messages about it. Sections that were not requested are left out.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PatientDashboard {
+    private Patient patient;
+    private List<TestWithResults> tests;
+    private List<PrescriptionWithRequests> prescriptions;
+    private List<Message> messages;
+}
@@ -0,0 +1,22 @@
+package com.bcb.vetra.viewmodels;
+
+import com.bcb.vetra.models.Request;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * View Model class for a prescription together with its refill requests.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionWithRequests {
+    private PrescriptionWithMedication prescription;
+    private List<Request> requests = new ArrayList<>();
+}
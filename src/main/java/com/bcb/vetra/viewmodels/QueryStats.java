@@ -0,0 +1,22 @@
+package com.bcb.vetra.viewmodels;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * View Model class for the statistics of a SQL statement since startup or the last reset. Times are in milliseconds.
+ */
+@Getter
+@AllArgsConstructor
+public class QueryStats {
+    private String sql;
+    private long calls;
+    private long errors;
+    private long rows;
+    private double totalMillis;
+    private double meanMillis;
+    private double maxMillis;
+    private Map<String, Long> histogram;
+}
@@ -0,0 +1,23 @@
+package com.bcb.vetra.viewmodels;
+
+import com.bcb.vetra.models.Result;
+import com.bcb.vetra.models.Test;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * View Model class for a test together with its results.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TestWithResults {
+    private Test test;
+    private List<Result> results = new ArrayList<>();
+}
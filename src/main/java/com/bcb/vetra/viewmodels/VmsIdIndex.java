@@ -0,0 +1,66 @@
+package com.bcb.vetra.viewmodels;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <strong>VMS ID Index</strong>
+ * <br><br>
+ * In-memory index from the IDs of one VMS to the local usernames and patient IDs, spanning the user_vms and
+ * patient_vms tables. It is loaded once at the start of a sync (see VmsIdDao) and updated as the sync creates rows, so
+ * resolving an owner or a patient during an import is a map lookup instead of a query per record.
+ * <br><br>
+ * An index belongs to a single sync run and is not thread-safe.
+ */
+public class VmsIdIndex {
+    private final Map<String, String> usernamesByVmsId = new HashMap<>();
+    private final Map<String, Integer> patientIdsByVmsId = new HashMap<>();
+
+    public void putUser(String vmsId, String username) {
+        usernamesByVmsId.put(vmsId, username);
+    }
+
+    public void putUsers(Map<String, String> usernamesByVmsId) {
+        this.usernamesByVmsId.putAll(usernamesByVmsId);
+    }
+
+    public void putPatient(String vmsId, int patientId) {
+        patientIdsByVmsId.put(vmsId, patientId);
+    }
+
+    public void putPatients(Map<String, Integer> patientIdsByVmsId) {
+        this.patientIdsByVmsId.putAll(patientIdsByVmsId);
+    }
+
+    /**
+     * Gets the username linked to a VMS ID.
+     *
+     * @param vmsId
+     * @return String, or null if no user is linked
+     */
+    public String getUsername(String vmsId) {
+        return usernamesByVmsId.get(vmsId);
+    }
+
+    /**
+     * Gets the patient ID linked to a VMS ID.
+     *
+     * @param vmsId
+     * @return int, or 0 if no patient is linked
+     */
+    public int getPatientId(String vmsId) {
+        Integer patientId = vmsId == null ? null : patientIdsByVmsId.get(vmsId);
+        return patientId == null ? 0 : patientId;
+    }
+
+    /**
+     * Gets the VMS IDs of every linked user.
+     *
+     * @return Set of String
+     */
+    public Set<String> getUserVmsIds() {
+        return Collections.unmodifiableSet(usernamesByVmsId.keySet());
+    }
+}
@@ -0,0 +1,32 @@
+-- Secondary indexes for the predicates and orderings used by the DAOs.
+
+-- Messages to or from a user (BitmapOr of both), newest first for paging.
+CREATE INDEX IF NOT EXISTS message_to_username_idx ON "message" ("to_username", "message_id");
+CREATE INDEX IF NOT EXISTS message_from_username_idx ON "message" ("from_username", "message_id");
+CREATE INDEX IF NOT EXISTS message_patient_id_idx ON "message" ("patient_id");
+CREATE INDEX IF NOT EXISTS message_test_id_idx ON "message" ("test_id");
+CREATE INDEX IF NOT EXISTS message_prescription_id_idx ON "message" ("prescription_id");
+
+-- Tests of a patient, newest first.
+CREATE INDEX IF NOT EXISTS test_patient_id_idx ON "test" ("patient_id", "test_id");
+
+-- Results of a test, in order.
+CREATE INDEX IF NOT EXISTS result_test_id_idx ON "result" ("test_id", "result_id");
+
+-- Patients of an owner by name, and all patients paged by name.
+CREATE INDEX IF NOT EXISTS patient_owner_username_idx ON "patient" ("owner_username", "first_name");
+CREATE INDEX IF NOT EXISTS patient_first_name_idx ON "patient" ("first_name", "patient_id");
+
+CREATE INDEX IF NOT EXISTS prescription_patient_id_idx ON "prescription" ("patient_id");
+
+-- Requests by status, by prescription, and all requests paged by date.
+CREATE INDEX IF NOT EXISTS request_status_idx ON "request" ("status", "request_date");
+CREATE INDEX IF NOT EXISTS request_prescription_id_idx ON "request" ("prescription_id");
+CREATE INDEX IF NOT EXISTS request_request_date_idx ON "request" ("request_date", "request_id");
+
+-- Unread notifications of a user. Read notifications are never queried by user, so they are left out of the index.
+CREATE INDEX IF NOT EXISTS notification_unread_username_idx ON "notification" ("username") WHERE "is_read" = false;
+
+-- Reverse lookups from an ID in a VMS to the local user or patient.
+CREATE INDEX IF NOT EXISTS user_vms_vms_id_idx ON "user_vms" ("vms_name", "vms_id");
+CREATE INDEX IF NOT EXISTS patient_vms_vms_id_idx ON "patient_vms" ("vms_name", "vms_id");
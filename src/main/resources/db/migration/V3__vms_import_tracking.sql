@@ -0,0 +1,32 @@
+-- Tracking for incremental imports from a VMS.
+
+-- IDs of imported tests and prescriptions in their VMS. A VMS ID maps to exactly one local row, so a record imported
+-- again updates that row instead of creating a duplicate.
+CREATE TABLE "test_vms" (
+  "test_id" int NOT NULL REFERENCES "test" ("test_id") ON DELETE CASCADE,
+  "vms_name" varchar(30) NOT NULL,
+  "vms_id" varchar(300) NOT NULL,
+  PRIMARY KEY ("test_id", "vms_name"),
+  UNIQUE ("vms_name", "vms_id")
+);
+
+CREATE TABLE "prescription_vms" (
+  "prescription_id" int NOT NULL REFERENCES "prescription" ("prescription_id") ON DELETE CASCADE,
+  "vms_name" varchar(30) NOT NULL,
+  "vms_id" varchar(300) NOT NULL,
+  PRIMARY KEY ("prescription_id", "vms_name"),
+  UNIQUE ("vms_name", "vms_id")
+);
+
+-- Largest source modified_at (epoch seconds) imported for each entity of a VMS. It is advanced in the same
+-- transaction as the imported rows, so it never runs ahead of what was committed.
+CREATE TABLE "sync_watermark" (
+  "vms_name" varchar(30) NOT NULL,
+  "entity" varchar(50) NOT NULL,
+  "high_water_mark" bigint NOT NULL DEFAULT 0,
+  "updated_at" timestamp DEFAULT (current_timestamp),
+  PRIMARY KEY ("vms_name", "entity")
+);
+
+-- Medication names from a VMS are longer than the original column allowed; match medication.name.
+ALTER TABLE "prescription" ALTER COLUMN "medication_name" TYPE varchar(50);
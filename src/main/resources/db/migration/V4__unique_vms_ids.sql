@@ -0,0 +1,15 @@
+-- A VMS ID maps to exactly one local user or patient, so imports can upsert on it.
+
+-- Keep the first row of any VMS ID that was linked more than once.
+DELETE FROM "user_vms" a USING "user_vms" b
+WHERE a."vms_name" = b."vms_name" AND a."vms_id" = b."vms_id" AND a."username" > b."username";
+
+DELETE FROM "patient_vms" a USING "patient_vms" b
+WHERE a."vms_name" = b."vms_name" AND a."vms_id" = b."vms_id" AND a."patient_id" > b."patient_id";
+
+-- The unique constraints replace the plain reverse lookup indexes.
+DROP INDEX IF EXISTS user_vms_vms_id_idx;
+DROP INDEX IF EXISTS patient_vms_vms_id_idx;
+
+ALTER TABLE "user_vms" ADD CONSTRAINT user_vms_vms_name_vms_id_key UNIQUE ("vms_name", "vms_id");
+ALTER TABLE "patient_vms" ADD CONSTRAINT patient_vms_vms_name_vms_id_key UNIQUE ("vms_name", "vms_id");
@@ -0,0 +1,3 @@
+-- All requests are paged by date with undated requests first, so the index is on the same COALESCE expression.
+DROP INDEX IF EXISTS request_request_date_idx;
+CREATE INDEX IF NOT EXISTS request_request_date_idx ON "request" (COALESCE("request_date", '-infinity'::timestamp), "request_id");
@@ -0,0 +1,10 @@
+-- Records of a VMS that could not be imported yet, e.g. because their animal is not a VetRA patient yet or a value
+-- breaks a constraint. They are parked in the same transaction that moves the high-water mark past them and requested
+-- again by ID on every sync, until they import or have been parked longer than the retry retention.
+CREATE TABLE "sync_retry" (
+  "vms_name" varchar(30) NOT NULL,
+  "entity" varchar(50) NOT NULL,
+  "vms_id" varchar(300) NOT NULL,
+  "parked_at" timestamp NOT NULL DEFAULT (current_timestamp),
+  PRIMARY KEY ("vms_name", "entity", "vms_id")
+);
@@ -0,0 +1,4 @@
+-- Unread notifications of a user are read in notification ID order, and replayed after the last ID a stream has seen,
+-- so the index carries the ID to serve both without a sort.
+DROP INDEX IF EXISTS notification_unread_username_idx;
+CREATE INDEX IF NOT EXISTS notification_unread_username_idx ON "notification" ("username", "notification_id") WHERE "is_read" = false;
@@ -0,0 +1,64 @@
+package com.bcb.vetra;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Embedded Postgres Initializer</strong>
+ * <br><br>
+ * Points a test's application context at a database of its own on one embedded PostgreSQL, started on first use and
+ * shared by the whole test run, so Flyway migrates an empty database and no local install is needed. Applied with
+ * <i>@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)</i>. The server is stopped by its own
+ * shutdown hook, after the cached contexts have had the chance to close their pools.
+ * <br><br>
+ * With <i>-Dvetra.test.embedded-db=false</i> nothing is started and the configured <i>spring.datasource.url</i> is
+ * used instead, which must point at an empty database.
+ */
+public class EmbeddedPostgresInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+    private static final AtomicInteger databases = new AtomicInteger();
+    private static EmbeddedPostgres postgres;
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        if (!context.getEnvironment().getProperty("vetra.test.embedded-db", Boolean.class, true)) {
+            return;
+        }
+        String database = "vetra_test_" + databases.incrementAndGet();
+        EmbeddedPostgres server = server();
+        try (Connection connection = server.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE " + database + ";");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the test database " + database + ".", e);
+        }
+        TestPropertyValues.of(
+                "spring.datasource.url=" + server.getJdbcUrl("postgres", database),
+                "spring.datasource.username=postgres",
+                "spring.datasource.password=postgres"
+        ).applyTo(context);
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static synchronized EmbeddedPostgres server() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start the embedded PostgreSQL.", e);
+            }
+        }
+        return postgres;
+    }
+}
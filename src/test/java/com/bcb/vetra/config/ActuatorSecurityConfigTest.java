@@ -0,0 +1,62 @@
+package com.bcb.vetra.config;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+class ActuatorSecurityConfigTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtTokenService jwtTokenService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("vetra.sync.sources", () -> "none");
+    }
+
+    @Test
+    void healthIsOpenToEveryone() throws Exception {
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+    }
+
+    @Test
+    void metricsNeedAnAdmin() throws Exception {
+        mockMvc.perform(get("/actuator/metrics")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + token("DOCTOR")))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + token("ADMIN")))
+                .andExpect(status().isOk());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private String token(String role) throws Exception {
+        JwtUser user = new JwtUser();
+        user.setId(1L);
+        user.setUsername("actuator" + role);
+        user.setAuthorities(List.of(new SimpleGrantedAuthority(role)));
+        user.setApiAccessAllowed(true);
+        return jwtTokenService.generateToken(user).getToken();
+    }
+}
@@ -0,0 +1,213 @@
+package com.bcb.vetra.controllers;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.fraho.spring.securityJwt.base.dto.JwtUser;
+import eu.fraho.spring.securityJwt.base.service.JwtTokenService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Calls GET /patients/{id}/dashboard for a patient with two tests and two prescriptions, next to a second patient with
+ * a test and a prescription of their own. The second patient's prescription has the first patient's ID, so requests
+ * matched by prescription ID instead of patient ID would show up on the first patient's dashboard.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+class PatientDashboardTest {
+    private static final int PATIENT_ID = 900001;
+    private static final int OTHER_PATIENT_ID = 900002;
+    private static final int MISSING_PATIENT_ID = 900003;
+    private static final String OWNER = "dashowner";
+    private static final String OTHER_OWNER = "dashother";
+    private static final String DOCTOR = "dashdoctor";
+    private static final String ADMIN = "dashadmin";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JwtTokenService jwtTokenService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Map<Integer, List<Integer>> resultsByTest;
+    private Map<Integer, List<Integer>> requestsByPrescription;
+    private int messageId;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("vetra.sync.sources", () -> "none");
+    }
+
+    @BeforeEach
+    void seed() {
+        // Deleting the users cascades to their patients and everything recorded about them.
+        jdbcTemplate.update("DELETE FROM \"user\" WHERE username IN (?, ?, ?, ?);", OWNER, OTHER_OWNER, DOCTOR, ADMIN);
+        for (String username : List.of(OWNER, OTHER_OWNER, DOCTOR, ADMIN)) {
+            jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Dash', 'Board');", username);
+        }
+        jdbcTemplate.update("INSERT INTO medication (name, unit) VALUES ('Carprofen', 'tablet'), ('Gabapentin', 'capsule') " +
+                "ON CONFLICT DO NOTHING;");
+        createPatient(PATIENT_ID, "Rex", OWNER);
+        createPatient(OTHER_PATIENT_ID, "Tom", OTHER_OWNER);
+
+        resultsByTest = new LinkedHashMap<>();
+        int bloodwork = createTest("Bloodwork", PATIENT_ID);
+        resultsByTest.put(bloodwork, List.of(createResult(bloodwork, "ALT"), createResult(bloodwork, "BUN")));
+        int urinalysis = createTest("Urinalysis", PATIENT_ID);
+        resultsByTest.put(urinalysis, List.of(createResult(urinalysis, "pH")));
+        createResult(createTest("Bloodwork", OTHER_PATIENT_ID), "ALT");
+
+        requestsByPrescription = new LinkedHashMap<>();
+        int carprofen = createPrescription(null, "Carprofen", PATIENT_ID);
+        int gabapentin = createPrescription(null, "Gabapentin", PATIENT_ID);
+        requestsByPrescription.put(carprofen, List.of(createRequest(carprofen, "2024-01-01"), createRequest(carprofen, "2024-03-01")));
+        requestsByPrescription.put(gabapentin, List.of(createRequest(gabapentin, "2024-02-01")));
+        int otherPrescription = createPrescription(PATIENT_ID, "Carprofen", OTHER_PATIENT_ID);
+        createRequest(otherPrescription, "2024-01-15");
+
+        messageId = jdbcTemplate.queryForObject("INSERT INTO message (body, time_stamp, from_username, to_username, patient_id) " +
+                "VALUES ('How is Rex?', now(), ?, ?, ?) RETURNING message_id;", Integer.class, DOCTOR, OWNER, PATIENT_ID);
+    }
+
+    @Test
+    void groupsResultsUnderTheirTestsAndRequestsUnderTheirPrescriptions() throws Exception {
+        JsonNode dashboard = dashboard(OWNER, "OWNER", "");
+
+        assertEquals(PATIENT_ID, dashboard.get("patient").get("patientId").asInt());
+
+        Map<Integer, List<Integer>> tests = new LinkedHashMap<>();
+        for (JsonNode test : dashboard.get("tests")) {
+            int testId = test.get("test").get("id").asInt();
+            assertEquals(PATIENT_ID, test.get("test").get("patientID").asInt());
+            List<Integer> results = new ArrayList<>();
+            for (JsonNode result : test.get("results")) {
+                assertEquals(testId, result.get("testID").asInt());
+                results.add(result.get("resultID").asInt());
+            }
+            tests.put(testId, results);
+        }
+        assertEquals(resultsByTest, tests);
+
+        Map<Integer, List<Integer>> prescriptions = new LinkedHashMap<>();
+        for (JsonNode prescription : dashboard.get("prescriptions")) {
+            int prescriptionId = prescription.get("prescription").get("prescriptionId").asInt();
+            assertEquals(PATIENT_ID, prescription.get("prescription").get("patientId").asInt());
+            List<Integer> requests = new ArrayList<>();
+            for (JsonNode request : prescription.get("requests")) {
+                assertEquals(prescriptionId, request.get("prescriptionId").asInt());
+                requests.add(request.get("requestId").asInt());
+            }
+            prescriptions.put(prescriptionId, requests);
+        }
+        assertEquals(requestsByPrescription, prescriptions, "The other patient's requests are left out.");
+
+        assertEquals(1, dashboard.get("messages").size());
+        assertEquals(messageId, dashboard.get("messages").get(0).get("messageId").asInt());
+    }
+
+    @Test
+    void leavesOutTheSectionsThatWereNotAskedFor() throws Exception {
+        JsonNode dashboard = dashboard(DOCTOR, "DOCTOR", "?sections=messages");
+
+        assertEquals(PATIENT_ID, dashboard.get("patient").get("patientId").asInt());
+        assertFalse(dashboard.has("tests"));
+        assertFalse(dashboard.has("prescriptions"));
+        assertEquals(1, dashboard.get("messages").size());
+    }
+
+    @Test
+    void rejectsUnknownSections() throws Exception {
+        mockMvc.perform(get("/patients/" + PATIENT_ID + "/dashboard?sections=tests,invoices")
+                        .header("Authorization", "Bearer " + token(OWNER, "OWNER")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void onlyTheOwnerCanSeeTheirPatient() throws Exception {
+        mockMvc.perform(get("/patients/" + PATIENT_ID + "/dashboard")
+                        .header("Authorization", "Bearer " + token(OTHER_OWNER, "OWNER")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void missingPatientsAreNotFound() throws Exception {
+        mockMvc.perform(get("/patients/" + MISSING_PATIENT_ID + "/dashboard")
+                        .header("Authorization", "Bearer " + token(ADMIN, "ADMIN")))
+                .andExpect(status().isNotFound());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private JsonNode dashboard(String username, String role, String query) throws Exception {
+        String body = mockMvc.perform(get("/patients/" + PATIENT_ID + "/dashboard" + query)
+                        .header("Authorization", "Bearer " + token(username, role)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    private void createPatient(int patientId, String name, String owner) {
+        jdbcTemplate.update("INSERT INTO patient (patient_id, first_name, birthday, species, owner_username) VALUES (?, ?, '2020-05-01', 'Canine', ?);",
+                patientId, name, owner);
+    }
+
+    private int createTest(String name, int patientId) {
+        return jdbcTemplate.queryForObject("INSERT INTO test (name, time_stamp, patient_id, doctor_username) " +
+                "VALUES (?, now(), ?, ?) RETURNING test_id;", Integer.class, name, patientId, DOCTOR);
+    }
+
+    private int createResult(int testId, String parameterName) {
+        return jdbcTemplate.queryForObject("INSERT INTO result (test_id, result_value, parameter_name) " +
+                "VALUES (?, '1', ?) RETURNING result_id;", Integer.class, testId, parameterName);
+    }
+
+    /**
+     * Creates a prescription, with the given ID or, if it is null, the next one from the sequence.
+     */
+    private int createPrescription(Integer prescriptionId, String medication, int patientId) {
+        return jdbcTemplate.queryForObject("INSERT INTO prescription (prescription_id, quantity, instructions, refills, is_active, " +
+                        "patient_id, medication_name, doctor_username) " +
+                        "VALUES (COALESCE(?, nextval(pg_get_serial_sequence('prescription', 'prescription_id'))), 30, 'Once a day', 2, true, ?, ?, ?) " +
+                        "RETURNING prescription_id;",
+                Integer.class, prescriptionId, patientId, medication, DOCTOR);
+    }
+
+    private int createRequest(int prescriptionId, String date) {
+        return jdbcTemplate.queryForObject("INSERT INTO request (prescription_id, status, request_date) " +
+                "VALUES (?, 'Pending', CAST(? AS timestamp)) RETURNING request_id;", Integer.class, prescriptionId, date);
+    }
+
+    private String token(String username, String role) throws Exception {
+        JwtUser user = new JwtUser();
+        user.setId(1L);
+        user.setUsername(username);
+        user.setAuthorities(List.of(new SimpleGrantedAuthority(role)));
+        user.setApiAccessAllowed(true);
+        return jwtTokenService.generateToken(user).getToken();
+    }
+}
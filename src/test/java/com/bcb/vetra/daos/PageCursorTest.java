@@ -0,0 +1,44 @@
+package com.bcb.vetra.daos;
+
+import com.bcb.vetra.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCursorTest {
+
+    @Test
+    void decodesWhatItEncodes() {
+        LocalDateTime date = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123000000);
+        String[] values = PageCursor.decode(PageCursor.encode(date, 42), 2);
+
+        assertEquals(date.toString(), PageCursor.parseTimestamp(values[0], "-infinity"));
+        assertEquals(42, PageCursor.parseInt(values[1]));
+    }
+
+    @Test
+    void acceptsTheSentinelForAMissingTimestamp() {
+        String[] values = PageCursor.decode(PageCursor.encode("-infinity", 7), 2);
+
+        assertEquals("-infinity", PageCursor.parseTimestamp(values[0], "-infinity"));
+    }
+
+    @Test
+    void rejectsTimestampsThatAreNotLocalDateTimes() {
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseTimestamp("infinity", "-infinity"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseTimestamp("now", "-infinity"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseTimestamp("2024-03-01", "-infinity"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseTimestamp("2024-02-30T00:00", "-infinity"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseTimestamp("", "-infinity"));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("abc", 2));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("a$.b", 2));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.parseInt("x"));
+        assertNull(PageCursor.decode(null, 2));
+    }
+}
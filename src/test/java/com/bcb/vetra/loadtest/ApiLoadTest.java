@@ -0,0 +1,364 @@
+package com.bcb.vetra.loadtest;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import com.bcb.vetra.services.vmsintegration.ezyvet.FakeEzyVetServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <strong>API Load Test</strong>
+ * <br><br>
+ * Boots the application on a random port against the embedded PostgreSQL of EmbeddedPostgresInitializer, seeds it with LoadTestDataset and runs a
+ * closed-loop load of virtual users against the REST API. Each virtual user logs in as its own owner, doctor or admin
+ * through <i>/auth/login</i> and then sends requests one after another, chosen at random from its role's mix:
+ * <ul>
+ *     <li>Owners list their patients, and read their tests, results, prescriptions, dashboards and messages. They
+ *     poll notifications and ask for refills.</li>
+ *     <li>Doctors page through all patients and refill requests, and read any patient's tests, results,
+ *     prescriptions and dashboard.</li>
+ *     <li>Admins page through users, messages and requests and check the sync state.</li>
+ * </ul>
+ * After a warm-up it measures for a fixed time and prints requests/sec and latency percentiles per endpoint. Only
+ * runs with <i>-Dvetra.loadtest=true</i>:
+ * <pre>
+ * mvn test -Dtest=ApiLoadTest -Dvetra.loadtest=true -Dvetra.loadtest.users=100 -Dvetra.loadtest.duration=PT2M
+ * </pre>
+ * The load is set with <i>vetra.loadtest.users</i>, <i>warmup</i>, <i>duration</i>, <i>think-time-ms</i> and
+ * <i>seed</i>, and the dataset with the scale properties read by LoadTestDataset. <i>vetra.loadtest.report</i> also
+ * writes the results to a CSV file. With <i>vetra.test.embedded-db=false</i> the configured
+ * <i>spring.datasource.url</i> is used instead, which must point at an empty database.
+ * <br><br>
+ * With <i>vetra.loadtest.vms-latency-ms</i> set, the background sync imports from a FakeEzyVetServer that answers
+ * after that delay, every second while the load runs, so the API is measured next to a slow VMS. Run with
+ * <i>-Dspring.profiles.active=virtual-threads</i> on Java 21 to compare the virtual thread mode.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+@EnabledIfSystemProperty(named = "vetra.loadtest", matches = "true")
+class ApiLoadTest {
+    private static final int USERS = Integer.getInteger("vetra.loadtest.users", 50);
+    private static final Duration WARMUP = Duration.parse(System.getProperty("vetra.loadtest.warmup", "PT15S"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("vetra.loadtest.duration", "PT60S"));
+    private static final long THINK_TIME_MS = Long.getLong("vetra.loadtest.think-time-ms", 0L);
+    private static final long SEED = Long.getLong("vetra.loadtest.seed", 42L);
+    private static final String REPORT = System.getProperty("vetra.loadtest.report");
+    private static final int PAGE_LIMIT = 50;
+    private static final int VMS_LATENCY_MS = Integer.getInteger("vetra.loadtest.vms-latency-ms", -1);
+    private static final int VMS_CONTACTS = Integer.getInteger("vetra.loadtest.vms-contacts", 200);
+
+    private static final LoadTestDataset dataset = LoadTestDataset.fromSystemProperties();
+    private static FakeEzyVetServer vms;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private Environment environment;
+
+    private HttpClient httpClient;
+
+    @DynamicPropertySource
+    static void syncProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (VMS_LATENCY_MS < 0) {
+            // Only the API is measured, so no VMS sync runs during the test.
+            registry.add("vetra.sync.sources", () -> "none");
+            return;
+        }
+        vms = FakeEzyVetServer.start(SEED, 16);
+        vms.generate(VMS_CONTACTS, 2, 5, 2);
+        vms.setLatency(Duration.ofMillis(VMS_LATENCY_MS));
+        registry.add("vetra.ezyvet.base-url", vms::getBaseUrl);
+        registry.add("vetra.ezyvet.default-doctor", () -> "doctor1");
+        registry.add("vetra.sync.sources", () -> "ezyvet");
+        // The first sync starts after the dataset is seeded, and syncs follow each other for the rest of the run.
+        registry.add("vetra.sync.initial-delay", () -> "PT5S");
+        registry.add("vetra.sync.interval", () -> "PT1S");
+        // The fake has no rate limit, so the governor should not add one.
+        registry.add("vetra.ezyvet.governor.capacity", () -> "1000000");
+        registry.add("vetra.ezyvet.governor.permits-per-second", () -> "1000000");
+    }
+
+    @BeforeAll
+    static void seed(@Autowired JdbcTemplate jdbcTemplate, @Autowired PasswordEncoder passwordEncoder) {
+        long start = System.nanoTime();
+        dataset.seed(jdbcTemplate, passwordEncoder.encode(LoadTestDataset.PASSWORD));
+        System.out.printf("Seeded %d owners, %d doctors, %d admins and %d patients in %.1f s%n",
+                dataset.owners, dataset.doctors, dataset.admins, dataset.getPatientIds().length,
+                (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    @AfterAll
+    static void stopVms() {
+        if (vms != null) {
+            vms.close();
+        }
+    }
+
+    @Test
+    void mixedWorkload() throws Exception {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        List<VirtualUser> users = createUsers();
+
+        long measureFrom = System.nanoTime() + WARMUP.toNanos();
+        long stopAt = measureFrom + DURATION.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(users.size());
+        EndpointLatencies latencies = new EndpointLatencies();
+        try {
+            List<Future<EndpointLatencies>> results = new ArrayList<>();
+            for (VirtualUser user : users) {
+                results.add(executor.submit(() -> user.run(measureFrom, stopAt)));
+            }
+            for (Future<EndpointLatencies> result : results) {
+                latencies.merge(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = DURATION.toNanos() / 1_000_000_000.0;
+        System.out.printf("%d virtual users, %s warm-up, %s measured, %d ms think time, virtual threads %s%n", users.size(), WARMUP,
+                DURATION, THINK_TIME_MS, environment.getProperty("spring.threads.virtual.enabled", "false"));
+        if (vms != null) {
+            System.out.printf("Slow VMS: %d ms latency, %d requests served%n", VMS_LATENCY_MS, vms.getRequestCount());
+        }
+        latencies.printReport(seconds, new PrintWriter(System.out));
+        if (REPORT != null) {
+            latencies.writeCsv(seconds, Path.of(REPORT));
+        }
+        assertTrue(latencies.hasRequests(), "No requests completed during the measured run.");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Logs in the virtual users: 5% admins, 25% doctors and the rest owners, with at least one of each.
+     */
+    private List<VirtualUser> createUsers() throws IOException, InterruptedException {
+        int admins = Math.max(1, USERS / 20);
+        int doctors = Math.max(1, USERS / 4);
+        int owners = Math.max(1, USERS - admins - doctors);
+
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < owners; i++) {
+            users.add(login(Role.OWNER, "owner" + (i % dataset.owners + 1), users.size()));
+        }
+        for (int i = 0; i < doctors; i++) {
+            users.add(login(Role.DOCTOR, "doctor" + (i % dataset.doctors + 1), users.size()));
+        }
+        for (int i = 0; i < admins; i++) {
+            users.add(login(Role.ADMIN, "admin" + (i % dataset.admins + 1), users.size()));
+        }
+        return users;
+    }
+
+    private VirtualUser login(Role role, String username, int index) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(Map.of("username", username, "password", LoadTestDataset.PASSWORD));
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/auth/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Could not log in " + username + ": HTTP " + response.statusCode());
+        }
+        String token = objectMapper.readTree(response.body()).path("accessToken").path("token").asText();
+        return new VirtualUser(role, username, token, new Random(SEED + index));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private enum Role {
+        OWNER, DOCTOR, ADMIN
+    }
+
+    /**
+     * A request to send, with the endpoint it is reported under and the status it should get.
+     */
+    private record Call(String endpoint, HttpRequest request, int expectedStatus) {
+    }
+
+    private class VirtualUser {
+        private final Role role;
+        private final String username;
+        private final String token;
+        private final Random random;
+
+        VirtualUser(Role role, String username, String token, Random random) {
+            this.role = role;
+            this.username = username;
+            this.token = token;
+            this.random = random;
+        }
+
+        /**
+         * Sends requests until stopAt, recording those started from measureFrom on.
+         */
+        EndpointLatencies run(long measureFrom, long stopAt) throws InterruptedException {
+            EndpointLatencies latencies = new EndpointLatencies();
+            while (System.nanoTime() < stopAt) {
+                Call call = nextCall();
+                long start = System.nanoTime();
+                boolean failed;
+                try {
+                    HttpResponse<Void> response = httpClient.send(call.request(), HttpResponse.BodyHandlers.discarding());
+                    failed = response.statusCode() != call.expectedStatus();
+                } catch (IOException e) {
+                    failed = true;
+                }
+                if (start >= measureFrom) {
+                    latencies.record(call.endpoint(), System.nanoTime() - start, failed);
+                }
+                if (THINK_TIME_MS > 0) {
+                    Thread.sleep(THINK_TIME_MS);
+                }
+            }
+            return latencies;
+        }
+
+        private Call nextCall() {
+            int roll = random.nextInt(100);
+            return switch (role) {
+                case OWNER -> nextOwnerCall(roll);
+                case DOCTOR -> nextDoctorCall(roll);
+                case ADMIN -> nextAdminCall(roll);
+            };
+        }
+
+        private Call nextOwnerCall(int roll) {
+            int[] patients = dataset.getPatients(username);
+            if (roll < 20 || patients.length == 0) {
+                return get("GET /patients", "/patients");
+            }
+            int patientId = pick(patients);
+            if (roll < 30) {
+                return get("GET /patients/{id}", "/patients/" + patientId);
+            } else if (roll < 45) {
+                return testsOf(patientId);
+            } else if (roll < 60) {
+                return resultsOf(patientId);
+            } else if (roll < 65) {
+                return get("GET /patients/{id}/prescriptions", "/patients/" + patientId + "/prescriptions");
+            } else if (roll < 70) {
+                return dashboardOf(patientId);
+            } else if (roll < 80) {
+                return get("GET /messages", "/messages");
+            } else if (roll < 95) {
+                return get("GET /notifications", "/notifications");
+            }
+            return refill(patientId);
+        }
+
+        private Call nextDoctorCall(int roll) {
+            if (roll < 15) {
+                return get("GET /patients/all?limit", "/patients/all?limit=" + PAGE_LIMIT);
+            } else if (roll < 30) {
+                return get("GET /requests?limit", "/requests?limit=" + PAGE_LIMIT);
+            } else if (roll < 40) {
+                return get("GET /notifications", "/notifications");
+            }
+            int patientId = pick(dataset.getPatientIds());
+            if (roll < 50) {
+                return get("GET /patients/{id}", "/patients/" + patientId);
+            } else if (roll < 70) {
+                return testsOf(patientId);
+            } else if (roll < 90) {
+                return resultsOf(patientId);
+            } else if (roll < 95) {
+                return get("GET /patients/{id}/prescriptions", "/patients/" + patientId + "/prescriptions");
+            }
+            return dashboardOf(patientId);
+        }
+
+        private Call nextAdminCall(int roll) {
+            if (roll < 30) {
+                return get("GET /users?limit", "/users?limit=" + PAGE_LIMIT);
+            } else if (roll < 60) {
+                return get("GET /messages/all?limit", "/messages/all?limit=" + PAGE_LIMIT);
+            } else if (roll < 80) {
+                return get("GET /requests?limit", "/requests?limit=" + PAGE_LIMIT);
+            }
+            return get("GET /sync", "/sync");
+        }
+
+        private Call testsOf(int patientId) {
+            return get("GET /patients/{id}/tests", "/patients/" + patientId + "/tests");
+        }
+
+        private Call dashboardOf(int patientId) {
+            return get("GET /patients/{id}/dashboard", "/patients/" + patientId + "/dashboard");
+        }
+
+        private Call resultsOf(int patientId) {
+            int[] tests = dataset.getTests(patientId);
+            if (tests.length == 0) {
+                return testsOf(patientId);
+            }
+            return get("GET /patients/{id}/tests/{id}/results", "/patients/" + patientId + "/tests/" + pick(tests) + "/results");
+        }
+
+        private Call refill(int patientId) {
+            int[] prescriptions = dataset.getPrescriptions(patientId);
+            if (prescriptions.length == 0) {
+                return get("GET /patients/{id}/prescriptions", "/patients/" + patientId + "/prescriptions");
+            }
+            int prescriptionId = pick(prescriptions);
+            HttpRequest request = authorized("/patients/" + patientId + "/prescriptions/" + prescriptionId + "/requests")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"prescriptionId\": " + prescriptionId + "}"))
+                    .build();
+            return new Call("POST /patients/{id}/prescriptions/{id}/requests", request, 201);
+        }
+
+        private Call get(String endpoint, String path) {
+            return new Call(endpoint, authorized(path).GET().build(), 200);
+        }
+
+        private HttpRequest.Builder authorized(String path) {
+            return HttpRequest.newBuilder(uri(path))
+                    .header("Authorization", "Bearer " + token)
+                    .timeout(Duration.ofSeconds(30));
+        }
+
+        private int pick(int[] ids) {
+            return ids[random.nextInt(ids.length)];
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bcb.vetra.loadtest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <strong>Endpoint Latencies</strong>
+ * <br><br>
+ * Latencies recorded by one virtual user, per endpoint. Each virtual user records into its own instance without
+ * locking, and the instances are merged once the run is over to compute the report.
+ */
+class EndpointLatencies {
+    private static final String TOTAL = "TOTAL";
+
+    private final Map<String, Samples> samples = new TreeMap<>();
+
+    /**
+     * Records one request.
+     *
+     * @param endpoint The method and path template, e.g. "GET /patients/{id}/tests".
+     * @param nanos
+     * @param failed   Whether it failed or returned an unexpected status.
+     */
+    void record(String endpoint, long nanos, boolean failed) {
+        samples.computeIfAbsent(endpoint, key -> new Samples()).add(nanos, failed);
+    }
+
+    /**
+     * Adds the latencies of another virtual user to these.
+     *
+     * @param other
+     */
+    void merge(EndpointLatencies other) {
+        other.samples.forEach((endpoint, otherSamples) -> samples.computeIfAbsent(endpoint, key -> new Samples()).addAll(otherSamples));
+    }
+
+    /**
+     * Checks whether any request was recorded.
+     *
+     * @return boolean
+     */
+    boolean hasRequests() {
+        return !samples.isEmpty();
+    }
+
+    /**
+     * Prints requests per second and latency percentiles for every endpoint and for all of them together.
+     *
+     * @param seconds The length of the measured run.
+     * @param out
+     */
+    void printReport(double seconds, PrintWriter out) {
+        out.printf("%-58s %9s %7s %9s %9s %9s %9s %9s%n", "Endpoint", "Requests", "Errors", "RPS", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        Samples total = new Samples();
+        for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+            printRow(entry.getKey(), entry.getValue(), seconds, out);
+            total.addAll(entry.getValue());
+        }
+        printRow(TOTAL, total, seconds, out);
+        out.flush();
+    }
+
+    /**
+     * Writes the same figures as printReport as CSV, for comparing runs.
+     *
+     * @param seconds
+     * @param file
+     * @throws IOException
+     */
+    void writeCsv(double seconds, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("endpoint,requests,errors,rps,p50_ms,p90_ms,p99_ms,max_ms");
+            Samples total = new Samples();
+            for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+                writeCsvRow(entry.getKey(), entry.getValue(), seconds, out);
+                total.addAll(entry.getValue());
+            }
+            writeCsvRow(TOTAL, total, seconds, out);
+        }
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void printRow(String endpoint, Samples row, double seconds, PrintWriter out) {
+        long[] sorted = row.sorted();
+        out.printf("%-58s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", endpoint, row.count, row.errors, row.count / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+    }
+
+    private void writeCsvRow(String endpoint, Samples row, double seconds, PrintWriter out) {
+        long[] sorted = row.sorted();
+        out.printf("\"%s\",%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f%n", endpoint, row.count, row.errors, row.count / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+    }
+
+    /**
+     * Gets a percentile in milliseconds by the nearest-rank method.
+     */
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1_000_000.0;
+    }
+
+    private static class Samples {
+        private long[] nanos = new long[1024];
+        private int count;
+        private int errors;
+
+        void add(long value, boolean failed) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = value;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            if (count + other.count > nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.max(nanos.length * 2, count + other.count));
+            }
+            System.arraycopy(other.nanos, 0, nanos, count, other.count);
+            count += other.count;
+            errors += other.errors;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(nanos, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
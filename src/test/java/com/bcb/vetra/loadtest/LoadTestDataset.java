@@ -0,0 +1,180 @@
+package com.bcb.vetra.loadtest;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Load Test Dataset</strong>
+ * <br><br>
+ * Seeds an empty database for ApiLoadTest and indexes what it created, so virtual users only request records they are
+ * allowed to see. Every table is filled with a single set-based INSERT ... SELECT over generate_series, so seeding a
+ * large clinic takes seconds, and the same scale always produces the same rows.
+ * <br><br>
+ * Users are named <i>owner1..n</i>, <i>doctor1..n</i> and <i>admin1..n</i> and share one password.
+ */
+class LoadTestDataset {
+    static final String PASSWORD = "loadtest";
+
+    final int owners;
+    final int doctors;
+    final int admins;
+    final int patientsPerOwner;
+    final int testsPerPatient;
+    final int resultsPerTest;
+    final int prescriptionsPerPatient;
+    final int requestsPerPrescription;
+    final int messagesPerPatient;
+
+    private final Map<String, int[]> patientsByOwner = new HashMap<>();
+    private final Map<Integer, int[]> testsByPatient = new HashMap<>();
+    private final Map<Integer, int[]> prescriptionsByPatient = new HashMap<>();
+    private int[] patientIds = new int[0];
+
+    LoadTestDataset(int owners, int doctors, int admins, int patientsPerOwner, int testsPerPatient, int resultsPerTest,
+                    int prescriptionsPerPatient, int requestsPerPrescription, int messagesPerPatient) {
+        this.owners = owners;
+        this.doctors = doctors;
+        this.admins = admins;
+        this.patientsPerOwner = patientsPerOwner;
+        this.testsPerPatient = testsPerPatient;
+        this.resultsPerTest = resultsPerTest;
+        this.prescriptionsPerPatient = prescriptionsPerPatient;
+        this.requestsPerPrescription = requestsPerPrescription;
+        this.messagesPerPatient = messagesPerPatient;
+    }
+
+    /**
+     * Reads the scale from <i>vetra.loadtest.*</i> system properties.
+     *
+     * @return LoadTestDataset
+     */
+    static LoadTestDataset fromSystemProperties() {
+        return new LoadTestDataset(
+                Integer.getInteger("vetra.loadtest.owners", 2000),
+                Integer.getInteger("vetra.loadtest.doctors", 20),
+                Integer.getInteger("vetra.loadtest.admins", 2),
+                Integer.getInteger("vetra.loadtest.patients-per-owner", 2),
+                Integer.getInteger("vetra.loadtest.tests-per-patient", 5),
+                Integer.getInteger("vetra.loadtest.results-per-test", 6),
+                Integer.getInteger("vetra.loadtest.prescriptions-per-patient", 2),
+                Integer.getInteger("vetra.loadtest.requests-per-prescription", 1),
+                Integer.getInteger("vetra.loadtest.messages-per-patient", 2)
+        );
+    }
+
+    /**
+     * Fills the tables and analyzes them so the planner sees the real row counts.
+     *
+     * @param jdbcTemplate
+     * @param passwordHash The encoded PASSWORD.
+     */
+    void seed(JdbcTemplate jdbcTemplate, String passwordHash) {
+        insertUsers(jdbcTemplate, "owner", "OWNER", owners, passwordHash);
+        insertUsers(jdbcTemplate, "doctor", "DOCTOR", doctors, passwordHash);
+        insertUsers(jdbcTemplate, "admin", "ADMIN", admins, passwordHash);
+
+        jdbcTemplate.update("INSERT INTO patient (first_name, birthday, species, sex, owner_username) " +
+                        "SELECT 'Pet' || p, DATE '2008-01-01' + (p * 37 % 6000), " +
+                        "(ARRAY['Canine', 'Feline', 'Canine', 'Feline', 'Equine'])[p % 5 + 1], " +
+                        "(ARRAY['M', 'CM', 'F', 'SF'])[p % 4 + 1], 'owner' || ((p - 1) % ? + 1) " +
+                        "FROM generate_series(1, ?) p;",
+                owners, owners * patientsPerOwner);
+
+        jdbcTemplate.update("INSERT INTO test (name, time_stamp, patient_id, doctor_username) " +
+                        "SELECT (ARRAY['CBC', 'Chemistry panel', 'Fecal', 'Urinalysis', 'Heartworm'])[(p.patient_id + t) % 5 + 1], " +
+                        "TIMESTAMP '2024-01-01' + ((p.patient_id * 13 + t * 71) % 700) * INTERVAL '1 day', " +
+                        "p.patient_id, 'doctor' || ((p.patient_id + t) % ? + 1) " +
+                        "FROM patient p CROSS JOIN generate_series(1, ?) t;",
+                doctors, testsPerPatient);
+
+        jdbcTemplate.update("INSERT INTO result (test_id, result_value, parameter_name, range_low, range_high, unit) " +
+                        "SELECT t.test_id, ((t.test_id * 31 + r * 17) % 120)::text, " +
+                        "(ARRAY['WBC', 'RBC', 'HGB', 'HCT', 'PLT', 'ALT', 'BUN', 'CREA'])[r % 8 + 1], '5', '100', 'U/L' " +
+                        "FROM test t CROSS JOIN generate_series(1, ?) r;",
+                resultsPerTest);
+
+        jdbcTemplate.update("INSERT INTO medication (name, unit) VALUES ('Carprofen', 'tablet'), ('Amoxicillin', 'capsule'), " +
+                "('Apoquel', 'tablet'), ('Gabapentin', 'capsule'), ('Cerenia', 'tablet') ON CONFLICT (name) DO NOTHING;");
+        jdbcTemplate.update("INSERT INTO prescription (quantity, instructions, refills, is_active, patient_id, medication_name, doctor_username) " +
+                        "SELECT 30, 'One by mouth twice daily with food.', 3, n % 4 <> 0, p.patient_id, " +
+                        "(ARRAY['Carprofen', 'Amoxicillin', 'Apoquel', 'Gabapentin', 'Cerenia'])[(p.patient_id + n) % 5 + 1], " +
+                        "'doctor' || ((p.patient_id + n) % ? + 1) " +
+                        "FROM patient p CROSS JOIN generate_series(1, ?) n;",
+                doctors, prescriptionsPerPatient);
+
+        jdbcTemplate.update("INSERT INTO request (prescription_id, status, request_date) " +
+                        "SELECT pr.prescription_id, (ARRAY['PENDING', 'APPROVED', 'DENIED'])[(pr.prescription_id + q) % 3 + 1], " +
+                        "TIMESTAMP '2024-01-01' + ((pr.prescription_id * 7 + q) % 700) * INTERVAL '1 day' " +
+                        "FROM prescription pr CROSS JOIN generate_series(1, ?) q;",
+                requestsPerPrescription);
+
+        jdbcTemplate.update("INSERT INTO message (body, time_stamp, from_username, to_username, patient_id) " +
+                        "SELECT 'Update ' || m || ' on ' || p.first_name || ': results look normal, no follow-up needed.', " +
+                        "TIMESTAMP '2024-01-01' + ((p.patient_id * 11 + m) % 700) * INTERVAL '1 day', " +
+                        "'doctor' || ((p.patient_id + m) % ? + 1), p.owner_username, p.patient_id " +
+                        "FROM patient p CROSS JOIN generate_series(1, ?) m;",
+                doctors, messagesPerPatient);
+
+        // Every message notifies its recipient; two in three have been read.
+        jdbcTemplate.update("INSERT INTO notification (username, patient_id, message_id, is_read, timestamp) " +
+                "SELECT to_username, patient_id, message_id, message_id % 3 <> 0, time_stamp FROM message;");
+
+        jdbcTemplate.execute("ANALYZE;");
+        index(jdbcTemplate);
+    }
+
+    int[] getPatients(String owner) {
+        return patientsByOwner.getOrDefault(owner, new int[0]);
+    }
+
+    int[] getTests(int patientId) {
+        return testsByPatient.getOrDefault(patientId, new int[0]);
+    }
+
+    int[] getPrescriptions(int patientId) {
+        return prescriptionsByPatient.getOrDefault(patientId, new int[0]);
+    }
+
+    int[] getPatientIds() {
+        return patientIds;
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void insertUsers(JdbcTemplate jdbcTemplate, String prefix, String role, int count, String passwordHash) {
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name, email) " +
+                        "SELECT ? || i, ?, initcap(?), 'Number' || i, ? || i || '@example.com' FROM generate_series(1, ?) i;",
+                prefix, passwordHash, prefix, prefix, count);
+        jdbcTemplate.update("INSERT INTO role (username, role) SELECT ? || i, ? FROM generate_series(1, ?) i;",
+                prefix, role, count);
+    }
+
+    private void index(JdbcTemplate jdbcTemplate) {
+        Map<String, List<Integer>> patients = new HashMap<>();
+        jdbcTemplate.query("SELECT owner_username, patient_id FROM patient ORDER BY patient_id;", (RowCallbackHandler) resultSet ->
+                patients.computeIfAbsent(resultSet.getString("owner_username"), key -> new ArrayList<>()).add(resultSet.getInt("patient_id")));
+        patients.forEach((owner, ids) -> patientsByOwner.put(owner, toArray(ids)));
+        patientIds = jdbcTemplate.queryForList("SELECT patient_id FROM patient ORDER BY patient_id;", Integer.class)
+                .stream().mapToInt(Integer::intValue).toArray();
+        indexChildren(jdbcTemplate, "SELECT patient_id, test_id AS id FROM test ORDER BY test_id;", testsByPatient);
+        indexChildren(jdbcTemplate, "SELECT patient_id, prescription_id AS id FROM prescription ORDER BY prescription_id;", prescriptionsByPatient);
+    }
+
+    private void indexChildren(JdbcTemplate jdbcTemplate, String sql, Map<Integer, int[]> index) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) resultSet ->
+                children.computeIfAbsent(resultSet.getInt("patient_id"), key -> new ArrayList<>()).add(resultSet.getInt("id")));
+        children.forEach((patientId, ids) -> index.put(patientId, toArray(ids)));
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
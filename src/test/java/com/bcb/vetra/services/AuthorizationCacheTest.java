@@ -0,0 +1,64 @@
+package com.bcb.vetra.services;
+
+import com.bcb.vetra.viewmodels.PatientAccess;
+import eu.fraho.spring.securityJwt.base.config.TokenProperties;
+import eu.fraho.spring.securityJwt.base.dto.TimeWithPeriod;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthorizationCacheTest {
+    private static final Duration TOKEN_EXPIRATION = Duration.ofSeconds(1);
+
+    private final AuthorizationCache cache = new AuthorizationCache(30, 100, tokenProperties());
+
+    @Test
+    void patientAccessLoadedTogetherIsCached() {
+        cache.loadPatientAccess(1, "owner", () -> new PatientAccess(List.of("OWNER"), true));
+
+        assertEquals(List.of("OWNER"), cache.peekRoles("owner"));
+        assertTrue(cache.isOwner(1, "owner", () -> fail("The ownership answer was not cached.")));
+    }
+
+    @Test
+    void patientAccessInvalidatedWhileLoadingIsNotCached() {
+        cache.loadPatientAccess(1, "owner", () -> {
+            // The user's roles change while the query runs, after it read them.
+            cache.invalidateUser("owner");
+            return new PatientAccess(List.of("OWNER", "ADMIN"), true);
+        });
+
+        assertNull(cache.peekRoles("owner"));
+        AtomicInteger loads = new AtomicInteger();
+        assertFalse(cache.isOwner(1, "owner", () -> {
+            loads.incrementAndGet();
+            return false;
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void tokenRolesAreDistrustedForTheTokenExpirationAfterARoleChange() throws InterruptedException {
+        assertTrue(cache.areTokenRolesTrusted("owner"));
+        cache.invalidateUser("owner");
+        assertFalse(cache.areTokenRolesTrusted("owner"));
+
+        Thread.sleep(TOKEN_EXPIRATION.toMillis() + 50);
+        assertTrue(cache.areTokenRolesTrusted("owner"), "Every token issued before the change has expired.");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static TokenProperties tokenProperties() {
+        TokenProperties tokenProperties = new TokenProperties();
+        tokenProperties.setExpiration(new TimeWithPeriod((int) TOKEN_EXPIRATION.toSeconds(), ChronoUnit.SECONDS));
+        return tokenProperties;
+    }
+}
@@ -0,0 +1,103 @@
+package com.bcb.vetra.services;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import com.bcb.vetra.daos.NotificationDao;
+import com.bcb.vetra.models.Notification;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Creates notifications through NotificationDao for a user with an open stream, and checks through the
+ * <i>vetra.notifications.pushed</i> counter whether NotificationHub pushed them.
+ */
+@SpringBootTest
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+class NotificationHubTest {
+    private static final String USERNAME = "hubowner";
+
+    @Autowired
+    private NotificationHub notificationHub;
+    @Autowired
+    private NotificationDao notificationDao;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("vetra.sync.sources", () -> "none");
+    }
+
+    @BeforeEach
+    void subscribe() {
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Hub', 'Owner') " +
+                "ON CONFLICT DO NOTHING;", USERNAME);
+        notificationHub.subscribe(USERNAME, List::of);
+    }
+
+    @Test
+    void notificationsAreNotPushedWhenTheirTransactionRollsBack() {
+        double before = pushed();
+        int stored = storedCount();
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            notificationDao.create(notification());
+            throw new IllegalStateException("Rolled back after the notification was created.");
+        }));
+
+        assertEquals(stored, storedCount(), "The notification was rolled back.");
+        assertEquals(before, pushed());
+    }
+
+    @Test
+    void notificationsArePushedOnlyOnceTheirTransactionCommits() {
+        double before = pushed();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            notificationDao.create(notification());
+            assertEquals(before, pushed(), "Nothing is pushed before the commit.");
+        });
+
+        assertEquals(before + 1, pushed());
+    }
+
+    @Test
+    void notificationsCreatedOutsideATransactionArePushedAtOnce() {
+        double before = pushed();
+
+        notificationDao.create(notification());
+
+        assertEquals(before + 1, pushed());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private double pushed() {
+        return meterRegistry.get("vetra.notifications.pushed").counter().count();
+    }
+
+    private int storedCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification WHERE username = ?;", Integer.class, USERNAME);
+    }
+
+    private static Notification notification() {
+        return new Notification(USERNAME, 0, 0, 0, 0, false);
+    }
+}
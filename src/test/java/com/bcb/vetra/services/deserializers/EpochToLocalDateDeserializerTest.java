@@ -0,0 +1,103 @@
+package com.bcb.vetra.services.deserializers;
+
+import com.bcb.vetra.models.Patient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EpochToLocalDateDeserializerTest {
+    private static final LocalDate DATE = LocalDate.of(2022, 1, 8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsEpochDaysAsNumbersAndStrings() throws JsonProcessingException {
+        assertEquals(DATE, birthday(Long.toString(DATE.toEpochDay())));
+        assertEquals(DATE, birthday("\"" + DATE.toEpochDay() + "\""));
+        assertEquals(LocalDate.of(1969, 12, 31), birthday("\"-1\""));
+        assertEquals(LocalDate.of(1969, 12, 31), birthday("-1"));
+    }
+
+    @Test
+    void readsIsoDates() throws JsonProcessingException {
+        assertEquals(DATE, birthday("\"2022-01-08\""));
+        assertEquals(LocalDate.of(2024, 2, 29), birthday("\"2024-02-29\""));
+    }
+
+    @Test
+    void invalidDatesAreNull() throws JsonProcessingException {
+        assertNull(birthday("\"2021-02-30\""));
+        assertNull(birthday("\"2023-02-29\""));
+        assertNull(birthday("\"20210-1-01\""));
+        assertNull(birthday("\"2021-13-01\""));
+        assertNull(birthday("\"2021-00-10\""));
+        assertNull(birthday("\"2021-06-00\""));
+        assertNull(birthday("\"-021-06-15\""));
+        assertNull(birthday("\"2021-+6-15\""));
+        assertNull(birthday("\"2021/06/15\""));
+        assertNull(birthday("\"not-a-date\""));
+        assertNull(birthday("\"\""));
+        assertNull(birthday("\"-\""));
+    }
+
+    @Test
+    void epochDaysOutOfRangeAreNull() throws JsonProcessingException {
+        long max = LocalDate.MAX.toEpochDay();
+        long min = LocalDate.MIN.toEpochDay();
+        assertEquals(LocalDate.MAX, birthday(Long.toString(max)));
+        assertNull(birthday(Long.toString(max + 1)));
+        assertNull(birthday(Long.toString(min - 1)));
+        assertNull(birthday("\"" + (max + 1) + "\""));
+        assertNull(birthday(Long.toString(Long.MAX_VALUE)));
+        assertNull(birthday(Long.toString(Long.MIN_VALUE)));
+    }
+
+    @Test
+    void bigIntegersAndLongDigitStringsAreNull() throws JsonProcessingException {
+        assertNull(birthday("123456789012345678901234567890"));
+        assertNull(birthday("\"123456789012345678901234567890\""));
+        assertNull(birthday("\"1234567890123456789\""));
+    }
+
+    @Test
+    void otherScalarsAreNull() throws JsonProcessingException {
+        assertNull(birthday("19000.5"));
+        assertNull(birthday("true"));
+        assertNull(birthday("null"));
+    }
+
+    @Test
+    void objectsAndArraysAreSkippedAndTheFieldsAfterThemRead() throws JsonProcessingException {
+        Patient fromObject = objectMapper.readValue(
+                "{\"date_of_birth\":{\"date\":\"2022-01-08\",\"nested\":[1,{\"name\":\"Wrong\"}]},\"name\":\"Rex\",\"sex_id\":1}",
+                Patient.class);
+        assertNull(fromObject.getBirthday());
+        assertEquals("Rex", fromObject.getName());
+        assertEquals("M", fromObject.getSex());
+
+        Patient fromArray = objectMapper.readValue(
+                "{\"date_of_birth\":[19000,{\"name\":\"Wrong\"}],\"name\":\"Rex\",\"sex_id\":1}", Patient.class);
+        assertNull(fromArray.getBirthday());
+        assertEquals("Rex", fromArray.getName());
+        assertEquals("M", fromArray.getSex());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Reads a patient whose date of birth is the given JSON, with fields before and after it so the value is read
+     * from the middle of the parser's buffer.
+     */
+    private LocalDate birthday(String json) throws JsonProcessingException {
+        Patient patient = objectMapper.readValue(
+                "{\"name\":\"Rex\",\"date_of_birth\":" + json + ",\"species_id\":1}", Patient.class);
+        assertEquals("Canine", patient.getSpecies(), "The field after the date is read.");
+        return patient.getBirthday();
+    }
+}
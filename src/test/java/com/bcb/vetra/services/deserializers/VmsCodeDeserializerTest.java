@@ -0,0 +1,88 @@
+package com.bcb.vetra.services.deserializers;
+
+import com.bcb.vetra.models.Patient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VmsCodeDeserializerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsCodesAsNumbersAndNumericStrings() throws JsonProcessingException {
+        assertEquals("Feline", species("2"));
+        assertEquals("Feline", species("\"2\""));
+        assertEquals("Fish", species("15"));
+        assertEquals("Fish", species("\"15\""));
+        assertEquals("SF", sex("4"));
+        assertEquals("SF", sex("\"4\""));
+    }
+
+    @Test
+    void unknownCodesFallBackToTheUnknownValue() throws JsonProcessingException {
+        assertEquals("Other", species("99"));
+        assertEquals("Other", species("\"99\""));
+        assertEquals("Other", species("0"));
+        assertEquals("Other", species("-1"));
+        assertEquals("Other", species("100000"));
+        assertEquals("?", sex("5"));
+        assertEquals("?", sex("\"123456789012345678\""));
+    }
+
+    @Test
+    void valuesSentByNameAreKept() throws JsonProcessingException {
+        assertEquals("Canine", species("\"Canine\""));
+        assertEquals("CM", sex("\"CM\""));
+        assertEquals("", species("\"\""));
+        assertEquals("2a", species("\"2a\""));
+        assertEquals("-", species("\"-\""));
+    }
+
+    @Test
+    void otherScalarsAreKeptAsText() throws JsonProcessingException {
+        assertEquals("123456789012345678901234567890", species("123456789012345678901234567890"));
+        assertEquals("1234567890123456789", species("\"1234567890123456789\""));
+        assertEquals("2.5", species("2.5"));
+        assertEquals("true", species("true"));
+        assertNull(species("null"));
+    }
+
+    @Test
+    void objectsAndArraysAreSkippedAndTheFieldsAfterThemRead() throws JsonProcessingException {
+        Patient fromObject = objectMapper.readValue(
+                "{\"species_id\":{\"id\":2,\"name\":\"Wrong\",\"sex_id\":[3]},\"sex_id\":1,\"name\":\"Rex\"}", Patient.class);
+        assertNull(fromObject.getSpecies());
+        assertEquals("M", fromObject.getSex());
+        assertEquals("Rex", fromObject.getName());
+
+        Patient fromArray = objectMapper.readValue(
+                "{\"sex_id\":[3,{\"name\":\"Wrong\"}],\"species_id\":2,\"name\":\"Rex\"}", Patient.class);
+        assertNull(fromArray.getSex());
+        assertEquals("Feline", fromArray.getSpecies());
+        assertEquals("Rex", fromArray.getName());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Reads a patient whose species is the given JSON, with fields before and after it so the value is read from the
+     * middle of the parser's buffer.
+     */
+    private String species(String json) throws JsonProcessingException {
+        Patient patient = objectMapper.readValue(
+                "{\"name\":\"Rex\",\"species_id\":" + json + ",\"sex_id\":3}", Patient.class);
+        assertEquals("F", patient.getSex(), "The field after the species is read.");
+        return patient.getSpecies();
+    }
+
+    private String sex(String json) throws JsonProcessingException {
+        Patient patient = objectMapper.readValue(
+                "{\"name\":\"Rex\",\"sex_id\":" + json + ",\"species_id\":1}", Patient.class);
+        assertEquals("Canine", patient.getSpecies(), "The field after the sex is read.");
+        return patient.getSex();
+    }
+}
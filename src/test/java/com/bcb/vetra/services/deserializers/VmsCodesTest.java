@@ -0,0 +1,90 @@
+package com.bcb.vetra.services.deserializers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The tables are static, so these tests add codes for a VMS of their own, or put back the defaults they override.
+ */
+class VmsCodesTest {
+
+    @Test
+    void defaultsAreReadFromTheClasspath() {
+        assertEquals("Canine", VmsCodes.table("ezyvet", "species").valueOf(1));
+        assertEquals("Other", VmsCodes.table("EzyVet", "Species").getUnknown());
+        assertEquals("?", VmsCodes.table("ezyvet", "sex").valueOf(99));
+    }
+
+    @Test
+    void unconfiguredTablesAreEmpty() {
+        VmsCodeTable table = VmsCodes.table("novms", "species");
+        assertNull(table.valueOf(1));
+        assertNull(table.getUnknown());
+    }
+
+    @Test
+    void addAllOverridesConfiguredCodesAndKeepsTheRest() {
+        VmsCodes.addAll(properties(
+                "overridevms.species.1", "Canine",
+                "overridevms.species.2", "Feline",
+                "overridevms.species.5000", "Alpaca",
+                "overridevms.species.unknown", "Other"));
+        VmsCodes.addAll(properties(
+                "overridevms.species.2", "Cat",
+                "overridevms.species.5000", "Llama",
+                "overridevms.species.unknown", "Exotic"));
+
+        VmsCodeTable table = VmsCodes.table("overridevms", "species");
+        assertEquals("Canine", table.valueOf(1));
+        assertEquals("Cat", table.valueOf(2));
+        assertEquals("Llama", table.valueOf(5000));
+        assertEquals("Exotic", table.valueOf(3));
+        assertEquals("Exotic", table.getUnknown());
+        assertEquals("Canine", VmsCodes.table("ezyvet", "species").valueOf(1), "Other VMSs are unchanged.");
+    }
+
+    @Test
+    void addAllOverridesDefaultsWhoseKeysDifferInCase() {
+        VmsCodeTable defaults = VmsCodes.table("ezyvet", "species");
+        try {
+            VmsCodes.addAll(properties("EzyVet.Species.2", "Cat", "EZYVET.SPECIES.UNKNOWN", "Exotic"));
+
+            VmsCodeTable table = VmsCodes.table("ezyvet", "species");
+            assertEquals("Cat", table.valueOf(2));
+            assertEquals("Exotic", table.valueOf(99));
+            assertEquals("Canine", table.valueOf(1));
+        } finally {
+            VmsCodes.addAll(properties("ezyvet.species.2", defaults.valueOf(2), "ezyvet.species.unknown", defaults.getUnknown()));
+        }
+    }
+
+    @Test
+    void addAllRejectsMalformedKeysAndKeepsTheTables() {
+        VmsCodes.addAll(properties("rejectvms.sex.1", "M"));
+
+        assertThrows(IllegalArgumentException.class, () -> VmsCodes.addAll(properties("rejectvms", "M")));
+        assertThrows(IllegalArgumentException.class, () -> VmsCodes.addAll(properties("rejectvms.sex", "M")));
+        assertThrows(IllegalArgumentException.class, () -> VmsCodes.addAll(properties(".sex", "M")));
+        assertThrows(IllegalArgumentException.class, () -> VmsCodes.addAll(properties("rejectvms.sex.one", "M")));
+        assertThrows(IllegalArgumentException.class, () -> VmsCodes.addAll(properties("rejectvms.sex.", "M")));
+        assertThrows(IllegalArgumentException.class,
+                () -> VmsCodes.addAll(properties("rejectvms.sex.1", "F", "rejectvms.sex.1x", "F")));
+
+        assertEquals("M", VmsCodes.table("rejectvms", "sex").valueOf(1), "A rejected set adds nothing.");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private static Properties properties(String... keysAndValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
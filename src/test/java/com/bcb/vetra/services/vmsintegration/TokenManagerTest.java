@@ -0,0 +1,113 @@
+package com.bcb.vetra.services.vmsintegration;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenManagerTest {
+    private static final Duration MARGIN = Duration.ofMinutes(2);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void concurrentCallersShareOneRefresh() throws Exception {
+        CountingTokenManager tokenManager = new CountingTokenManager(Duration.ofHours(1), Duration.ofMillis(200));
+        int callers = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                tokens.add(executor.submit(() -> {
+                    start.await();
+                    return tokenManager.getAccessToken().block(TIMEOUT);
+                }));
+            }
+            start.countDown();
+            Set<String> distinct = new HashSet<>();
+            for (Future<String> token : tokens) {
+                distinct.add(token.get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(1, tokenManager.requests.get());
+            assertEquals(Set.of("token-1"), distinct);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tokenExpiringWithinTheMarginIsRefreshedBeforeUse() {
+        CountingTokenManager tokenManager = new CountingTokenManager(MARGIN.minusSeconds(30), Duration.ZERO);
+
+        assertEquals("token-1", tokenManager.getAccessToken().block(TIMEOUT));
+        assertEquals("token-2", tokenManager.getAccessToken().block(TIMEOUT), "A token inside the margin is not handed out.");
+    }
+
+    @Test
+    void invalidateDropsOnlyTheRejectedToken() {
+        CountingTokenManager tokenManager = new CountingTokenManager(Duration.ofHours(1), Duration.ZERO);
+        String first = tokenManager.getAccessToken().block(TIMEOUT);
+
+        tokenManager.invalidate("some-other-token");
+        assertEquals(first, tokenManager.getAccessToken().block(TIMEOUT));
+        assertEquals(1, tokenManager.requests.get());
+
+        tokenManager.invalidate(first);
+        String second = tokenManager.getAccessToken().block(TIMEOUT);
+        assertNotEquals(first, second);
+
+        // A late 401 for the old token must not throw away the one that replaced it.
+        tokenManager.invalidate(first);
+        assertEquals(second, tokenManager.getAccessToken().block(TIMEOUT));
+        assertEquals(2, tokenManager.requests.get());
+    }
+
+    @Test
+    void failedRefreshIsNotCached() {
+        CountingTokenManager tokenManager = new CountingTokenManager(Duration.ofHours(1), Duration.ZERO);
+        tokenManager.failNext.set(1);
+
+        assertThrows(IllegalStateException.class, () -> tokenManager.getAccessToken().block(TIMEOUT));
+        assertEquals("token-2", tokenManager.getAccessToken().block(TIMEOUT), "The next caller starts a new refresh.");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Issues token-1, token-2, ... and counts how often a token was requested.
+     */
+    private static class CountingTokenManager extends TokenManager {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failNext = new AtomicInteger();
+        private final Duration lifetime;
+        private final Duration latency;
+
+        private CountingTokenManager(Duration lifetime, Duration latency) {
+            super(MARGIN);
+            this.lifetime = lifetime;
+            this.latency = latency;
+        }
+
+        @Override
+        protected Mono<IssuedToken> requestToken() {
+            int request = requests.incrementAndGet();
+            if (failNext.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                return Mono.error(new IllegalStateException("Token endpoint is down."));
+            }
+            return Mono.just(new IssuedToken("token-" + request, Instant.now().plus(lifetime)))
+                    .delayElement(latency);
+        }
+    }
+}
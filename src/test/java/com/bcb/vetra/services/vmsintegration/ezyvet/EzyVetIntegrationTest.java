@@ -0,0 +1,197 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs EzyVetIntegration against a FakeEzyVetServer and an embedded PostgreSQL. Pages are kept small so the keyset
+ * paging crosses page boundaries inside a run of records with the same modified_at.
+ */
+@SpringBootTest
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+class EzyVetIntegrationTest {
+    private static final String DOCTOR = "syncdoctor";
+    private static final long OUT_OF_RANGE_DATE = 10_000_000_000_000L;
+
+    private static FakeEzyVetServer server;
+
+    @Autowired
+    private EzyVetIntegration ezyVetIntegration;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws IOException {
+        server = FakeEzyVetServer.start(7, 4);
+        server.generate(6, 2, 2, 1);
+        registry.add("vetra.ezyvet.base-url", server::getBaseUrl);
+        registry.add("vetra.ezyvet.default-doctor", () -> DOCTOR);
+        registry.add("vetra.ezyvet.page-size", () -> "5");
+        registry.add("vetra.sync.sources", () -> "none");
+        registry.add("vetra.ezyvet.governor.capacity", () -> "1000000");
+        registry.add("vetra.ezyvet.governor.permits-per-second", () -> "1000000");
+    }
+
+    @BeforeAll
+    static void firstSync(@Autowired JdbcTemplate jdbcTemplate, @Autowired EzyVetIntegration ezyVetIntegration) {
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Sync', 'Doctor');", DOCTOR);
+        assertEquals(1, ezyVetIntegration.updateDB());
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    @Test
+    void customersAddedAfterTheFirstSyncAreImportedWithTheirRecords() {
+        server.generate(2, 2, 2, 1);
+
+        assertEquals(1, ezyVetIntegration.updateDB());
+        assertEverythingImported();
+    }
+
+    @Test
+    void recordsOfAnAnimalThatIsNotAPatientYetAreParkedUntilItIs() {
+        server.generate(1, 1, 2, 1);
+        List<String> contactIds = server.ids("/contact");
+        String contactId = contactIds.get(contactIds.size() - 1);
+        server.set("/contact", contactId, "is_customer", "0");
+
+        ezyVetIntegration.updateDB();
+        assertEquals(3, parkedCount(), "The animal's two results and one prescription item wait for it.");
+
+        server.set("/contact", contactId, "is_customer", "1");
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+    }
+
+    @Test
+    void recordsModifiedTogetherAcrossPagesAreAllImported() {
+        Set<String> touched = server.touch("/diagnosticresult", 12);
+        jdbcTemplate.update("DELETE FROM test WHERE test_id IN (SELECT test_id FROM test_vms WHERE vms_name = 'ezyvet' AND vms_id = ANY(?));",
+                (Object) touched.toArray(new String[0]));
+
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+    }
+
+    @Test
+    void valuesLongerThanTheirColumnAreCut() {
+        server.generate(1, 1, 1, 1);
+        String animalId = last(server.ids("/animal"));
+        String resultId = last(server.ids("/diagnosticresult"));
+        String itemId = last(server.ids("/prescriptionitem"));
+        server.set("/animal", animalId, "name", "Sir Reginald Fluffington the Third");
+        server.set("/diagnosticresult", resultId, "name", "Complete blood count with differential and reticulocytes");
+        server.set("/prescriptionitem", itemId, "product_name", "Amoxicillin and clavulanate potassium 250 mg chewable tablets");
+
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+        assertEquals("Sir Reginald Fluffin", jdbcTemplate.queryForObject(
+                "SELECT first_name FROM patient JOIN patient_vms USING (patient_id) WHERE vms_id = ?;", String.class, animalId));
+        assertEquals(50, jdbcTemplate.queryForObject(
+                "SELECT LENGTH(name) FROM test JOIN test_vms USING (test_id) WHERE vms_id = ?;", Integer.class, resultId));
+    }
+
+    @Test
+    void rowThatBreaksAConstraintIsParkedWithoutHoldingBackItsPage() {
+        server.addDiagnosticResults(4);
+        List<String> resultIds = server.ids("/diagnosticresult");
+        String badId = resultIds.get(resultIds.size() - 4);
+        server.set("/diagnosticresult", badId, "date", OUT_OF_RANGE_DATE);
+
+        ezyVetIntegration.updateDB();
+        assertEquals(List.of(badId), jdbcTemplate.queryForList("SELECT vms_id FROM sync_retry;", String.class));
+        assertEquals(server.size("/diagnosticresult") - 1, importedCount("test_vms"), "The rest of its page is imported.");
+
+        server.set("/diagnosticresult", badId, "date", 1_700_000_000L);
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+    }
+
+    @Test
+    void customerWhoseUsernameIsTakenIsNotLinkedToTheExistingAccount() {
+        server.generate(1, 1, 1, 0);
+        String contactId = last(server.ids("/contact"));
+        String takenUsername = "Owner" + contactId + "Fake" + contactId;
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Existing', 'Account');", takenUsername);
+
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+        assertEquals(takenUsername + "_2", jdbcTemplate.queryForObject(
+                "SELECT username FROM user_vms WHERE vms_name = 'ezyvet' AND vms_id = ?;", String.class, contactId));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_vms WHERE username = ?;", Integer.class, takenUsername));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM patient WHERE owner_username = ?;", Integer.class, takenUsername));
+    }
+
+    @Test
+    void customerWithNoFreeUsernameIsParkedUntilOneIsFree() {
+        server.generate(1, 1, 1, 0);
+        String contactId = last(server.ids("/contact"));
+        String username = "Owner" + contactId + "Fake" + contactId;
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Existing', 'Account');", username);
+        for (int suffix = 2; suffix <= 99; suffix++) {
+            jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Existing', 'Account');",
+                    username + "_" + suffix);
+        }
+
+        ezyVetIntegration.updateDB();
+        assertEquals(List.of(contactId), jdbcTemplate.queryForList("SELECT vms_id FROM sync_retry WHERE entity = 'contact';", String.class));
+
+        jdbcTemplate.update("DELETE FROM \"user\" WHERE username = ?;", username + "_50");
+        ezyVetIntegration.updateDB();
+        assertEverythingImported();
+        assertEquals(username + "_50", jdbcTemplate.queryForObject(
+                "SELECT username FROM user_vms WHERE vms_name = 'ezyvet' AND vms_id = ?;", String.class, contactId));
+    }
+
+    @Test
+    void ownerImportThatFailsFailsTheSync() {
+        // A Retry-After past the governor's maximum fails the call instead of waiting.
+        server.throttleNext(1, 3600);
+
+        assertThrows(WebClientResponseException.TooManyRequests.class, () -> ezyVetIntegration.updateDB());
+        assertEquals(1, ezyVetIntegration.updateDB());
+        assertEverythingImported();
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void assertEverythingImported() {
+        assertEquals(server.size("/diagnosticresult"), importedCount("test_vms"));
+        assertEquals(server.size("/prescriptionitem"), importedCount("prescription_vms"));
+        assertEquals(0, parkedCount());
+    }
+
+    private int importedCount(String linkTable) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + linkTable + " WHERE vms_name = 'ezyvet';", Integer.class);
+    }
+
+    private int parkedCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sync_retry;", Integer.class);
+    }
+
+    private String last(List<String> ids) {
+        return ids.get(ids.size() - 1);
+    }
+}
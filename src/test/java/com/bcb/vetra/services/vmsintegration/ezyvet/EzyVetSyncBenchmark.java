@@ -0,0 +1,122 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.EmbeddedPostgresInitializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <strong>ezyVet Sync Benchmark</strong>
+ * <br><br>
+ * Runs a full and then an incremental ezyVet sync against a FakeEzyVetServer and reports records/sec for each. Only
+ * runs with <i>-Dvetra.benchmark=true</i>. The sync writes to the embedded PostgreSQL of EmbeddedPostgresInitializer:
+ * <pre>
+ * mvn test -Dtest=EzyVetSyncBenchmark -Dvetra.benchmark=true
+ * </pre>
+ * The dataset and fake server can be sized with <i>vetra.benchmark.contacts</i>, <i>animals-per-contact</i>,
+ * <i>results-per-animal</i>, <i>prescriptions-per-animal</i>, <i>latency-ms</i> and <i>seed</i>, and the sync itself
+ * with the usual <i>vetra.ezyvet.*</i> properties. With <i>vetra.test.embedded-db=false</i> the configured
+ * <i>spring.datasource.url</i> is used instead, which must point at an empty database.
+ */
+@SpringBootTest
+@ContextConfiguration(initializers = EmbeddedPostgresInitializer.class)
+@EnabledIfSystemProperty(named = "vetra.benchmark", matches = "true")
+class EzyVetSyncBenchmark {
+    private static final String DOCTOR = "benchdoctor";
+    private static final int CONTACTS = Integer.getInteger("vetra.benchmark.contacts", 200);
+    private static final int ANIMALS_PER_CONTACT = Integer.getInteger("vetra.benchmark.animals-per-contact", 2);
+    private static final int RESULTS_PER_ANIMAL = Integer.getInteger("vetra.benchmark.results-per-animal", 5);
+    private static final int PRESCRIPTIONS_PER_ANIMAL = Integer.getInteger("vetra.benchmark.prescriptions-per-animal", 2);
+    private static final int LATENCY_MS = Integer.getInteger("vetra.benchmark.latency-ms", 20);
+    private static final long SEED = Long.getLong("vetra.benchmark.seed", 42L);
+
+    private static FakeEzyVetServer server;
+
+    @Autowired
+    private EzyVetIntegration ezyVetIntegration;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void ezyVetProperties(DynamicPropertyRegistry registry) throws IOException {
+        server = FakeEzyVetServer.start(SEED, 16);
+        server.generate(CONTACTS, ANIMALS_PER_CONTACT, RESULTS_PER_ANIMAL, PRESCRIPTIONS_PER_ANIMAL);
+        server.setLatency(Duration.ofMillis(LATENCY_MS));
+
+        registry.add("vetra.ezyvet.base-url", server::getBaseUrl);
+        registry.add("vetra.ezyvet.default-doctor", () -> DOCTOR);
+        // The sync is run by the benchmark, not the scheduler.
+        registry.add("vetra.sync.sources", () -> "none");
+        // The fake has no rate limit, so the governor should not add one.
+        registry.add("vetra.ezyvet.governor.capacity", () -> "1000000");
+        registry.add("vetra.ezyvet.governor.permits-per-second", () -> "1000000");
+    }
+
+    @BeforeAll
+    static void createDoctor(@Autowired JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("INSERT INTO \"user\" (username, password, first_name, last_name) VALUES (?, 'x', 'Bench', 'Doctor') " +
+                "ON CONFLICT (username) DO NOTHING;", DOCTOR);
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    @Test
+    void fullAndIncrementalSync() {
+        System.out.printf("Dataset: %d contacts, %d animals, %d diagnostic results, %d prescription items, %d ms latency%n",
+                server.size("/contact"), server.size("/animal"), server.size("/diagnosticresult"),
+                server.size("/prescriptionitem"), LATENCY_MS);
+
+        measure("full");
+
+        int changed = Math.max(1, server.size("/diagnosticresult") / 100);
+        server.touch("/diagnosticresult", changed);
+        server.touch("/prescriptionitem", Math.max(1, server.size("/prescriptionitem") / 100));
+        server.addDiagnosticResults(changed);
+        measure("incremental");
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Runs one sync and prints the records read from the fake per second, with the requests and rows it took.
+     */
+    private void measure(String name) {
+        long recordsBefore = server.getRecordsServed();
+        long requestsBefore = server.getRequestCount();
+        long rowsBefore = countImportedRows();
+
+        long start = System.nanoTime();
+        assertEquals(1, ezyVetIntegration.updateDB());
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        long records = server.getRecordsServed() - recordsBefore;
+        System.out.printf("%s sync: %d records in %.2f s = %.0f records/sec (%d requests, %d new rows)%n",
+                name, records, seconds, records / seconds, server.getRequestCount() - requestsBefore,
+                countImportedRows() - rowsBefore);
+    }
+
+    private long countImportedRows() {
+        Long rows = jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM \"user\") + (SELECT COUNT(*) FROM patient) + (SELECT COUNT(*) FROM test) + " +
+                        "(SELECT COUNT(*) FROM result) + (SELECT COUNT(*) FROM prescription);",
+                Long.class);
+        return rows == null ? 0 : rows;
+    }
+}
@@ -0,0 +1,110 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.bcb.vetra.services.vmsintegration.governor.GovernorSettings;
+import com.bcb.vetra.services.vmsintegration.governor.OutboundCallGovernor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs EzyVetTokenManager against a FakeEzyVetServer that revokes its tokens, the way EzyVetIntegration uses it: a
+ * call rejected with a 401 invalidates its token and is sent once more with a new one.
+ */
+class EzyVetTokenManagerTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private FakeEzyVetServer server;
+    private EzyVetTokenManager tokenManager;
+    private final WebClient webClient = WebClient.create();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = FakeEzyVetServer.start(42, 8);
+        server.generate(3, 1, 0, 0);
+        OutboundCallGovernor governor = new OutboundCallGovernor("ezyvet", new GovernorSettings(), new SimpleMeterRegistry());
+        tokenManager = new EzyVetTokenManager(WebClient.builder(), governor, Duration.ofMinutes(2), TIMEOUT,
+                server.getBaseUrl(), "partner", "client", "secret", "client_credentials", "read-contact");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void concurrentCallsRejectedWithTheSameTokenRefreshItOnce() throws Exception {
+        String revoked = tokenManager.getAccessToken().block(TIMEOUT);
+        server.revokeTokens();
+
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                bodies.add(executor.submit(() -> {
+                    start.await();
+                    return getWithReauthentication().block(TIMEOUT);
+                }));
+            }
+            start.countDown();
+            for (Future<String> body : bodies) {
+                assertNotNull(body.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, server.getTokensIssued(), "One token at the start and one refresh for all rejected calls.");
+        assertTrue(server.getUnauthorizedCount() >= 1, "Callers that started after the refresh already had the new token.");
+        assertNotEquals(revoked, tokenManager.getAccessToken().block(TIMEOUT));
+    }
+
+    @Test
+    void tokenIsRefreshedBeforeItExpires() {
+        server.setTokenLifetime(Duration.ofSeconds(60));
+        String first = tokenManager.getAccessToken().block(TIMEOUT);
+
+        // 60 s is inside the two minute margin, so the token is replaced instead of being sent.
+        String second = tokenManager.getAccessToken().block(TIMEOUT);
+        assertNotEquals(first, second);
+        assertEquals(2, server.getTokensIssued());
+        assertEquals(0, server.getUnauthorizedCount());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    /**
+     * Sends a GET request and retries it once with a new token after a 401, like EzyVetIntegration.
+     */
+    private Mono<String> getWithReauthentication() {
+        return tokenManager.getAccessToken()
+                .flatMap(accessToken -> getContacts(accessToken)
+                        .onErrorResume(WebClientResponseException.Unauthorized.class, e -> {
+                            tokenManager.invalidate(accessToken);
+                            return tokenManager.getAccessToken().flatMap(this::getContacts);
+                        }));
+    }
+
+    private Mono<String> getContacts(String accessToken) {
+        return webClient.get()
+                .uri(server.getBaseUrl() + "/contact?limit=10&page=1")
+                .header("authorization", "Bearer " + accessToken)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+}
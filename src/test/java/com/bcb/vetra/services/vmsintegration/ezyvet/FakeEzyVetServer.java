@@ -0,0 +1,589 @@
+package com.bcb.vetra.services.vmsintegration.ezyvet;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * <strong>Fake ezyVet Server</strong>
+ * <br><br>
+ * In-process stand-in for the parts of the ezyVet v1 API used by EzyVetIntegration, so a sync can be run and measured
+ * without the trial API. Runs on the JDK HttpServer on a random local port; point <i>vetra.ezyvet.base-url</i> at
+ * {@link #getBaseUrl()}.
+ * <br><br>
+ * Serves <i>/oauth/access_token</i> and the list endpoints <i>/contact</i>, <i>/animal</i>, <i>/diagnosticresult</i>,
+ * <i>/diagnosticresultitem</i>, <i>/prescription</i> and <i>/prescriptionitem</i> with ezyVet paging (limit, page and
+ * the meta block), equality filters, JSON filters (gt, gte, lt, lte, in) and sort_by/sort_dir.
+ * <br><br>
+ * Latency, 401s (the token is revoked, as if it expired) and 429s can be injected. Data is synthetic and generated
+ * from a seed, and records should only be added or touched while no sync is running.
+ */
+public class FakeEzyVetServer implements AutoCloseable {
+    private static final String API_PREFIX = "/v1";
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final long START_EPOCH = 1_500_000_000L;
+    private static final String[] TEST_NAMES = {"CBC", "Chemistry", "Fecal", "Urinalysis", "Heartworm"};
+    private static final String[] PARAMETERS = {"WBC", "RBC", "Hemoglobin", "Hematocrit", "MCV", "Platelets"};
+    private static final String[] PRODUCTS = {"Carprofen 75mg", "Amoxicillin 250mg", "Gabapentin 100mg", "Apoquel 16mg"};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private final Set<String> validTokens = ConcurrentHashMap.newKeySet();
+    private final AtomicLong clock = new AtomicLong(START_EPOCH);
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong recordsServed = new AtomicLong();
+    private final AtomicLong unauthorizedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong tokensIssued = new AtomicLong();
+    private final AtomicInteger forcedThrottles = new AtomicInteger();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double unauthorizedRate;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile long tokenLifetimeSeconds = 3600;
+
+    private FakeEzyVetServer(long seed, int threads) throws IOException {
+        this.random = new Random(seed);
+        for (String name : List.of("contact", "animal", "diagnosticresult", "diagnosticresultitem", "prescription", "prescriptionitem")) {
+            endpoints.put("/" + name, new Endpoint(name));
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext(API_PREFIX, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Starts a server with no data.
+     *
+     * @param seed    Seed for the generated data, so runs can be compared.
+     * @param threads Number of requests served at the same time.
+     * @return FakeEzyVetServer
+     * @throws IOException if the server cannot bind.
+     */
+    public static FakeEzyVetServer start(long seed, int threads) throws IOException {
+        FakeEzyVetServer fake = new FakeEzyVetServer(seed, threads);
+        fake.server.start();
+        return fake;
+    }
+
+    /**
+     * Gets the base URL of the API, to use as <i>vetra.ezyvet.base-url</i>.
+     *
+     * @return String
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + API_PREFIX;
+    }
+
+    //----------------------
+    // Data
+    //----------------------
+
+    /**
+     * Generates customers with their animals, and the diagnostic results and prescriptions of each animal. Can be
+     * called again to add more.
+     *
+     * @param contacts               Number of customers.
+     * @param animalsPerContact
+     * @param resultsPerAnimal       Diagnostic results per animal, each with six result items.
+     * @param prescriptionsPerAnimal Prescriptions per animal, each with one item.
+     */
+    public synchronized void generate(int contacts, int animalsPerContact, int resultsPerAnimal, int prescriptionsPerAnimal) {
+        for (int c = 0; c < contacts; c++) {
+            String contactId = String.valueOf(nextId.getAndIncrement());
+            Map<String, Object> contact = record(contactId);
+            contact.put("first_name", "Owner" + contactId);
+            contact.put("last_name", "Fake");
+            contact.put("is_customer", "1");
+            endpoints.get("/contact").add(contact);
+
+            for (int a = 0; a < animalsPerContact; a++) {
+                String animalId = String.valueOf(nextId.getAndIncrement());
+                Map<String, Object> animal = record(animalId);
+                animal.put("name", "Pet" + animalId);
+                animal.put("contact_id", contactId);
+                animal.put("species_id", String.valueOf(random.nextInt(1, 3)));
+                animal.put("sex_id", String.valueOf(random.nextInt(1, 5)));
+                animal.put("date_of_birth", LocalDate.of(2010, 1, 1).plusDays(random.nextInt(5000)).toString());
+                endpoints.get("/animal").add(animal);
+
+                addDiagnosticResults(animalId, resultsPerAnimal);
+                addPrescriptions(animalId, prescriptionsPerAnimal);
+            }
+        }
+    }
+
+    /**
+     * Adds new diagnostic results to random existing animals, for an incremental sync to pick up.
+     *
+     * @param count
+     */
+    public synchronized void addDiagnosticResults(int count) {
+        List<Map<String, Object>> animals = endpoints.get("/animal").records;
+        for (int i = 0; i < count && !animals.isEmpty(); i++) {
+            addDiagnosticResults((String) animals.get(random.nextInt(animals.size())).get("id"), 1);
+        }
+    }
+
+    /**
+     * Marks random records of an endpoint as modified now, for an incremental sync to pick up. They all get the same
+     * modified_at, as records changed by one bulk update in ezyVet would.
+     *
+     * @param path  e.g. "/diagnosticresult"
+     * @param count
+     * @return the IDs of the records touched
+     */
+    public synchronized Set<String> touch(String path, int count) {
+        Endpoint endpoint = endpoints.get(path);
+        long now = clock.incrementAndGet();
+        Set<String> touched = new LinkedHashSet<>();
+        for (int i = 0; i < count && !endpoint.records.isEmpty(); i++) {
+            Map<String, Object> record = endpoint.records.get(random.nextInt(endpoint.records.size()));
+            record.put("modified_at", now);
+            touched.add((String) record.get("id"));
+        }
+        endpoint.indexes.clear();
+        return touched;
+    }
+
+    /**
+     * Changes a field of a record and marks it as modified now.
+     *
+     * @param path  e.g. "/contact"
+     * @param id
+     * @param field
+     * @param value
+     */
+    public synchronized void set(String path, String id, String field, Object value) {
+        Endpoint endpoint = endpoints.get(path);
+        Map<String, Object> record = endpoint.records.stream()
+                .filter(candidate -> id.equals(candidate.get("id")))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No record " + id + " in " + path + "."));
+        record.put(field, value);
+        record.put("modified_at", clock.incrementAndGet());
+        endpoint.indexes.clear();
+    }
+
+    /**
+     * Gets the IDs of the records of an endpoint, oldest first.
+     *
+     * @param path e.g. "/contact"
+     * @return List of IDs
+     */
+    public List<String> ids(String path) {
+        List<Map<String, Object>> records = endpoints.get(path).records;
+        synchronized (records) {
+            return records.stream().map(record -> (String) record.get("id")).toList();
+        }
+    }
+
+    /**
+     * Gets the number of records of an endpoint.
+     *
+     * @param path e.g. "/animal"
+     * @return int
+     */
+    public int size(String path) {
+        return endpoints.get(path).records.size();
+    }
+
+    //----------------------
+    // Fault injection
+    //----------------------
+
+    /**
+     * Delays every response.
+     *
+     * @param latency
+     */
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Rejects a share of requests with a 401 and revokes their token, as if it had expired.
+     *
+     * @param rate 0 to 1
+     */
+    public void setUnauthorizedRate(double rate) {
+        this.unauthorizedRate = rate;
+    }
+
+    /**
+     * Rejects a share of requests with a 429 and a Retry-After header.
+     *
+     * @param rate              0 to 1
+     * @param retryAfterSeconds
+     */
+    public void setThrottleRate(double rate, int retryAfterSeconds) {
+        this.throttleRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Rejects the next requests with a 429 and a Retry-After header, whatever the throttle rate.
+     *
+     * @param count             Number of requests to reject.
+     * @param retryAfterSeconds
+     */
+    public void throttleNext(int count, int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        forcedThrottles.set(count);
+    }
+
+    /**
+     * Sets the expires_in of issued tokens.
+     *
+     * @param tokenLifetime
+     */
+    public void setTokenLifetime(Duration tokenLifetime) {
+        this.tokenLifetimeSeconds = tokenLifetime.toSeconds();
+    }
+
+    /**
+     * Revokes every issued token, so the next request with one gets a 401.
+     */
+    public void revokeTokens() {
+        validTokens.clear();
+    }
+
+    //----------------------
+    // Stats
+    //----------------------
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getRecordsServed() {
+        return recordsServed.get();
+    }
+
+    public long getUnauthorizedCount() {
+        return unauthorizedCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getTokensIssued() {
+        return tokensIssued.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private void addDiagnosticResults(String animalId, int count) {
+        for (int r = 0; r < count; r++) {
+            String resultId = String.valueOf(nextId.getAndIncrement());
+            Map<String, Object> result = record(resultId);
+            result.put("animal_id", animalId);
+            result.put("name", TEST_NAMES[random.nextInt(TEST_NAMES.length)]);
+            result.put("date", result.get("created_at"));
+            endpoints.get("/diagnosticresult").add(result);
+
+            for (String parameter : PARAMETERS) {
+                Map<String, Object> item = record(String.valueOf(nextId.getAndIncrement()));
+                item.put("diagnostic_result_id", resultId);
+                item.put("name", parameter);
+                item.put("value", String.valueOf(random.nextInt(10, 500) / 10.0));
+                item.put("unit", "10^3/uL");
+                item.put("range_low", "1.0");
+                item.put("range_high", "50.0");
+                endpoints.get("/diagnosticresultitem").add(item);
+            }
+        }
+    }
+
+    private void addPrescriptions(String animalId, int count) {
+        for (int p = 0; p < count; p++) {
+            String prescriptionId = String.valueOf(nextId.getAndIncrement());
+            Map<String, Object> prescription = record(prescriptionId);
+            prescription.put("animal_id", animalId);
+            endpoints.get("/prescription").add(prescription);
+
+            Map<String, Object> item = record(String.valueOf(nextId.getAndIncrement()));
+            item.put("prescription_id", prescriptionId);
+            item.put("product_name", PRODUCTS[random.nextInt(PRODUCTS.length)]);
+            item.put("quantity", String.valueOf(random.nextInt(10, 90)));
+            item.put("unit", "tablet");
+            item.put("label", "Give one tablet by mouth twice daily.");
+            item.put("repeats", String.valueOf(random.nextInt(0, 4)));
+            item.put("active", "1");
+            endpoints.get("/prescriptionitem").add(item);
+        }
+    }
+
+    private Map<String, Object> record(String id) {
+        long now = clock.incrementAndGet();
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("id", id);
+        record.put("created_at", now);
+        record.put("modified_at", now);
+        return record;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis());
+            }
+            String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+            if (path.equals("/oauth/access_token") && exchange.getRequestMethod().equals("POST")) {
+                issueToken(exchange);
+                return;
+            }
+
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String token = authorization == null ? null : authorization.replaceFirst("(?i)^Bearer ", "");
+            if (token == null || !validTokens.contains(token) || ThreadLocalRandom.current().nextDouble() < unauthorizedRate) {
+                if (token != null) {
+                    validTokens.remove(token);
+                }
+                unauthorizedCount.incrementAndGet();
+                sendError(exchange, 401, "The access token provided is invalid.");
+                return;
+            }
+            if (forcedThrottles.getAndUpdate(count -> Math.max(0, count - 1)) > 0
+                    || ThreadLocalRandom.current().nextDouble() < throttleRate) {
+                throttledCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                sendError(exchange, 429, "Too many requests.");
+                return;
+            }
+
+            Endpoint endpoint = endpoints.get(path);
+            if (endpoint == null || !exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 404, "Not found.");
+                return;
+            }
+            sendPage(exchange, endpoint, parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void issueToken(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String token = UUID.randomUUID().toString();
+        validTokens.add(token);
+        tokensIssued.incrementAndGet();
+        byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                "token_type", "Bearer",
+                "expires_in", String.valueOf(tokenLifetimeSeconds),
+                "access_token", token
+        ));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void sendPage(HttpExchange exchange, Endpoint endpoint, Map<String, String> query) throws IOException {
+        int limit = Math.min(Integer.parseInt(query.getOrDefault("limit", "10")), MAX_PAGE_SIZE);
+        int page = Math.max(Integer.parseInt(query.getOrDefault("page", "1")), 1);
+        List<Map<String, Object>> matches = endpoint.select(query);
+
+        String sortBy = query.get("sort_by");
+        if (sortBy != null) {
+            Comparator<Map<String, Object>> comparator = Comparator.comparingLong(record -> asLong(record.get(sortBy)));
+            matches.sort("desc".equalsIgnoreCase(query.get("sort_dir")) ? comparator.reversed() : comparator);
+        }
+        int from = Math.min((page - 1) * limit, matches.size());
+        List<Map<String, Object>> items = matches.subList(from, Math.min(from + limit, matches.size()));
+        recordsServed.addAndGet(items.size());
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(exchange.getResponseBody())) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("meta");
+            generator.writeNumberField("items_page", page);
+            generator.writeNumberField("items_page_size", limit);
+            generator.writeNumberField("items_page_total", items.size());
+            generator.writeNumberField("items_total", matches.size());
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("items");
+            for (Map<String, Object> item : items) {
+                generator.writeStartObject();
+                generator.writeObjectField(endpoint.itemName, item);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(Map.of("messages", List.of(Map.of("level", "error", "text", String.valueOf(message)))));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number number ? number.longValue() : Long.parseLong(String.valueOf(value));
+    }
+
+    /**
+     * The records of one list endpoint, with lazily built indexes for equality lookups.
+     */
+    private class Endpoint {
+        private static final Set<String> PAGING_PARAMETERS = Set.of("limit", "page", "sort_by", "sort_dir");
+
+        private final String itemName;
+        private final List<Map<String, Object>> records = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, Map<String, List<Map<String, Object>>>> indexes = new ConcurrentHashMap<>();
+
+        private Endpoint(String itemName) {
+            this.itemName = itemName;
+        }
+
+        private void add(Map<String, Object> record) {
+            records.add(record);
+            indexes.clear();
+        }
+
+        /**
+         * Gets the records matching every filter in the query. The first equality or "in" filter is answered from an
+         * index so lookups by owner, animal or result stay cheap on large datasets.
+         */
+        @SuppressWarnings("unchecked")
+        private List<Map<String, Object>> select(Map<String, String> query) {
+            List<Map<String, Object>> candidates = null;
+            List<Predicate<Map<String, Object>>> predicates = new ArrayList<>();
+            for (Map.Entry<String, String> filter : query.entrySet()) {
+                String field = filter.getKey();
+                String value = filter.getValue();
+                if (PAGING_PARAMETERS.contains(field)) {
+                    continue;
+                }
+                if (!value.startsWith("{")) {
+                    if (candidates == null) {
+                        candidates = lookup(field, List.of(value));
+                    } else {
+                        predicates.add(record -> value.equals(String.valueOf(record.get(field))));
+                    }
+                    continue;
+                }
+                Map<String, Object> operators;
+                try {
+                    operators = objectMapper.readValue(value, Map.class);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Invalid filter for " + field + ".");
+                }
+                for (Map.Entry<String, Object> operator : operators.entrySet()) {
+                    switch (operator.getKey()) {
+                        case "in" -> {
+                            List<String> values = ((List<Object>) operator.getValue()).stream().map(String::valueOf).toList();
+                            if (candidates == null) {
+                                candidates = lookup(field, values);
+                            } else {
+                                Set<String> allowed = new HashSet<>(values);
+                                predicates.add(record -> allowed.contains(String.valueOf(record.get(field))));
+                            }
+                        }
+                        case "gt" -> predicates.add(compare(field, operator.getValue(), 1, false));
+                        case "gte" -> predicates.add(compare(field, operator.getValue(), 1, true));
+                        case "lt" -> predicates.add(compare(field, operator.getValue(), -1, false));
+                        case "lte" -> predicates.add(compare(field, operator.getValue(), -1, true));
+                        default -> throw new IllegalArgumentException("Unsupported operator " + operator.getKey() + ".");
+                    }
+                }
+            }
+
+            List<Map<String, Object>> matches = new ArrayList<>();
+            List<Map<String, Object>> source;
+            synchronized (records) {
+                source = candidates == null ? new ArrayList<>(records) : candidates;
+            }
+            for (Map<String, Object> record : source) {
+                if (predicates.stream().allMatch(predicate -> predicate.test(record))) {
+                    matches.add(record);
+                }
+            }
+            return matches;
+        }
+
+        private Predicate<Map<String, Object>> compare(String field, Object bound, int direction, boolean inclusive) {
+            long limit = asLong(bound);
+            return record -> {
+                Object value = record.get(field);
+                if (value == null) {
+                    return false;
+                }
+                int comparison = Long.compare(asLong(value), limit) * direction;
+                return comparison > 0 || (inclusive && comparison == 0);
+            };
+        }
+
+        private List<Map<String, Object>> lookup(String field, List<String> values) {
+            Map<String, List<Map<String, Object>>> index = indexes.computeIfAbsent(field, name -> {
+                Map<String, List<Map<String, Object>>> byValue = new HashMap<>();
+                synchronized (records) {
+                    for (Map<String, Object> record : records) {
+                        byValue.computeIfAbsent(String.valueOf(record.get(name)), key -> new ArrayList<>()).add(record);
+                    }
+                }
+                return byValue;
+            });
+            List<Map<String, Object>> found = new ArrayList<>();
+            for (String value : values) {
+                found.addAll(index.getOrDefault(value, List.of()));
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker circuit = new CircuitBreaker(3, OPEN_DURATION);
+
+        circuit.onFailure();
+        circuit.onFailure();
+        circuit.onSuccess();
+        circuit.onFailure();
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState(), "A success resets the failure count.");
+
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.tryAcquire());
+    }
+
+    @Test
+    void halfOpenTrialSuccessClosesTheCircuit() throws InterruptedException {
+        CircuitBreaker circuit = openCircuit();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+
+        assertTrue(circuit.tryAcquire(), "The first call after the open period is the trial.");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+        assertFalse(circuit.tryAcquire(), "Only one trial call is let through.");
+
+        circuit.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+        assertTrue(circuit.tryAcquire());
+        assertTrue(circuit.tryAcquire());
+    }
+
+    @Test
+    void halfOpenTrialFailureReopensTheCircuit() throws InterruptedException {
+        CircuitBreaker circuit = openCircuit();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+        assertTrue(circuit.tryAcquire());
+
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState(), "A single failed trial is enough to reopen.");
+        assertFalse(circuit.tryAcquire(), "The circuit stays open for another full period.");
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+        assertTrue(circuit.tryAcquire());
+    }
+
+    @Test
+    void cancelledTrialLetsTheNextCallTry() throws InterruptedException {
+        CircuitBreaker circuit = openCircuit();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+        assertTrue(circuit.tryAcquire());
+
+        circuit.onCancelled();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertTrue(circuit.tryAcquire(), "The next call becomes the trial without waiting another period.");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private CircuitBreaker openCircuit() {
+        CircuitBreaker circuit = new CircuitBreaker(2, OPEN_DURATION);
+        circuit.onFailure();
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        return circuit;
+    }
+}
@@ -0,0 +1,145 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import com.bcb.vetra.services.vmsintegration.ezyvet.FakeEzyVetServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the governor against a FakeEzyVetServer, so 429s come with a real Retry-After header.
+ */
+class OutboundCallGovernorTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static FakeEzyVetServer server;
+    private final WebClient webClient = WebClient.create();
+    private String accessToken;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = FakeEzyVetServer.start(42, 4);
+        server.generate(3, 1, 0, 0);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @BeforeEach
+    void authenticate() {
+        Map<?, ?> token = webClient.post()
+                .uri(server.getBaseUrl() + "/oauth/access_token")
+                .retrieve()
+                .bodyToMono(Map.class)
+                .block(TIMEOUT);
+        accessToken = (String) token.get("access_token");
+    }
+
+    @Test
+    void retriesA429AfterItsRetryAfter() {
+        OutboundCallGovernor governor = governor(new GovernorSettings());
+        server.throttleNext(1, 1);
+
+        long start = System.nanoTime();
+        String body = governor.execute("/contact", this::getContacts).block(TIMEOUT);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertNotNull(body);
+        assertTrue(elapsedMillis >= 1000, "Retried after " + elapsedMillis + " ms, before the Retry-After of 1 s.");
+        assertEquals(1, governor.getStats().getRetried());
+        assertEquals(0, governor.getStats().getFailed());
+    }
+
+    @Test
+    void retryAfterHoldsBackOtherCallersOfTheEndpoint() throws InterruptedException {
+        OutboundCallGovernor governor = governor(new GovernorSettings());
+        server.throttleNext(1, 2);
+        Mono<String> throttled = governor.execute("/contact", this::getContacts).cache();
+        throttled.subscribe();
+        Thread.sleep(300);
+
+        long start = System.nanoTime();
+        governor.execute("/contact", this::getContacts).block(TIMEOUT);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 1000, "A second caller went ahead after " + elapsedMillis + " ms during the pause.");
+        assertNotNull(throttled.block(TIMEOUT));
+    }
+
+    @Test
+    void retryAfterLongerThanTheMaximumFailsTheCall() {
+        GovernorSettings settings = new GovernorSettings();
+        settings.setMaxRetryAfter(Duration.ofSeconds(1));
+        OutboundCallGovernor governor = governor(settings);
+        server.throttleNext(1, 30);
+
+        long start = System.nanoTime();
+        assertThrows(WebClientResponseException.TooManyRequests.class,
+                () -> governor.execute("/contact", this::getContacts).block(TIMEOUT));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos(), "The call waited instead of failing.");
+        assertEquals(0, governor.getStats().getRetried());
+    }
+
+    @Test
+    void openCircuitRecoversThroughAHalfOpenTrial() throws InterruptedException {
+        GovernorSettings settings = new GovernorSettings();
+        settings.setMaxRetries(0);
+        settings.setFailureThreshold(2);
+        settings.setOpenDuration(Duration.ofMillis(200));
+        OutboundCallGovernor governor = governor(settings);
+        AtomicBoolean endpointDown = new AtomicBoolean(true);
+        AtomicInteger sent = new AtomicInteger();
+        Supplier<Mono<String>> call = () -> {
+            sent.incrementAndGet();
+            return endpointDown.get()
+                    ? Mono.error(WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null))
+                    : getContacts();
+        };
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(WebClientResponseException.ServiceUnavailable.class, () -> governor.execute("/contact", call).block(TIMEOUT));
+        }
+        assertThrows(CircuitOpenException.class, () -> governor.execute("/contact", call).block(TIMEOUT));
+        assertEquals(2, sent.get(), "An open circuit does not send the call.");
+        assertEquals(CircuitBreaker.State.OPEN, governor.getStats().getCircuits().get("/contact"));
+
+        endpointDown.set(false);
+        Thread.sleep(settings.getOpenDuration().toMillis() + 50);
+        assertNotNull(governor.execute("/contact", call).block(TIMEOUT));
+        assertEquals(CircuitBreaker.State.CLOSED, governor.getStats().getCircuits().get("/contact"));
+        assertNotNull(governor.execute("/contact", call).block(TIMEOUT));
+        assertEquals(1, governor.getStats().getRejected());
+    }
+
+    //----------------------
+    // Helper methods
+    //----------------------
+
+    private OutboundCallGovernor governor(GovernorSettings settings) {
+        return new OutboundCallGovernor("fake", settings, new SimpleMeterRegistry());
+    }
+
+    private Mono<String> getContacts() {
+        return webClient.get()
+                .uri(server.getBaseUrl() + "/contact?limit=10&page=1")
+                .header("authorization", "Bearer " + accessToken)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+}
@@ -0,0 +1,62 @@
+package com.bcb.vetra.services.vmsintegration.governor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void burstsUpToCapacityThenWaitsForTheRefillRate() {
+        TokenBucket bucket = new TokenBucket(5, 10);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Duration.ZERO, bucket.reserve());
+        }
+
+        Duration wait = bucket.reserve();
+        assertTrue(wait.toMillis() > 50 && wait.toMillis() <= 100, "Sixth permit is one refill away, got " + wait);
+        Duration nextWait = bucket.reserve();
+        assertTrue(nextWait.compareTo(wait) > 0, "Each reservation in debt waits longer than the one before.");
+    }
+
+    @Test
+    void concurrentReservationsNeverHandOutMoreThanTheCapacity() throws Exception {
+        int capacity = 100;
+        TokenBucket bucket = new TokenBucket(capacity, 0.001);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> reservations = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                reservations.add(executor.submit(() -> {
+                    start.await();
+                    return bucket.reserve().isZero();
+                }));
+            }
+            start.countDown();
+            int immediate = 0;
+            for (Future<Boolean> reservation : reservations) {
+                immediate += reservation.get(10, TimeUnit.SECONDS) ? 1 : 0;
+            }
+            assertEquals(capacity, immediate);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void pauseHoldsEveryCallerForThePause() {
+        TokenBucket bucket = new TokenBucket(10, 10);
+        bucket.pause(Duration.ofSeconds(2));
+
+        Duration wait = bucket.reserve();
+        assertTrue(wait.toMillis() > 1900 && wait.toMillis() <= 2000, "The next caller waits for the pause, got " + wait);
+        Duration nextWait = bucket.reserve();
+        assertTrue(nextWait.toMillis() > 2000, "Later callers queue behind it, got " + nextWait);
+    }
+}